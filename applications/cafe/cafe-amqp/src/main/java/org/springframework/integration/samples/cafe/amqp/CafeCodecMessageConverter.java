@@ -0,0 +1,90 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.amqp;
+
+import java.io.IOException;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.integration.samples.cafe.codec.CafeCodec;
+import org.springframework.util.Assert;
+
+/**
+ * An AMQP {@link MessageConverter} that writes the cafe's payloads with the
+ * {@link CafeCodec} instead of as JSON, and marks them with the
+ * {@value #CONTENT_TYPE} content type. An order of two drinks takes a few bytes
+ * instead of more than a hundred, and is read back without parsing text or
+ * reflecting on the classes.
+ * <p/>
+ * It is meant as a delegate of a
+ * {@link org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter},
+ * which picks it for the messages of its content type, both to send, by the
+ * <code>contentType</code> header of the message, and to receive, so that the
+ * producers of each exchange choose the format and the consumers follow.
+ * Messages of any other content type are rejected.
+ */
+public class CafeCodecMessageConverter implements MessageConverter {
+
+	/**
+	 * The content type of the messages written by the {@link CafeCodec}.
+	 */
+	public static final String CONTENT_TYPE = "application/x-cafe";
+
+	private final CafeCodec codec;
+
+	public CafeCodecMessageConverter() {
+		this(new CafeCodec());
+	}
+
+	public CafeCodecMessageConverter(CafeCodec codec) {
+		Assert.notNull(codec, "'codec' must not be null");
+		this.codec = codec;
+	}
+
+	@Override
+	public Message toMessage(Object object, MessageProperties messageProperties) {
+		byte[] body;
+		try {
+			body = this.codec.serializeToByteArray(object);
+		}
+		catch (IOException | IllegalArgumentException e) {
+			throw new MessageConversionException("Failed to encode " + object, e);
+		}
+		messageProperties.setContentType(CONTENT_TYPE);
+		messageProperties.setContentLength(body.length);
+		return new Message(body, messageProperties);
+	}
+
+	@Override
+	public Object fromMessage(Message message) {
+		String contentType = message.getMessageProperties().getContentType();
+		if (!CONTENT_TYPE.equals(contentType)) {
+			throw new MessageConversionException("Cannot decode a message of content type '" + contentType
+					+ "', " + CONTENT_TYPE + " is expected");
+		}
+		try {
+			return this.codec.deserializeFromByteArray(message.getBody());
+		}
+		catch (IOException e) {
+			throw new MessageConversionException("Failed to decode a message of " + message.getBody().length
+					+ " bytes", e);
+		}
+	}
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.integration.samples.cafe.Delivery;
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.integration.samples.cafe.amqp.CafeCodecMessageConverter;
+
+/**
+ * Compares the AMQP message converters of the cafe-amqp sample for the payloads
+ * it publishes on the cafe-orders, cafe-drinks and cafe-deliveries exchanges:
+ * JSON ('json'), as written by the {@link Jackson2JsonMessageConverter}, and the
+ * {@link CafeCodecMessageConverter} ('cafe'). Encoding and decoding are measured
+ * apart, since the producer and the consumer of a message pay for one each; the
+ * bytes of the body of each payload are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AmqpMessageConverterBenchmark {
+
+	@Param({ "json", "cafe" })
+	public String format;
+
+	private MessageConverter converter;
+
+	private Order order;
+
+	private Drink drink;
+
+	private Delivery delivery;
+
+	private Message orderMessage;
+
+	private Message deliveryMessage;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		if ("json".equals(this.format)) {
+			this.converter = new Jackson2JsonMessageConverter("org.springframework.integration.samples.cafe");
+		}
+		else {
+			this.converter = new CafeCodecMessageConverter();
+		}
+		this.order = new Order(1234);
+		this.order.addItem(DrinkType.LATTE, 2, false);
+		this.order.addItem(DrinkType.MOCHA, 3, true);
+		this.drink = new Drink(1234, DrinkType.LATTE, false, 2);
+		List<Drink> drinks = new ArrayList<>();
+		drinks.add(this.drink);
+		drinks.add(new Drink(1234, DrinkType.MOCHA, true, 3));
+		this.delivery = new Delivery(drinks);
+		this.orderMessage = encodeOrder();
+		this.deliveryMessage = encodeDelivery();
+		System.out.println(this.format + ": order " + this.orderMessage.getBody().length
+				+ " bytes, order item " + encode(this.order.getItems().get(0)).getBody().length
+				+ " bytes, drink " + encode(this.drink).getBody().length
+				+ " bytes, delivery " + this.deliveryMessage.getBody().length + " bytes");
+	}
+
+	@Benchmark
+	public Message encodeOrder() {
+		return encode(this.order);
+	}
+
+	@Benchmark
+	public Object decodeOrder() {
+		return this.converter.fromMessage(this.orderMessage);
+	}
+
+	@Benchmark
+	public Message encodeDelivery() {
+		return encode(this.delivery);
+	}
+
+	@Benchmark
+	public Object decodeDelivery() {
+		return this.converter.fromMessage(this.deliveryMessage);
+	}
+
+	private Message encode(Object payload) {
+		return this.converter.toMessage(payload, new MessageProperties());
+	}
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.integration.samples.cafe.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.context.support.AbstractApplicationContext;
+import org.springframework.integration.samples.cafe.Cafe;
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.integration.samples.cafe.reactive.ReactiveBarista;
+import org.springframework.integration.samples.cafe.xml.Barista;
+import org.springframework.integration.samples.cafe.xml.CafeDemoAppUtilities;
+import org.springframework.messaging.SubscribableChannel;
+
+/**
+ * Compares the barista execution modes of the cafe-si sample with a non-zero
+ * drink preparation time: the 'poller' mode prepares one drink at a time per
+ * queue, the 'virtual' mode prepares every drink on its own virtual thread
+ * (platform threads before Java 21), the 'batching' mode prepares the drinks
+ * taken off a queue in micro-batches of up to 32, the 'sharded' mode prepares
+ * and aggregates the drinks of each order on one of a shard per processor and
+ * the 'pooled' mode prepares the drinks of both queues on a shared pool of 4
+ * baristas, the 'coalescing' mode prepares identical drinks of different
+ * orders once, the 'journaled' mode is the poller mode with its queues in
+ * memory-mapped journal files and the 'reactive' mode prepares up to 16 drinks
+ * of each type at a time without blocking, subscribed to flux channels with a
+ * bounded demand instead of polling bounded queues. Reports delivered orders
+ * per second.
+ * <p/>
+ * The batching mode pays off when the drink delay is small compared to the cost
+ * of handing each drink over, so also run it with '-p drinkDelay=0'. All orders
+ * of the benchmark are the same, so the coalescing mode shows its best case.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BaristaExecutionBenchmark {
+
+	static final String CONFIG = "/META-INF/spring/integration/benchmark/baristaBenchmark-xml.xml";
+
+	static final int ORDERS_PER_INVOCATION = 100;
+
+	private static final long DELIVERY_TIMEOUT = 60;
+
+	@Param({ "poller", "virtual", "batching", "sharded", "pooled", "coalescing", "journaled", "reactive" })
+	public String mode;
+
+	/**
+	 * Milliseconds the barista needs for each hot and cold drink.
+	 */
+	@Param({ "10" })
+	public long drinkDelay;
+
+	private AbstractApplicationContext context;
+
+	private Cafe cafe;
+
+	private final DeliveryLatch deliveries = new DeliveryLatch();
+
+	private int orderNumber;
+
+	@Setup(Level.Trial)
+	public void start() {
+		this.context = CafeDemoAppUtilities.loadProfileContext(CONFIG, BaristaExecutionBenchmark.class, this.mode);
+		Barista barista = this.context.getBean(Barista.class);
+		barista.setHotDrinkDelay(this.drinkDelay);
+		barista.setColdDrinkDelay(this.drinkDelay);
+		this.context.getBeanProvider(ReactiveBarista.class).ifAvailable(reactiveBarista -> {
+			reactiveBarista.setHotDrinkDelay(this.drinkDelay);
+			reactiveBarista.setColdDrinkDelay(this.drinkDelay);
+		});
+		this.cafe = this.context.getBean("cafe", Cafe.class);
+		this.context.getBean("deliveries", SubscribableChannel.class).subscribe(this.deliveries);
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		this.context.close();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@OperationsPerInvocation(ORDERS_PER_INVOCATION)
+	public void throughput() throws InterruptedException {
+		this.deliveries.expect(ORDERS_PER_INVOCATION);
+		for (int i = 0; i < ORDERS_PER_INVOCATION; i++) {
+			Order order = new Order(++this.orderNumber);
+			order.addItem(DrinkType.LATTE, 2, false);
+			order.addItem(DrinkType.MOCHA, 3, true);
+			this.cafe.placeOrder(order);
+		}
+		this.deliveries.await(DELIVERY_TIMEOUT);
+	}
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.benchmark;
+
+import java.util.List;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.config.EnableIntegration;
+import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.integration.dsl.IntegrationFlows;
+import org.springframework.integration.gateway.GatewayProxyFactoryBean;
+import org.springframework.integration.samples.cafe.Cafe;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.integration.samples.cafe.OrderBatchDispatcher;
+import org.springframework.integration.samples.cafe.OrderItem;
+import org.springframework.integration.samples.cafe.dsl.DeliveryGroupProcessor;
+import org.springframework.integration.samples.cafe.xml.Barista;
+import org.springframework.integration.samples.cafe.xml.Waiter;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+
+/**
+ * The flow of the "direct" profile of "cafeBenchmark-xml.xml" as Java DSL
+ * {@link IntegrationFlow}s, written the same way as the cafe-si
+ * {@code CafeConfiguration}: method references in place of the splitter, router
+ * expressions and the reflective calls to the Barista and the Waiter, and the
+ * drink channels resolved once.
+ */
+@Configuration
+@EnableIntegration
+public class CafeBenchmarkConfiguration {
+
+	@Bean
+	public GatewayProxyFactoryBean cafe() {
+		return new GatewayProxyFactoryBean(Cafe.class);
+	}
+
+	@Bean
+	public DirectChannel orders() {
+		return new DirectChannel();
+	}
+
+	@Bean
+	public DirectChannel drinks() {
+		return new DirectChannel();
+	}
+
+	@Bean
+	public DirectChannel hotDrinks() {
+		return new DirectChannel();
+	}
+
+	@Bean
+	public DirectChannel coldDrinks() {
+		return new DirectChannel();
+	}
+
+	@Bean
+	public DirectChannel orderBatches() {
+		return new DirectChannel();
+	}
+
+	@Bean
+	public DirectChannel preparedDrinks() {
+		return new DirectChannel();
+	}
+
+	/**
+	 * The benchmark subscribes to this channel to see each delivery.
+	 */
+	@Bean
+	public DirectChannel deliveries() {
+		return new DirectChannel();
+	}
+
+	@Bean
+	public IntegrationFlow orderFlow() {
+		MessageChannel hotDrinks = hotDrinks();
+		MessageChannel coldDrinks = coldDrinks();
+		return IntegrationFlows.from(orders())
+				.split(Order.class, Order::getItems)
+				.channel(drinks())
+				.route(OrderItem.class, item -> item.isIced() ? coldDrinks : hotDrinks)
+				.get();
+	}
+
+	@Bean
+	@SuppressWarnings("unchecked")
+	public IntegrationFlow orderBatchFlow() {
+		OrderBatchDispatcher orderBatchDispatcher = new OrderBatchDispatcher(hotDrinks(), coldDrinks());
+		return IntegrationFlows.from(orderBatches())
+				.handle((MessageHandler) batch -> orderBatchDispatcher.placeOrders((List<Order>) batch.getPayload()))
+				.get();
+	}
+
+	@Bean
+	public IntegrationFlow hotDrinkBaristaFlow() {
+		Barista barista = barista();
+		return IntegrationFlows.from(hotDrinks())
+				.handle(OrderItem.class, (item, headers) -> barista.prepareHotDrink(item))
+				.channel(preparedDrinks())
+				.get();
+	}
+
+	@Bean
+	public IntegrationFlow coldDrinkBaristaFlow() {
+		Barista barista = barista();
+		return IntegrationFlows.from(coldDrinks())
+				.handle(OrderItem.class, (item, headers) -> barista.prepareColdDrink(item))
+				.channel(preparedDrinks())
+				.get();
+	}
+
+	@Bean
+	public IntegrationFlow deliveryFlow() {
+		return IntegrationFlows.from(preparedDrinks())
+				// correlated by the splitter's headers, as in the XML configuration
+				.aggregate(aggregator -> aggregator
+						.outputProcessor(new DeliveryGroupProcessor(new Waiter()))
+						.expireGroupsUponCompletion(true))
+				.channel(deliveries())
+				.get();
+	}
+
+	@Bean
+	public Barista barista() {
+		Barista barista = new Barista();
+		barista.setHotDrinkDelay(0);
+		barista.setColdDrinkDelay(0);
+		return barista;
+	}
+
+}
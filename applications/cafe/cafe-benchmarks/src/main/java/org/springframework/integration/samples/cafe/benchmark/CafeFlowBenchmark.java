@@ -0,0 +1,135 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.integration.samples.cafe.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.context.support.AbstractApplicationContext;
+import org.springframework.integration.samples.cafe.Cafe;
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.integration.samples.cafe.xml.CafeDemoAppUtilities;
+import org.springframework.messaging.SubscribableChannel;
+
+/**
+ * Drives the Cafe flow (gateway, splitter, router, barista and waiter) with no
+ * barista delay, once per channel type. Each channel type is a Spring profile in
+ * "cafeBenchmark-xml.xml" that declares the 'drinks', 'coldDrinks' and
+ * 'hotDrinks' channels.
+ * <p/>
+ * {@link #throughput()} reports delivered orders per second,
+ * {@link #batchThroughput()} the same for orders placed in a single batch, and
+ * {@link #latency()} reports the time from placing a single order until its
+ * delivery. Build with 'mvn package' and run with
+ * 'java -jar target/benchmarks.jar'.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CafeFlowBenchmark {
+
+	static final String CONFIG = "/META-INF/spring/integration/benchmark/cafeBenchmark-xml.xml";
+
+	static final int ORDERS_PER_INVOCATION = 100;
+
+	private static final long DELIVERY_TIMEOUT = 30;
+
+	@Param({ "direct", "queue", "ring-buffer", "executor", "flux" })
+	public String channelType;
+
+	private AbstractApplicationContext context;
+
+	private Cafe cafe;
+
+	private final DeliveryLatch deliveries = new DeliveryLatch();
+
+	private int orderNumber;
+
+	@Setup(Level.Trial)
+	public void start() {
+		this.context = CafeDemoAppUtilities.loadProfileContext(CONFIG, CafeFlowBenchmark.class, this.channelType);
+		this.cafe = this.context.getBean("cafe", Cafe.class);
+		this.context.getBean("deliveries", SubscribableChannel.class).subscribe(this.deliveries);
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		this.context.close();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@OperationsPerInvocation(ORDERS_PER_INVOCATION)
+	public void throughput() throws InterruptedException {
+		this.deliveries.expect(ORDERS_PER_INVOCATION);
+		for (int i = 0; i < ORDERS_PER_INVOCATION; i++) {
+			this.cafe.placeOrder(nextOrder());
+		}
+		this.deliveries.await(DELIVERY_TIMEOUT);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@OperationsPerInvocation(ORDERS_PER_INVOCATION)
+	public void batchThroughput() throws InterruptedException {
+		this.deliveries.expect(ORDERS_PER_INVOCATION);
+		List<Order> batch = new ArrayList<>(ORDERS_PER_INVOCATION);
+		for (int i = 0; i < ORDERS_PER_INVOCATION; i++) {
+			batch.add(nextOrder());
+		}
+		this.cafe.placeOrders(batch);
+		this.deliveries.await(DELIVERY_TIMEOUT);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void latency() throws InterruptedException {
+		this.deliveries.expect(1);
+		this.cafe.placeOrder(nextOrder());
+		this.deliveries.await(DELIVERY_TIMEOUT);
+	}
+
+	private Order nextOrder() {
+		Order order = new Order(++this.orderNumber);
+		order.addItem(DrinkType.LATTE, 2, false);
+		order.addItem(DrinkType.MOCHA, 3, true);
+		return order;
+	}
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.integration.samples.cafe.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+
+/**
+ * Subscribed to the 'deliveries' channel so that a benchmark invocation can
+ * wait until all the orders it has placed have been delivered.
+ */
+public class DeliveryLatch implements MessageHandler {
+
+	private volatile CountDownLatch latch = new CountDownLatch(0);
+
+	/**
+	 * Prepare for the next batch of deliveries; must be called before the
+	 * corresponding orders are placed.
+	 * @param count the number of deliveries to wait for
+	 */
+	public void expect(int count) {
+		this.latch = new CountDownLatch(count);
+	}
+
+	/**
+	 * Wait for the deliveries announced by {@link #expect(int)}.
+	 * @param timeout the maximum time to wait in seconds
+	 */
+	public void await(long timeout) throws InterruptedException {
+		if (!this.latch.await(timeout, TimeUnit.SECONDS)) {
+			throw new IllegalStateException("Deliveries still outstanding after " + timeout + "s: "
+					+ this.latch.getCount());
+		}
+	}
+
+	@Override
+	public void handleMessage(Message<?> message) {
+		this.latch.countDown();
+	}
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.support.AbstractApplicationContext;
+import org.springframework.integration.samples.cafe.Cafe;
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.integration.samples.cafe.xml.CafeDemoAppUtilities;
+import org.springframework.messaging.SubscribableChannel;
+
+/**
+ * Drives the same Cafe flow on direct channels, with no barista delay, once as
+ * defined in "cafeBenchmark-xml.xml" and once as defined by
+ * {@link CafeBenchmarkConfiguration}. With every stage on the caller's thread,
+ * the difference is the per-message cost of the SpEL expressions and reflective
+ * method invocations of the XML definition; run with '-prof gc' to compare the
+ * allocations as well.
+ * <p/>
+ * {@link #throughput()} reports delivered orders per second and
+ * {@link #latency()} the time from placing a single order until its delivery.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FlowDefinitionBenchmark {
+
+	private static final long DELIVERY_TIMEOUT = 30;
+
+	@Param({ "xml", "dsl" })
+	public String definition;
+
+	private AbstractApplicationContext context;
+
+	private Cafe cafe;
+
+	private final DeliveryLatch deliveries = new DeliveryLatch();
+
+	private int orderNumber;
+
+	@Setup(Level.Trial)
+	public void start() {
+		if ("dsl".equals(this.definition)) {
+			this.context = new AnnotationConfigApplicationContext(CafeBenchmarkConfiguration.class);
+		}
+		else {
+			this.context = CafeDemoAppUtilities.loadProfileContext(CafeFlowBenchmark.CONFIG,
+					FlowDefinitionBenchmark.class, "direct");
+		}
+		this.cafe = this.context.getBean("cafe", Cafe.class);
+		this.context.getBean("deliveries", SubscribableChannel.class).subscribe(this.deliveries);
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		this.context.close();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@OperationsPerInvocation(CafeFlowBenchmark.ORDERS_PER_INVOCATION)
+	public void throughput() throws InterruptedException {
+		this.deliveries.expect(CafeFlowBenchmark.ORDERS_PER_INVOCATION);
+		for (int i = 0; i < CafeFlowBenchmark.ORDERS_PER_INVOCATION; i++) {
+			this.cafe.placeOrder(nextOrder());
+		}
+		this.deliveries.await(DELIVERY_TIMEOUT);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void latency() throws InterruptedException {
+		this.deliveries.expect(1);
+		this.cafe.placeOrder(nextOrder());
+		this.deliveries.await(DELIVERY_TIMEOUT);
+	}
+
+	private Order nextOrder() {
+		Order order = new Order(++this.orderNumber);
+		order.addItem(DrinkType.LATTE, 2, false);
+		order.addItem(DrinkType.MOCHA, 3, true);
+		return order;
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.core.serializer.DefaultDeserializer;
+import org.springframework.core.serializer.DefaultSerializer;
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.core.serializer.Serializer;
+import org.springframework.integration.samples.cafe.Delivery;
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.integration.samples.cafe.codec.CafeCodec;
+
+/**
+ * Compares Java serialization ('java') with the {@link CafeCodec} ('cafe') for
+ * the payloads that cross a JMS destination or a persistent message store: an
+ * order of two drinks and its delivery. Each benchmark serializes the payload to
+ * a <code>byte[]</code> and reads it back; the encoded sizes are printed once per
+ * trial.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PayloadCodecBenchmark {
+
+	@Param({ "java", "cafe" })
+	public String format;
+
+	private Serializer<Object> serializer;
+
+	private Deserializer<Object> deserializer;
+
+	private Order order;
+
+	private Delivery delivery;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		if ("java".equals(this.format)) {
+			this.serializer = new DefaultSerializer();
+			this.deserializer = new DefaultDeserializer();
+		}
+		else {
+			CafeCodec codec = new CafeCodec();
+			this.serializer = codec;
+			this.deserializer = codec;
+		}
+		this.order = new Order(1234);
+		this.order.addItem(DrinkType.LATTE, 2, false);
+		this.order.addItem(DrinkType.MOCHA, 3, true);
+		List<Drink> drinks = new ArrayList<>();
+		drinks.add(new Drink(1234, DrinkType.LATTE, false, 2));
+		drinks.add(new Drink(1234, DrinkType.MOCHA, true, 3));
+		this.delivery = new Delivery(drinks);
+		System.out.println(this.format + ": order " + this.serializer.serializeToByteArray(this.order).length
+				+ " bytes, delivery " + this.serializer.serializeToByteArray(this.delivery).length + " bytes");
+	}
+
+	@Benchmark
+	public Object orderRoundTrip() throws IOException {
+		return this.deserializer.deserializeFromByteArray(this.serializer.serializeToByteArray(this.order));
+	}
+
+	@Benchmark
+	public Object deliveryRoundTrip() throws IOException {
+		return this.deserializer.deserializeFromByteArray(this.serializer.serializeToByteArray(this.delivery));
+	}
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.xml;
+
+import org.springframework.context.support.AbstractApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.integration.samples.cafe.load.CafeLoadApp;
+
+/**
+ * Places an open-loop load on the distributed JMS Cafe instead of the fixed
+ * orders of {@link CafeDemoAppActiveMQ}, and prints the throughput and latency
+ * percentiles. Start the baristas and the operations first, as for the demo;
+ * the load is configured with the <code>cafe.load.*</code> system properties,
+ * like for the other variants.
+ */
+public class CafeLoadAppActiveMQ {
+
+	public static void main(String[] args) throws InterruptedException {
+		AbstractApplicationContext context = new ClassPathXmlApplicationContext(
+				"/META-INF/spring/integration/activemq/cafeDemo-amq-config.xml",
+				"/META-INF/spring/integration/activemq/cafeDemo-amq-xml.xml");
+		try {
+			CafeLoadApp.placeLoad(context);
+		}
+		finally {
+			context.close();
+		}
+	}
+
+}
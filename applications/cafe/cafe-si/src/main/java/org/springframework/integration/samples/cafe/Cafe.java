@@ -16,6 +16,9 @@
 
 package org.springframework.integration.samples.cafe;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import org.springframework.integration.annotation.Gateway;
 
 /**
@@ -25,6 +28,16 @@ import org.springframework.integration.annotation.Gateway;
  * {@link org.springframework.integration.Message} to the
  * configured <em>requestChannel</em>. The channel ('orders') is
  * defined in the 'cafeDemo.xml' file.
+ * <p/>
+ * '<code>placeOrderAsync</code>' sends the {@link Order} to the 'asyncOrders'
+ * channel instead, where it is placed by {@link PendingDeliveries}; the returned
+ * future is completed once the Waiter has released the {@link Delivery}. The
+ * gateway must be declared without an async executor (async-executor=""), so
+ * that this future is handed back to the caller as is.
+ * <p/>
+ * '<code>placeOrders</code>' sends a whole batch of orders as a single message
+ * to the 'orderBatches' channel, where {@link OrderBatchDispatcher} sends their
+ * items straight to the drink channels.
  *
  * @author Mark Fisher
  */
@@ -33,4 +46,10 @@ public interface Cafe {
 	@Gateway(requestChannel="orders")
 	void placeOrder(Order order);
 
+	@Gateway(requestChannel="asyncOrders")
+	CompletableFuture<Delivery> placeOrderAsync(Order order);
+
+	@Gateway(requestChannel="orderBatches")
+	void placeOrders(List<Order> orders);
+
 }
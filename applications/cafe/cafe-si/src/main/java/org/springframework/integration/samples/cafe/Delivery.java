@@ -62,13 +62,13 @@ public class Delivery implements Serializable{
 
 	@Override
 	public String toString() {
-		StringBuffer buffer = new StringBuffer(SEPARATOR + "\n");
-		buffer.append("Order #" + getOrderNumber() + "\n");
+		StringBuilder buffer = new StringBuilder(64 + 32 * getDeliveredDrinks().size());
+		buffer.append(SEPARATOR).append('\n');
+		buffer.append("Order #").append(getOrderNumber()).append('\n');
 		for (Drink drink : getDeliveredDrinks()) {
-			buffer.append(drink);
-			buffer.append("\n");
+			buffer.append(drink).append('\n');
 		}
-		buffer.append(SEPARATOR + "\n");
+		buffer.append(SEPARATOR).append('\n');
 		return buffer.toString();
 	}
 
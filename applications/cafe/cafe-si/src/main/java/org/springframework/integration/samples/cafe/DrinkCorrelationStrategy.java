@@ -0,0 +1,34 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe;
+
+import org.springframework.integration.aggregator.CorrelationStrategy;
+import org.springframework.messaging.Message;
+
+/**
+ * Correlates the prepared drinks of an order by its number, for the Waiter's
+ * aggregator, with a plain call instead of evaluating
+ * <code>payload.orderNumber</code> for every drink.
+ */
+public class DrinkCorrelationStrategy implements CorrelationStrategy {
+
+	@Override
+	public Object getCorrelationKey(Message<?> message) {
+		return ((Drink) message.getPayload()).getOrderNumber();
+	}
+
+}
@@ -35,6 +35,9 @@ public class Order implements Serializable{
 	/** the order number used for tracking */
 	private int number;
 
+	/** how urgently the order is to be delivered, carried by its items */
+	private SlaClass slaClass = SlaClass.STANDARD;
+
 	// Default constructor required by Jackson Java JSON-processor
 	public Order() {}
 
@@ -43,7 +46,9 @@ public class Order implements Serializable{
 	}
 
 	public void addItem(DrinkType drinkType, int shots, boolean iced) {
-		this.orderItems.add(new OrderItem(this.number, drinkType, shots, iced));
+		OrderItem item = new OrderItem(this.number, drinkType, shots, iced);
+		item.setSlaClass(this.slaClass);
+		this.orderItems.add(item);
 	}
 
 	public int getNumber() {
@@ -54,6 +59,23 @@ public class Order implements Serializable{
 		this.number = number;
 	}
 
+	public SlaClass getSlaClass() {
+		return this.slaClass;
+	}
+
+	/**
+	 * Set the class of the order and of the items added so far.
+	 * @param slaClass the class
+	 */
+	public void setSlaClass(SlaClass slaClass) {
+		this.slaClass = slaClass;
+		if (this.orderItems != null) {
+			for (OrderItem item : this.orderItems) {
+				item.setSlaClass(slaClass);
+			}
+		}
+	}
+
 	public List<OrderItem> getItems() {
 		return this.orderItems;
 	}
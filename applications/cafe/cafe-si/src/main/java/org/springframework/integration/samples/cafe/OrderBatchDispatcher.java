@@ -0,0 +1,74 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.util.Assert;
+
+/**
+ * Places the batches of orders sent with {@link Cafe#placeOrders(List)}.
+ * <p/>
+ * A batch travels as a single message up to here. The order items are then sent
+ * straight to the <em>hotDrinks</em> or <em>coldDrinks</em> channel, so a batch
+ * costs one message per drink instead of one per order, one per drink and a
+ * router evaluation per drink. Each drink message carries just the headers the
+ * Waiter needs: the order number as its correlation id, and its sequence number
+ * and size within the order.
+ */
+public class OrderBatchDispatcher {
+
+	private final MessageChannel hotDrinks;
+
+	private final MessageChannel coldDrinks;
+
+	/**
+	 * @param hotDrinks the channel for the hot drinks
+	 * @param coldDrinks the channel for the iced drinks
+	 */
+	public OrderBatchDispatcher(MessageChannel hotDrinks, MessageChannel coldDrinks) {
+		Assert.notNull(hotDrinks, "'hotDrinks' must not be null");
+		Assert.notNull(coldDrinks, "'coldDrinks' must not be null");
+		this.hotDrinks = hotDrinks;
+		this.coldDrinks = coldDrinks;
+	}
+
+	/**
+	 * @param orders the orders of the batch, placed in their order
+	 */
+	public void placeOrders(List<Order> orders) {
+		for (Order order : orders) {
+			List<OrderItem> items = order.getItems();
+			Integer orderNumber = order.getNumber();
+			Integer sequenceSize = items.size();
+			for (int i = 0; i < items.size(); i++) {
+				OrderItem item = items.get(i);
+				Map<String, Object> headers = new HashMap<>(8);
+				headers.put(IntegrationMessageHeaderAccessor.CORRELATION_ID, orderNumber);
+				headers.put(IntegrationMessageHeaderAccessor.SEQUENCE_NUMBER, i + 1);
+				headers.put(IntegrationMessageHeaderAccessor.SEQUENCE_SIZE, sequenceSize);
+				(item.isIced() ? this.coldDrinks : this.hotDrinks).send(new GenericMessage<>(item, headers));
+			}
+		}
+	}
+
+}
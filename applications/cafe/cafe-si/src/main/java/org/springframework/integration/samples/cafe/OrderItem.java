@@ -37,6 +37,9 @@ public class OrderItem implements Serializable {
 	/** the order this item is tied to */
 	private int orderNumber;
 
+	/** the class of the order this item is tied to */
+	private SlaClass slaClass = SlaClass.STANDARD;
+
 	// Default constructor required by Jackson Java JSON-processor
 	public OrderItem() {}
 
@@ -55,6 +58,14 @@ public class OrderItem implements Serializable {
 		this.orderNumber = orderNumber;
 	}
 
+	public SlaClass getSlaClass() {
+		return this.slaClass;
+	}
+
+	public void setSlaClass(SlaClass slaClass) {
+		this.slaClass = slaClass;
+	}
+
 	public boolean isIced() {
 		return this.iced;
 	}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe;
+
+/**
+ * Fails the future of an order placed with {@link Cafe#placeOrderAsync(Order)}
+ * whose group of drinks timed out before all of them were prepared, so that the
+ * Waiter released only some of them. The partial delivery is kept, so the
+ * caller can still hand out the drinks it has.
+ */
+@SuppressWarnings("serial")
+public class PartialDeliveryException extends RuntimeException {
+
+	private final Delivery delivery;
+
+	private final int orderedItems;
+
+	public PartialDeliveryException(Delivery delivery, int orderedItems) {
+		super("Only " + delivery.getDeliveredDrinks().size() + " of the " + orderedItems
+				+ " drinks of order #" + delivery.getOrderNumber() + " were delivered");
+		this.delivery = delivery;
+		this.orderedItems = orderedItems;
+	}
+
+	/**
+	 * @return the drinks that were delivered
+	 */
+	public Delivery getDelivery() {
+		return this.delivery;
+	}
+
+	/**
+	 * @return the number of items of the order, one drink each
+	 */
+	public int getOrderedItems() {
+		return this.orderedItems;
+	}
+
+}
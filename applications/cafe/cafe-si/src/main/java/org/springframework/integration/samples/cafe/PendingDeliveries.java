@@ -0,0 +1,202 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.integration.samples.cafe;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.integration.samples.cafe.concurrent.StripedIntMap;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.util.Assert;
+
+/**
+ * Keeps track of the orders placed through {@link Cafe#placeOrderAsync(Order)}
+ * and completes their futures with the {@link Delivery} released by the Waiter.
+ * <p/>
+ * The pending futures are kept in a {@link StripedIntMap} keyed by the order
+ * number, so no thread is blocked per order in flight. Futures that are still
+ * pending after the timeout are completed exceptionally by {@link #expire()},
+ * which is meant to be scheduled at a fixed rate. Orders that are discarded
+ * before they are taken, e.g. as duplicates, fail their futures through
+ * {@link #reject(Order)}. A delivery with fewer drinks than its order had
+ * items, released when the order timed out in the Waiter's group store, fails
+ * its future with a {@link PartialDeliveryException} that carries it.
+ * <p/>
+ * Placing an order may block, e.g. while the admission control delays it or a
+ * drink queue is full. With an executor the orders are placed on its threads,
+ * so the caller of <code>placeOrderAsync</code> only waits for the hand-off;
+ * an order the executor rejects fails its future instead.
+ */
+public class PendingDeliveries {
+
+	private final StripedIntMap<PendingDelivery> pending = new StripedIntMap<>();
+
+	private final MessageChannel orders;
+
+	private volatile long timeout = 60000;
+
+	private volatile Executor executor;
+
+	/**
+	 * @param orders the channel the tracked orders are placed on
+	 */
+	public PendingDeliveries(MessageChannel orders) {
+		Assert.notNull(orders, "'orders' must not be null");
+		this.orders = orders;
+	}
+
+	/**
+	 * @param timeout the time in milliseconds after which a pending delivery fails
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @param executor the executor the orders are placed on; by default they are
+	 * placed on the caller's thread
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Place the order and return a future for its delivery. Only one order with
+	 * a given number can be pending at a time.
+	 * @param order the order
+	 * @return the future delivery; it is the reply to the async gateway method
+	 */
+	public CompletableFuture<Delivery> placeOrder(Order order) {
+		int orderNumber = order.getNumber();
+		PendingDelivery delivery = new PendingDelivery(order, System.currentTimeMillis() + this.timeout);
+		if (this.pending.putIfAbsent(orderNumber, delivery) != null) {
+			delivery.completeExceptionally(new IllegalStateException("Order #" + orderNumber + " is already pending"));
+			return delivery;
+		}
+		Executor executor = this.executor;
+		if (executor == null) {
+			send(order, delivery);
+		}
+		else {
+			try {
+				executor.execute(() -> send(order, delivery));
+			}
+			catch (RejectedExecutionException e) {
+				fail(delivery, e);
+			}
+		}
+		return delivery;
+	}
+
+	private void send(Order order, PendingDelivery delivery) {
+		try {
+			this.orders.send(new GenericMessage<>(order));
+		}
+		catch (RuntimeException e) {
+			fail(delivery, e);
+		}
+	}
+
+	private void fail(PendingDelivery delivery, Throwable cause) {
+		this.pending.remove(delivery.orderNumber, delivery);
+		delivery.completeExceptionally(cause);
+	}
+
+	/**
+	 * Complete the future of a delivered order, if any, or fail it if some of its
+	 * drinks are missing.
+	 * @param delivery the delivery released by the Waiter
+	 */
+	public void deliver(Delivery delivery) {
+		PendingDelivery pendingDelivery = this.pending.remove(delivery.getOrderNumber());
+		if (pendingDelivery != null) {
+			int items = pendingDelivery.order.getItems().size();
+			if (delivery.getDeliveredDrinks().size() < items) {
+				pendingDelivery.completeExceptionally(new PartialDeliveryException(delivery, items));
+			}
+			else {
+				pendingDelivery.complete(delivery);
+			}
+		}
+	}
+
+	/**
+	 * Fail the future of an order that was discarded instead of being taken,
+	 * e.g. as a duplicate of an order placed before, rather than let it time out.
+	 * Only the future of that very order is failed, not that of another pending
+	 * order with the same number.
+	 * @param order the discarded order
+	 */
+	public void reject(Order order) {
+		int orderNumber = order.getNumber();
+		PendingDelivery delivery = this.pending.get(orderNumber);
+		if (delivery != null && delivery.order == order && this.pending.remove(orderNumber, delivery)) {
+			delivery.completeExceptionally(new IllegalStateException("Order #" + orderNumber
+					+ " was discarded as placed before"));
+		}
+	}
+
+	/**
+	 * Fail the deliveries that are pending for longer than the timeout and forget
+	 * the ones that were cancelled by the caller.
+	 * @return the number of deliveries that timed out
+	 */
+	public int expire() {
+		long now = System.currentTimeMillis();
+		int expired = 0;
+		for (PendingDelivery delivery : this.pending.values()) {
+			if (delivery.isDone()) {
+				this.pending.remove(delivery.orderNumber, delivery);
+			}
+			else if (delivery.deadline <= now && this.pending.remove(delivery.orderNumber, delivery)) {
+				delivery.completeExceptionally(new TimeoutException("No delivery for order #"
+						+ delivery.orderNumber + " within " + this.timeout + " ms"));
+				expired++;
+			}
+		}
+		return expired;
+	}
+
+	/**
+	 * @return the number of orders waiting for their delivery
+	 */
+	public int getPendingCount() {
+		return this.pending.size();
+	}
+
+
+	private static final class PendingDelivery extends CompletableFuture<Delivery> {
+
+		private final Order order;
+
+		private final int orderNumber;
+
+		private final long deadline;
+
+		PendingDelivery(Order order, long deadline) {
+			this.order = order;
+			this.orderNumber = order.getNumber();
+			this.deadline = deadline;
+		}
+
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.integration.StaticMessageHeaderAccessor;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.util.Assert;
+
+/**
+ * Takes orders of a single item past the splitter and their drink past the Waiter's
+ * aggregator.
+ * <p/>
+ * Most orders have one item, yet the splitter would still send it on as a message of
+ * its own, and the aggregator would still store its drink as a group of one until
+ * it sees it is complete. {@link #placeOrder(Message)} sends the item of such an
+ * order straight to the <em>hotDrinks</em> or <em>coldDrinks</em> channel instead,
+ * with the headers of the order message, the order number as correlation id and a
+ * sequence of one. {@link #deliver(Message)} recognises the drink by its sequence
+ * size of one and sends its {@link Delivery} straight to the <em>deliveries</em>
+ * channel, just as the Waiter would have made it.
+ * <p/>
+ * Both methods return the messages they do not handle, orders of several items and
+ * the drinks of such orders, for the splitter and the aggregator respectively.
+ */
+@ManagedResource
+public class SingleItemOrderFastPath {
+
+	private final MessageChannel hotDrinks;
+
+	private final MessageChannel coldDrinks;
+
+	private final MessageChannel deliveries;
+
+	private final AtomicLong fastPathOrders = new AtomicLong();
+
+	private final AtomicLong splitOrders = new AtomicLong();
+
+	private final AtomicLong fastPathDeliveries = new AtomicLong();
+
+	private final AtomicLong aggregatedDrinks = new AtomicLong();
+
+	/**
+	 * @param hotDrinks the channel for the hot drinks
+	 * @param coldDrinks the channel for the iced drinks
+	 * @param deliveries the channel for the deliveries
+	 */
+	public SingleItemOrderFastPath(MessageChannel hotDrinks, MessageChannel coldDrinks, MessageChannel deliveries) {
+		Assert.notNull(hotDrinks, "'hotDrinks' must not be null");
+		Assert.notNull(coldDrinks, "'coldDrinks' must not be null");
+		Assert.notNull(deliveries, "'deliveries' must not be null");
+		this.hotDrinks = hotDrinks;
+		this.coldDrinks = coldDrinks;
+		this.deliveries = deliveries;
+	}
+
+	/**
+	 * @param order the message of an order
+	 * @return the message of an order of several items, to be split, or
+	 * <code>null</code> if the order has been placed here
+	 */
+	public Message<Order> placeOrder(Message<Order> order) {
+		if (order.getPayload().getItems().size() != 1) {
+			this.splitOrders.incrementAndGet();
+			return order;
+		}
+		OrderItem item = order.getPayload().getItems().get(0);
+		Map<String, Object> headers = new HashMap<>(order.getHeaders());
+		headers.put(IntegrationMessageHeaderAccessor.CORRELATION_ID, order.getPayload().getNumber());
+		headers.put(IntegrationMessageHeaderAccessor.SEQUENCE_NUMBER, 1);
+		headers.put(IntegrationMessageHeaderAccessor.SEQUENCE_SIZE, 1);
+		(item.isIced() ? this.coldDrinks : this.hotDrinks).send(new GenericMessage<>(item, headers));
+		this.fastPathOrders.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * @param drink the message of a prepared drink
+	 * @return the message of a drink of an order of several items, to be
+	 * aggregated, or <code>null</code> if the drink has been delivered here
+	 */
+	public Message<Drink> deliver(Message<Drink> drink) {
+		if (StaticMessageHeaderAccessor.getSequenceSize(drink) != 1) {
+			this.aggregatedDrinks.incrementAndGet();
+			return drink;
+		}
+		this.deliveries.send(new GenericMessage<>(new Delivery(Collections.singletonList(drink.getPayload())),
+				drink.getHeaders()));
+		this.fastPathDeliveries.incrementAndGet();
+		return null;
+	}
+
+	@ManagedAttribute(description = "Orders of a single item placed past the splitter")
+	public long getFastPathOrders() {
+		return this.fastPathOrders.get();
+	}
+
+	@ManagedAttribute(description = "Orders of several items sent to the splitter")
+	public long getSplitOrders() {
+		return this.splitOrders.get();
+	}
+
+	@ManagedAttribute(description = "Drinks delivered past the aggregator")
+	public long getFastPathDeliveries() {
+		return this.fastPathDeliveries.get();
+	}
+
+	@ManagedAttribute(description = "Drinks sent to the aggregator")
+	public long getAggregatedDrinks() {
+		return this.aggregatedDrinks.get();
+	}
+
+}
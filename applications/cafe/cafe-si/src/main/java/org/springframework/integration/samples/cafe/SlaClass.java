@@ -0,0 +1,35 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe;
+
+/**
+ * How urgently an {@link Order} is to be delivered. The priority drink queues
+ * give each class a different slack before its drinks are due; see
+ * {@code DrinkPriorityComparator}.
+ * <p/>
+ * {@link #STANDARD} comes first, so that it is the zero value of the binary
+ * formats, e.g. of the orders encoded before there were classes.
+ */
+public enum SlaClass {
+
+	STANDARD,
+
+	EXPRESS,
+
+	RELAXED
+
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.admission;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.integration.core.MessageSelector;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * Rejects an order whose number has been placed before, e.g. because the point
+ * of sale retried the call to the Cafe after a timeout, so that it is not split
+ * and prepared twice. Meant as the selector of an idempotent receiver in front
+ * of the endpoint that takes the orders, with a discard channel.
+ * <p/>
+ * The order numbers of the last orders, up to the window length, are kept in an
+ * exact set, so within the window every duplicate is found and no new order is
+ * ever rejected. In front of the set, a Bloom filter over a much longer horizon
+ * of orders answers for most new orders that they have not been seen, without
+ * probing the set; only the orders it reports as possibly seen are looked up.
+ * Those found in the window are the duplicates. The others are accepted, and
+ * counted as the false positives of the filter: they are new orders the filter
+ * mistook for seen ones, at about the configured false positive rate, or orders
+ * placed again after they left the window, which a window that is too short
+ * lets through.
+ * <p/>
+ * Both are spread over a number of stripes by a hash of the order number, each
+ * guarded by its own monitor, so orders placed at the same time rarely contend
+ * on a lock. Each stripe keeps the most recent of its orders, its share of the
+ * window, in a ring, and their numbers in an open addressing table with linear
+ * probing; the oldest order is dropped from the table as a new one takes its
+ * place in the ring. Its share of the Bloom filter has two generations, each
+ * sized for its share of the horizon at the false positive rate; once the
+ * current one is full, the older one is cleared and takes its place. The memory
+ * stays bounded however many orders are placed, and checking an order allocates
+ * nothing. Since the hash spreads the orders evenly, the stripes together hold
+ * about the last window length orders; with a single stripe exactly those.
+ * <p/>
+ * Payloads other than orders are accepted. The counts of the duplicates, new
+ * orders, positives and false positives of the Bloom filter are exposed as
+ * managed attributes.
+ */
+@ManagedResource
+public class DuplicateOrderFilter implements MessageSelector {
+
+	private static final int DEFAULT_WINDOW_LENGTH = 4096;
+
+	private static final int DEFAULT_STRIPES = 64;
+
+	private static final int DEFAULT_HORIZON = 262144;
+
+	private static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private final int windowLength;
+
+	private final int horizon;
+
+	private final double falsePositiveRate;
+
+	private final Stripe[] stripes;
+
+	private final int stripeMask;
+
+	private final LongAdder duplicates = new LongAdder();
+
+	private final LongAdder newOrders = new LongAdder();
+
+	private final LongAdder falsePositives = new LongAdder();
+
+	/**
+	 * Create a filter for a window of 4096 orders, behind a Bloom filter over
+	 * 262144 orders with a false positive rate of 1%.
+	 */
+	public DuplicateOrderFilter() {
+		this(DEFAULT_WINDOW_LENGTH);
+	}
+
+	/**
+	 * @param windowLength the number of the most recent orders that duplicates are looked for in
+	 */
+	public DuplicateOrderFilter(int windowLength) {
+		this(windowLength, DEFAULT_STRIPES);
+	}
+
+	/**
+	 * @param windowLength the number of the most recent orders that duplicates are looked for in
+	 * @param stripes the number of independently locked stripes, rounded up to a
+	 * power of two, and at most the window length
+	 */
+	public DuplicateOrderFilter(int windowLength, int stripes) {
+		this(windowLength, stripes, Math.max(windowLength, DEFAULT_HORIZON), DEFAULT_FALSE_POSITIVE_RATE);
+	}
+
+	/**
+	 * @param windowLength the number of the most recent orders that duplicates are looked for in
+	 * @param stripes the number of independently locked stripes, rounded up to a
+	 * power of two, and at most the window length
+	 * @param horizon the number of the most recent orders the Bloom filter
+	 * remembers at least, no less than the window length
+	 * @param falsePositiveRate the rate at which the Bloom filter reports a new
+	 * order as possibly seen, which then costs a lookup in the window
+	 */
+	public DuplicateOrderFilter(int windowLength, int stripes, int horizon, double falsePositiveRate) {
+		Assert.isTrue(windowLength > 0, "'windowLength' must be positive");
+		Assert.isTrue(stripes > 0 && stripes <= (1 << 16), "'stripes' must be between 1 and 65536");
+		Assert.isTrue(horizon >= windowLength, "'horizon' must not be shorter than the window");
+		Assert.isTrue(falsePositiveRate > 0 && falsePositiveRate < 1, "'falsePositiveRate' must be between 0 and 1");
+		int size = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+		while (size > 1 && size > windowLength) {
+			size >>>= 1;
+		}
+		this.windowLength = windowLength;
+		this.horizon = horizon;
+		this.falsePositiveRate = falsePositiveRate;
+		this.stripes = new Stripe[size];
+		for (int i = 0; i < size; i++) {
+			// the first stripes take the remainder of the window and the horizon
+			this.stripes[i] = new Stripe(windowLength / size + (i < windowLength % size ? 1 : 0),
+					horizon / size + (i < horizon % size ? 1 : 0), falsePositiveRate);
+		}
+		this.stripeMask = size - 1;
+	}
+
+	@Override
+	public boolean accept(Message<?> message) {
+		Object payload = message.getPayload();
+		if (!(payload instanceof Order)) {
+			return true;
+		}
+		int orderNumber = ((Order) payload).getNumber();
+		long hash = mix(orderNumber);
+		// the Bloom filter's bits are taken from a hash of its own
+		long filterHash = mix(~orderNumber);
+		Stripe stripe = this.stripes[(int) (hash >>> 32) & this.stripeMask];
+		boolean seen;
+		boolean inWindow = false;
+		synchronized (stripe) {
+			seen = stripe.mightContain(filterHash);
+			if (seen) {
+				inWindow = stripe.contains(orderNumber, (int) hash);
+			}
+			if (!inWindow) {
+				stripe.add(orderNumber, (int) hash, filterHash);
+			}
+		}
+		if (inWindow) {
+			this.duplicates.increment();
+			return false;
+		}
+		if (seen) {
+			this.falsePositives.increment();
+		}
+		this.newOrders.increment();
+		return true;
+	}
+
+	@ManagedAttribute
+	public int getWindowLength() {
+		return this.windowLength;
+	}
+
+	@ManagedAttribute
+	public int getStripes() {
+		return this.stripes.length;
+	}
+
+	@ManagedAttribute(description = "The orders the Bloom filter remembers at least")
+	public int getHorizon() {
+		return this.horizon;
+	}
+
+	@ManagedAttribute
+	public double getFalsePositiveRate() {
+		return this.falsePositiveRate;
+	}
+
+	@ManagedAttribute(description = "The bytes of both generations of the Bloom filter")
+	public long getFilterBytes() {
+		long bytes = 0;
+		for (Stripe stripe : this.stripes) {
+			bytes += 2L * stripe.generations[0].length * Long.BYTES;
+		}
+		return bytes;
+	}
+
+	@ManagedAttribute(description = "The orders rejected as placed before")
+	public long getDuplicateOrders() {
+		return this.duplicates.sum();
+	}
+
+	@ManagedAttribute
+	public long getNewOrders() {
+		return this.newOrders.sum();
+	}
+
+	@ManagedAttribute(description = "The orders the Bloom filter reported as possibly seen, "
+			+ "which were looked up in the window")
+	public long getFilterPositives() {
+		return this.duplicates.sum() + this.falsePositives.sum();
+	}
+
+	@ManagedAttribute(description = "The orders the Bloom filter reported as possibly seen that were not "
+			+ "in the window, so were accepted; including those placed again after the window")
+	public long getFalsePositives() {
+		return this.falsePositives.sum();
+	}
+
+	/**
+	 * A hash of the order number, from the finalizer of SplitMix64: the high half
+	 * picks the stripe, the low half the slot in its table. For the Bloom filter,
+	 * the halves of a hash of the complement are two independent hashes.
+	 */
+	private static long mix(int orderNumber) {
+		long z = orderNumber * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+
+	/**
+	 * The most recent orders of one stripe and its share of the Bloom filter,
+	 * guarded by its monitor.
+	 */
+	private static final class Stripe {
+
+		/**
+		 * The order numbers in the order they were placed, the oldest at {@link #next} once full.
+		 */
+		private final int[] window;
+
+		/**
+		 * The same order numbers, at most half full, with {@link #EMPTY} in the free slots.
+		 */
+		private final long[] table;
+
+		private final int tableMask;
+
+		/**
+		 * The bits of the current and the older generation of the Bloom filter.
+		 */
+		private final long[][] generations = new long[2][];
+
+		private final int generationCapacity;
+
+		private final int bitMask;
+
+		private final int hashes;
+
+		private int next;
+
+		private int size;
+
+		private int current;
+
+		private int inCurrentGeneration;
+
+		Stripe(int capacity, int horizon, double falsePositiveRate) {
+			this.window = new int[capacity];
+			int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+			this.table = new long[tableSize];
+			Arrays.fill(this.table, EMPTY);
+			this.tableMask = tableSize - 1;
+			// the optimal size and number of hashes, with the size rounded up to a power of two
+			double optimalBits = -horizon * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+			Assert.isTrue(optimalBits <= (1 << 30), "The horizon is too long for the false positive rate");
+			int bits = Math.max(64, Integer.highestOneBit((int) Math.ceil(optimalBits) - 1) << 1);
+			this.generations[0] = new long[bits >>> 6];
+			this.generations[1] = new long[bits >>> 6];
+			this.generationCapacity = horizon;
+			this.bitMask = bits - 1;
+			this.hashes = Math.max(1, (int) Math.round(optimalBits / horizon * Math.log(2)));
+		}
+
+		/**
+		 * @return false if the order has certainly not been added within the horizon
+		 */
+		boolean mightContain(long filterHash) {
+			return contains(this.generations[this.current], filterHash)
+					|| contains(this.generations[1 - this.current], filterHash);
+		}
+
+		private boolean contains(long[] bits, long filterHash) {
+			int h1 = (int) filterHash;
+			// an odd second hash visits all the bits
+			int h2 = (int) (filterHash >>> 32) | 1;
+			for (int i = 0; i < this.hashes; i++) {
+				int bit = (h1 + i * h2) & this.bitMask;
+				if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * @return true if the order is in the window
+		 */
+		boolean contains(int orderNumber, int hash) {
+			int slot = hash & this.tableMask;
+			for (long key; (key = this.table[slot]) != EMPTY; slot = (slot + 1) & this.tableMask) {
+				if (key == orderNumber) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Add an order that is not in the window, dropping the oldest one if the
+		 * window is full, and to the Bloom filter, clearing its older generation
+		 * if the current one is full.
+		 */
+		void add(int orderNumber, int hash, long filterHash) {
+			if (this.size == this.window.length) {
+				remove(this.window[this.next]);
+			}
+			else {
+				this.size++;
+			}
+			int slot = hash & this.tableMask;
+			while (this.table[slot] != EMPTY) {
+				slot = (slot + 1) & this.tableMask;
+			}
+			this.table[slot] = orderNumber;
+			this.window[this.next] = orderNumber;
+			this.next = this.next + 1 == this.window.length ? 0 : this.next + 1;
+
+			if (this.inCurrentGeneration == this.generationCapacity) {
+				this.current = 1 - this.current;
+				Arrays.fill(this.generations[this.current], 0);
+				this.inCurrentGeneration = 0;
+			}
+			long[] bits = this.generations[this.current];
+			int h1 = (int) filterHash;
+			int h2 = (int) (filterHash >>> 32) | 1;
+			for (int i = 0; i < this.hashes; i++) {
+				int bit = (h1 + i * h2) & this.bitMask;
+				bits[bit >>> 6] |= 1L << bit;
+			}
+			this.inCurrentGeneration++;
+		}
+
+		/**
+		 * Remove an order number that is in the table, and shift the following
+		 * numbers of its cluster back into the gap, so lookups need no tombstones.
+		 */
+		private void remove(int orderNumber) {
+			int gap = (int) mix(orderNumber) & this.tableMask;
+			while (this.table[gap] != orderNumber) {
+				gap = (gap + 1) & this.tableMask;
+			}
+			int slot = gap;
+			while (true) {
+				slot = (slot + 1) & this.tableMask;
+				long key = this.table[slot];
+				if (key == EMPTY) {
+					break;
+				}
+				int home = (int) mix((int) key) & this.tableMask;
+				// the key may move back unless its home lies after the gap
+				if (((slot - home) & this.tableMask) >= ((slot - gap) & this.tableMask)) {
+					this.table[gap] = key;
+					gap = slot;
+				}
+			}
+			this.table[gap] = EMPTY;
+		}
+
+	}
+
+}
@@ -0,0 +1,484 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.admission;
+
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.integration.channel.QueueChannelOperations;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.integration.samples.cafe.OrderItem;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.util.Assert;
+
+/**
+ * Admission control for the orders placed with the Cafe, so that an overload
+ * of the baristas is reported to the caller instead of blocking the splitter on
+ * a full <em>hotDrinks</em> or <em>coldDrinks</em> queue.
+ * <p/>
+ * The controller is an interceptor of the (direct) <em>orders</em> and
+ * <em>orderBatches</em> channels and of both drink queues. Each queue has an
+ * admission limit: the number of drinks its baristas are expected to prepare
+ * within the target queue time, estimated from the rate at which they take
+ * drinks off the queue while it is backlogged, but never more than the capacity
+ * of the queue. An order is admitted if the drinks queued, plus those of the
+ * orders being split right now, plus its own drinks fit into the limit of each
+ * queue; a batch of orders is admitted or refused as a whole. Otherwise the
+ * {@link OverloadPolicy} decides whether it is rejected right away, rejected
+ * with a growing probability as the queue fills up, or delayed until there is
+ * room.
+ * <p/>
+ * Drink channels that are not queues, such as the reactive ones, are not
+ * limited; their backpressure holds up the orders instead.
+ * <p/>
+ * Orders that are not admitted fail with an {@link OrderRejectedException}.
+ * The limits are recomputed by {@link #updateLimits()}, which is meant to be
+ * scheduled at a fixed rate; they and the admission counters are exposed as
+ * managed attributes.
+ */
+@ManagedResource
+public class OrderAdmissionController implements ChannelInterceptor {
+
+	/**
+	 * What to do with an order that does not fit into the limits.
+	 */
+	public enum OverloadPolicy {
+
+		/**
+		 * Reject the order right away.
+		 */
+		REJECT,
+
+		/**
+		 * Block the caller until there is room, for at most the maximum delay.
+		 */
+		DELAY,
+
+		/**
+		 * Reject the order, and also shed orders early with a probability growing
+		 * from 0 at the shed threshold to 1 at the limit.
+		 */
+		SHED
+
+	}
+
+	private final DrinkQueue hotDrinks = new DrinkQueue("hotDrinks");
+
+	private final DrinkQueue coldDrinks = new DrinkQueue("coldDrinks");
+
+	private final Object room = new Object();
+
+	private final LongAdder admitted = new LongAdder();
+
+	private final LongAdder rejected = new LongAdder();
+
+	private final LongAdder shed = new LongAdder();
+
+	private final LongAdder delayed = new LongAdder();
+
+	private volatile int waiting;
+
+	private volatile OverloadPolicy policy = OverloadPolicy.REJECT;
+
+	private volatile long targetQueueTime = 10000;
+
+	private volatile int minLimit = 1;
+
+	private volatile long maxDelay = 5000;
+
+	private volatile double shedThreshold = 0.5;
+
+	private volatile double smoothing = 0.2;
+
+	/**
+	 * @param hotDrinks the channel the hot drinks are routed to; it is only
+	 * limited if it is a queue
+	 */
+	public void setHotDrinks(MessageChannel hotDrinks) {
+		this.hotDrinks.queue = queue(hotDrinks);
+	}
+
+	/**
+	 * @param coldDrinks the channel the cold drinks are routed to; it is only
+	 * limited if it is a queue
+	 */
+	public void setColdDrinks(MessageChannel coldDrinks) {
+		this.coldDrinks.queue = queue(coldDrinks);
+	}
+
+	private static QueueChannelOperations queue(MessageChannel channel) {
+		return channel instanceof QueueChannelOperations ? (QueueChannelOperations) channel : null;
+	}
+
+	/**
+	 * @param policy what to do with orders that do not fit, {@link OverloadPolicy#REJECT} by default
+	 */
+	public void setPolicy(OverloadPolicy policy) {
+		Assert.notNull(policy, "'policy' must not be null");
+		this.policy = policy;
+	}
+
+	/**
+	 * @param targetQueueTime the time in milliseconds a drink should wait on its queue at most
+	 */
+	public void setTargetQueueTime(long targetQueueTime) {
+		Assert.isTrue(targetQueueTime > 0, "'targetQueueTime' must be positive");
+		this.targetQueueTime = targetQueueTime;
+	}
+
+	/**
+	 * @param minLimit the lowest limit of a queue, however slow its baristas
+	 */
+	public void setMinLimit(int minLimit) {
+		Assert.isTrue(minLimit > 0, "'minLimit' must be positive");
+		this.minLimit = minLimit;
+	}
+
+	/**
+	 * @param maxDelay the time in milliseconds an order waits for room with the
+	 * {@link OverloadPolicy#DELAY} policy before it is rejected
+	 */
+	public void setMaxDelay(long maxDelay) {
+		this.maxDelay = maxDelay;
+	}
+
+	/**
+	 * @param shedThreshold the fraction of the limit above which the
+	 * {@link OverloadPolicy#SHED} policy starts to shed orders
+	 */
+	public void setShedThreshold(double shedThreshold) {
+		Assert.isTrue(shedThreshold >= 0 && shedThreshold < 1, "'shedThreshold' must be in [0, 1)");
+		this.shedThreshold = shedThreshold;
+	}
+
+	/**
+	 * @param smoothing the weight of the latest sample in the moving average of
+	 * the service rates
+	 */
+	public void setSmoothing(double smoothing) {
+		Assert.isTrue(smoothing > 0 && smoothing <= 1, "'smoothing' must be in (0, 1]");
+		this.smoothing = smoothing;
+	}
+
+	@Override
+	public Message<?> preSend(Message<?> message, MessageChannel channel) {
+		Object orders = message.getPayload();
+		if (!isOrders(orders)) {
+			return message;
+		}
+		int hot = countDrinks(orders, false);
+		int cold = countDrinks(orders, true);
+		OverloadPolicy policy = this.policy;
+		if (policy == OverloadPolicy.SHED) {
+			shedOrder(message, hot, cold);
+		}
+		DrinkQueue full = tryAdmit(hot, cold);
+		if (full != null && policy == OverloadPolicy.DELAY) {
+			this.delayed.increment();
+			full = awaitAdmission(hot, cold);
+		}
+		if (full != null) {
+			this.rejected.increment();
+			int limit = full.limit();
+			int queued = full.depth();
+			throw new OrderRejectedException(message, describe(orders) + " rejected: " + queued
+					+ " drinks are already waiting on " + full.name + ", its limit is " + limit, false, limit, queued);
+		}
+		this.admitted.increment();
+		return message;
+	}
+
+	@Override
+	public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+		Object orders = message.getPayload();
+		if (isOrders(orders)) {
+			this.hotDrinks.release(countDrinks(orders, false));
+			this.coldDrinks.release(countDrinks(orders, true));
+			signalRoom();
+		}
+	}
+
+	@Override
+	public Message<?> postReceive(Message<?> message, MessageChannel channel) {
+		if (message != null) {
+			if (channel == this.hotDrinks.queue) {
+				this.hotDrinks.departures.increment();
+			}
+			else if (channel == this.coldDrinks.queue) {
+				this.coldDrinks.departures.increment();
+			}
+			signalRoom();
+		}
+		return message;
+	}
+
+	/**
+	 * Re-estimate the service rate of each queue and derive its limit.
+	 */
+	public void updateLimits() {
+		long now = System.nanoTime();
+		this.hotDrinks.update(now);
+		this.coldDrinks.update(now);
+		signalRoom();
+	}
+
+	@ManagedAttribute(description = "The number of hot drinks that may be queued")
+	public int getHotDrinksLimit() {
+		return this.hotDrinks.limit();
+	}
+
+	@ManagedAttribute(description = "The number of cold drinks that may be queued")
+	public int getColdDrinksLimit() {
+		return this.coldDrinks.limit();
+	}
+
+	@ManagedAttribute(description = "The hot drinks prepared per second, NaN until measured")
+	public double getHotDrinksServiceRate() {
+		return this.hotDrinks.serviceRate;
+	}
+
+	@ManagedAttribute(description = "The cold drinks prepared per second, NaN until measured")
+	public double getColdDrinksServiceRate() {
+		return this.coldDrinks.serviceRate;
+	}
+
+	@ManagedAttribute
+	public long getAdmittedOrders() {
+		return this.admitted.sum();
+	}
+
+	@ManagedAttribute(description = "The orders rejected because a queue was at its limit")
+	public long getRejectedOrders() {
+		return this.rejected.sum();
+	}
+
+	@ManagedAttribute(description = "The orders shed early by the SHED policy")
+	public long getShedOrders() {
+		return this.shed.sum();
+	}
+
+	@ManagedAttribute(description = "The orders that had to wait for room with the DELAY policy")
+	public long getDelayedOrders() {
+		return this.delayed.sum();
+	}
+
+	private void shedOrder(Message<?> message, int hot, int cold) {
+		double threshold = this.shedThreshold;
+		for (DrinkQueue queue : new DrinkQueue[] { this.hotDrinks, this.coldDrinks }) {
+			int drinks = queue == this.hotDrinks ? hot : cold;
+			if (drinks == 0) {
+				continue;
+			}
+			int limit = queue.limit();
+			int queued = queue.depth();
+			double load = (double) (queued + drinks) / limit;
+			if (load > threshold && load <= 1
+					&& ThreadLocalRandom.current().nextDouble() < (load - threshold) / (1 - threshold)) {
+				this.shed.increment();
+				throw new OrderRejectedException(message, describe(message.getPayload())
+						+ " shed: " + queued + " drinks are already waiting on " + queue.name + ", its limit is "
+						+ limit, true, limit, queued);
+			}
+		}
+	}
+
+	/**
+	 * @return null if the drinks were admitted, or the queue they did not fit on
+	 */
+	private DrinkQueue tryAdmit(int hot, int cold) {
+		if (!this.hotDrinks.reserve(hot)) {
+			return this.hotDrinks;
+		}
+		if (!this.coldDrinks.reserve(cold)) {
+			this.hotDrinks.release(hot);
+			return this.coldDrinks;
+		}
+		return null;
+	}
+
+	private DrinkQueue awaitAdmission(int hot, int cold) {
+		long deadline = System.currentTimeMillis() + this.maxDelay;
+		DrinkQueue full = tryAdmit(hot, cold);
+		while (full != null) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return full;
+			}
+			synchronized (this.room) {
+				this.waiting++;
+				try {
+					// bounded, as another caller's reservation may be released without a signal in between
+					this.room.wait(Math.min(remaining, 100));
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return full;
+				}
+				finally {
+					this.waiting--;
+				}
+			}
+			full = tryAdmit(hot, cold);
+		}
+		return null;
+	}
+
+	private void signalRoom() {
+		if (this.waiting > 0) {
+			synchronized (this.room) {
+				this.room.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * An order, or a batch of orders placed with {@link org.springframework.integration.samples.cafe.Cafe#placeOrders}.
+	 */
+	private static boolean isOrders(Object payload) {
+		return payload instanceof Order || payload instanceof Collection;
+	}
+
+	private static String describe(Object orders) {
+		return orders instanceof Order ? "Order #" + ((Order) orders).getNumber()
+				: "Batch of " + ((Collection<?>) orders).size() + " orders";
+	}
+
+	private static int countDrinks(Object orders, boolean iced) {
+		int count = 0;
+		if (orders instanceof Order) {
+			for (OrderItem item : ((Order) orders).getItems()) {
+				if (item.isIced() == iced) {
+					count++;
+				}
+			}
+		}
+		else if (orders instanceof Collection) {
+			for (Object order : (Collection<?>) orders) {
+				count += countDrinks(order, iced);
+			}
+		}
+		return count;
+	}
+
+
+	/**
+	 * The admission state of one drink queue.
+	 */
+	private final class DrinkQueue {
+
+		private final String name;
+
+		private final AtomicInteger reserved = new AtomicInteger();
+
+		private final LongAdder departures = new LongAdder();
+
+		private volatile QueueChannelOperations queue;
+
+		private volatile double serviceRate = Double.NaN;
+
+		private volatile int limit = Integer.MAX_VALUE;
+
+		private long lastUpdate = System.nanoTime();
+
+		private int lastQueueSize;
+
+		DrinkQueue(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * The drinks on the queue plus those of the orders admitted but not yet split.
+		 */
+		int depth() {
+			QueueChannelOperations queue = this.queue;
+			return (queue != null ? queue.getQueueSize() : 0) + this.reserved.get();
+		}
+
+		boolean reserve(int drinks) {
+			if (drinks == 0) {
+				return true;
+			}
+			int limit = limit();
+			while (true) {
+				int reserved = this.reserved.get();
+				int queued = (this.queue != null ? this.queue.getQueueSize() : 0) + reserved;
+				// an order larger than the limit is only admitted to an empty queue
+				if (queued + drinks > limit && queued > 0) {
+					return false;
+				}
+				if (this.reserved.compareAndSet(reserved, reserved + drinks)) {
+					return true;
+				}
+			}
+		}
+
+		void release(int drinks) {
+			if (drinks > 0) {
+				this.reserved.addAndGet(-drinks);
+			}
+		}
+
+		synchronized void update(long now) {
+			QueueChannelOperations queue = this.queue;
+			if (queue == null) {
+				return;
+			}
+			long drained = this.departures.sumThenReset();
+			long elapsed = now - this.lastUpdate;
+			int queueSize = queue.getQueueSize();
+			// only a backlogged queue shows how fast the baristas are, an idle one shows the arrival rate
+			if (this.lastQueueSize > 0 && elapsed > 0) {
+				double rate = drained * 1e9 / elapsed;
+				double previous = this.serviceRate;
+				this.serviceRate = Double.isNaN(previous) ? rate
+						: OrderAdmissionController.this.smoothing * rate
+								+ (1 - OrderAdmissionController.this.smoothing) * previous;
+			}
+			this.lastUpdate = now;
+			this.lastQueueSize = queueSize;
+			int capacity = capacity();
+			double serviceRate = this.serviceRate;
+			if (Double.isNaN(serviceRate)) {
+				this.limit = capacity;
+			}
+			else {
+				long limit = (long) Math.ceil(serviceRate * OrderAdmissionController.this.targetQueueTime / 1000);
+				this.limit = (int) Math.min(capacity, Math.max(OrderAdmissionController.this.minLimit, limit));
+			}
+		}
+
+		/**
+		 * The current limit, the capacity of the queue until the first update.
+		 */
+		int limit() {
+			return Math.min(this.limit, capacity());
+		}
+
+		private int capacity() {
+			QueueChannelOperations queue = this.queue;
+			return queue != null ? queue.getQueueSize() + queue.getRemainingCapacity() : Integer.MAX_VALUE;
+		}
+
+	}
+
+}
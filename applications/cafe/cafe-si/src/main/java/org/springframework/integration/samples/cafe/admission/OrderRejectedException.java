@@ -0,0 +1,63 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.admission;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+
+/**
+ * Thrown to the caller placing an order that the {@link OrderAdmissionController}
+ * did not admit because the baristas are overloaded.
+ */
+@SuppressWarnings("serial")
+public class OrderRejectedException extends MessageDeliveryException {
+
+	private final boolean shed;
+
+	private final int limit;
+
+	private final int queued;
+
+	public OrderRejectedException(Message<?> order, String description, boolean shed, int limit, int queued) {
+		super(order, description);
+		this.shed = shed;
+		this.limit = limit;
+		this.queued = queued;
+	}
+
+	/**
+	 * @return true if the order was shed early, before the queue reached its limit
+	 */
+	public boolean isShed() {
+		return this.shed;
+	}
+
+	/**
+	 * @return the admission limit of the drink queue that refused the order
+	 */
+	public int getLimit() {
+		return this.limit;
+	}
+
+	/**
+	 * @return the number of drinks queued or admitted on that queue at the time
+	 */
+	public int getQueued() {
+		return this.queued;
+	}
+
+}
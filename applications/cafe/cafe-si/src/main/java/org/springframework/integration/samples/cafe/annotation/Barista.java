@@ -16,6 +16,8 @@
 
 package org.springframework.integration.samples.cafe.annotation;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
@@ -85,4 +87,40 @@ public class Barista {
 		}
 	}
 
+	/**
+	 * Prepare a batch of hot drinks, taking the hot drink delay for each of them.
+	 * @param orderItems the hot drinks taken off the queue at once
+	 * @return the drinks, in the order of the items
+	 */
+	public List<Drink> prepareHotDrinks(List<OrderItem> orderItems) {
+		return prepareDrinks(orderItems, this.hotDrinkDelay, this.hotDrinkCounter, "hot");
+	}
+
+	/**
+	 * Prepare a batch of cold drinks, taking the cold drink delay for each of them.
+	 * @param orderItems the cold drinks taken off the queue at once
+	 * @return the drinks, in the order of the items
+	 */
+	public List<Drink> prepareColdDrinks(List<OrderItem> orderItems) {
+		return prepareDrinks(orderItems, this.coldDrinkDelay, this.coldDrinkCounter, "cold");
+	}
+
+	private List<Drink> prepareDrinks(List<OrderItem> orderItems, long delay, AtomicInteger counter, String kind) {
+		try {
+			Thread.sleep(delay * orderItems.size());
+			List<Drink> drinks = new ArrayList<>(orderItems.size());
+			for (OrderItem orderItem : orderItems) {
+				drinks.add(new Drink(orderItem.getOrderNumber(), orderItem.getDrinkType(), orderItem.isIced(),
+						orderItem.getShots()));
+			}
+			int last = counter.addAndGet(orderItems.size());
+			logger.info(Thread.currentThread().getName() + " prepared " + kind + " drinks #"
+					+ (last - orderItems.size() + 1) + " to #" + last + " in one batch");
+			return drinks;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
 }
@@ -29,7 +29,7 @@ import org.springframework.integration.annotation.Splitter;
 @MessageEndpoint
 public class OrderSplitter {
 
-	@Splitter(inputChannel="orders", outputChannel="drinks")
+	@Splitter(inputChannel="multiItemOrders", outputChannel="drinks")
 	public List<OrderItem> split(Order order) {
 		return order.getItems();
 	}
@@ -30,7 +30,8 @@ import org.springframework.integration.annotation.MessageEndpoint;
 @MessageEndpoint
 public class Waiter {
 
-	@Aggregator(inputChannel = "preparedDrinks", outputChannel = "deliveries")
+	// the drinks of an order that times out in the drinkGroupStore are delivered as they are
+	@Aggregator(inputChannel = "multiItemDrinks", outputChannel = "deliveries", sendPartialResultsOnExpiry = "true")
 	public Delivery prepareDelivery(List<Drink> drinks) {
 		return new Delivery(drinks);
 	}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.integration.core.MessageSource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.PollableChannel;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.util.Assert;
+
+/**
+ * Drains a queue in micro-batches, so that a service activator handles a whole
+ * batch of payloads in one activation, and sends each result on as a message of
+ * its own again.
+ * <p/>
+ * As a {@link MessageSource} polled by an inbound channel adapter, {@link #receive()}
+ * takes the messages waiting on the queue, up to the batch size. If there are
+ * fewer, it waits for more for at most the maximum wait after the first one.
+ * The payloads are sent on as a single <code>List</code> payload and the headers
+ * of each message are kept in the {@link #BATCH_HEADERS} header.
+ * <p/>
+ * {@link #unbatch(Message)} takes the <code>List</code> of results of that batch,
+ * with the request headers as copied by the service activator, and sends one
+ * message per result with the headers of the message it was produced from, so
+ * that e.g. an aggregator downstream can correlate them as before.
+ */
+public class MessageBatcher implements MessageSource<List<Object>> {
+
+	/**
+	 * The header holding the headers of the batched messages, in their order.
+	 */
+	public static final String BATCH_HEADERS = "batchHeaders";
+
+	private final PollableChannel input;
+
+	private final MessageChannel output;
+
+	private volatile int batchSize = 32;
+
+	private volatile long maxWait = 10;
+
+	/**
+	 * @param input the queue to drain
+	 * @param output the channel for the unbatched results
+	 */
+	public MessageBatcher(PollableChannel input, MessageChannel output) {
+		Assert.notNull(input, "'input' must not be null");
+		Assert.notNull(output, "'output' must not be null");
+		this.input = input;
+		this.output = output;
+	}
+
+	/**
+	 * @param batchSize the maximum number of messages in a batch
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "'batchSize' must be positive");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param maxWait the time in milliseconds to wait for a batch to fill up
+	 * after its first message
+	 */
+	public void setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	@Override
+	public Message<List<Object>> receive() {
+		Message<?> message = this.input.receive(0);
+		if (message == null) {
+			return null;
+		}
+		int batchSize = this.batchSize;
+		long deadline = System.currentTimeMillis() + this.maxWait;
+		List<Object> payloads = new ArrayList<>(batchSize);
+		List<MessageHeaders> headers = new ArrayList<>(batchSize);
+		while (message != null) {
+			payloads.add(message.getPayload());
+			headers.add(message.getHeaders());
+			if (payloads.size() == batchSize) {
+				break;
+			}
+			message = this.input.receive(0);
+			if (message == null) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining > 0) {
+					message = this.input.receive(remaining);
+				}
+			}
+		}
+		return new GenericMessage<>(payloads, Collections.singletonMap(BATCH_HEADERS, headers));
+	}
+
+	/**
+	 * @param results the results of a batch, one for each message and in the same order
+	 */
+	public void unbatch(Message<? extends List<?>> results) {
+		List<?> payloads = results.getPayload();
+		@SuppressWarnings("unchecked")
+		List<Map<String, Object>> headers = results.getHeaders().get(BATCH_HEADERS, List.class);
+		Assert.state(headers != null && headers.size() == payloads.size(),
+				"Expected one result for each message of the batch");
+		for (int i = 0; i < payloads.size(); i++) {
+			this.output.send(new GenericMessage<>(payloads.get(i), headers.get(i)));
+		}
+	}
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.batch;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.integration.core.MessageSource;
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.OrderItem;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.PollableChannel;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.util.Assert;
+
+/**
+ * Prepares identical drinks of different orders once, and hands a copy to each
+ * of the orders.
+ * <p/>
+ * As a {@link MessageSource} polled by an inbound channel adapter, {@link #receive()}
+ * takes the items waiting on the queue, up to the batch size, waiting for more
+ * for at most the window after the first one. It groups them by recipe (drink
+ * type, shots and iced) and returns one item per recipe, in the order the
+ * recipes were first seen. The messages of all items with that recipe are kept
+ * in the {@link #COALESCED_ITEMS} header.
+ * <p/>
+ * {@link #fanOut(Message)} takes the drink prepared for a recipe, with the
+ * request headers as copied by the service activator, and sends one copy of it
+ * per coalesced item, with the order number of the item and the headers of its
+ * message, so that the aggregator downstream correlates and completes the
+ * orders as before.
+ */
+@ManagedResource
+public class RecipeCoalescer implements MessageSource<OrderItem> {
+
+	/**
+	 * The header holding the messages of the items coalesced into one recipe.
+	 */
+	public static final String COALESCED_ITEMS = "coalescedItems";
+
+	private final PollableChannel input;
+
+	private final MessageChannel output;
+
+	private final Deque<Message<OrderItem>> recipes = new ArrayDeque<>();
+
+	private final AtomicLong coalescedItems = new AtomicLong();
+
+	private final AtomicLong preparedRecipes = new AtomicLong();
+
+	private volatile int batchSize = 32;
+
+	private volatile long window = 10;
+
+	/**
+	 * @param input the queue of the items to prepare
+	 * @param output the channel for the drinks of the coalesced items
+	 */
+	public RecipeCoalescer(PollableChannel input, MessageChannel output) {
+		Assert.notNull(input, "'input' must not be null");
+		Assert.notNull(output, "'output' must not be null");
+		this.input = input;
+		this.output = output;
+	}
+
+	/**
+	 * @param batchSize the maximum number of items taken off the queue per window
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "'batchSize' must be positive");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param window the time in milliseconds to wait for identical items after
+	 * the first one
+	 */
+	public void setWindow(long window) {
+		this.window = window;
+	}
+
+	@Override
+	public synchronized Message<OrderItem> receive() {
+		if (this.recipes.isEmpty()) {
+			coalesce();
+		}
+		return this.recipes.poll();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void coalesce() {
+		Message<?> message = this.input.receive(0);
+		if (message == null) {
+			return;
+		}
+		int batchSize = this.batchSize;
+		long deadline = System.currentTimeMillis() + this.window;
+		Map<Recipe, List<Message<OrderItem>>> recipes = new LinkedHashMap<>();
+		int items = 0;
+		while (message != null) {
+			OrderItem item = (OrderItem) message.getPayload();
+			recipes.computeIfAbsent(new Recipe(item), recipe -> new ArrayList<>())
+					.add((Message<OrderItem>) message);
+			if (++items == batchSize) {
+				break;
+			}
+			message = this.input.receive(0);
+			if (message == null) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining > 0) {
+					message = this.input.receive(remaining);
+				}
+			}
+		}
+		for (List<Message<OrderItem>> coalesced : recipes.values()) {
+			this.recipes.add(new GenericMessage<>(coalesced.get(0).getPayload(),
+					Collections.singletonMap(COALESCED_ITEMS, coalesced)));
+		}
+		this.coalescedItems.addAndGet(items);
+		this.preparedRecipes.addAndGet(recipes.size());
+	}
+
+	/**
+	 * @param drink the drink prepared for a recipe, with the {@link #COALESCED_ITEMS} header
+	 */
+	public void fanOut(Message<Drink> drink) {
+		@SuppressWarnings("unchecked")
+		List<Message<OrderItem>> coalesced = drink.getHeaders().get(COALESCED_ITEMS, List.class);
+		Assert.state(coalesced != null, "Expected the '" + COALESCED_ITEMS + "' header");
+		Drink prepared = drink.getPayload();
+		for (Message<OrderItem> item : coalesced) {
+			Drink copy = new Drink(item.getPayload().getOrderNumber(), prepared.getDrinkType(), prepared.isIced(),
+					prepared.getShots());
+			this.output.send(new GenericMessage<>(copy, item.getHeaders()));
+		}
+	}
+
+	@ManagedAttribute(description = "The items taken off the queue")
+	public long getCoalescedItems() {
+		return this.coalescedItems.get();
+	}
+
+	@ManagedAttribute(description = "The recipes prepared for those items")
+	public long getPreparedRecipes() {
+		return this.preparedRecipes.get();
+	}
+
+
+	/**
+	 * What makes two items the same drink.
+	 */
+	private static final class Recipe {
+
+		private final DrinkType drinkType;
+
+		private final int shots;
+
+		private final boolean iced;
+
+		Recipe(OrderItem item) {
+			this.drinkType = item.getDrinkType();
+			this.shots = item.getShots();
+			this.iced = item.isIced();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Recipe)) {
+				return false;
+			}
+			Recipe other = (Recipe) obj;
+			return this.drinkType == other.drinkType && this.shots == other.shots && this.iced == other.iced;
+		}
+
+		@Override
+		public int hashCode() {
+			return (31 * (this.drinkType == null ? 0 : this.drinkType.hashCode()) + this.shots) * 2
+					+ (this.iced ? 1 : 0);
+		}
+
+	}
+
+}
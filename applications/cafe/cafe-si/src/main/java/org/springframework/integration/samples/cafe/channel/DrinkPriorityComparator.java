@@ -0,0 +1,120 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.channel;
+
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.springframework.integration.StaticMessageHeaderAccessor;
+import org.springframework.integration.samples.cafe.OrderItem;
+import org.springframework.integration.samples.cafe.SlaClass;
+import org.springframework.integration.store.MessageGroupStore;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * Ranks the drinks in a barista queue by when they are due, so that the barista
+ * takes the most urgent drink rather than the oldest one.
+ * <p/>
+ * A drink is due at the time its order was split, the timestamp of its message,
+ * plus the slack of the {@link SlaClass} of its order, plus a penalty for every
+ * other drink its order is still missing: the drinks the Waiter holds for the
+ * order in the <em>drinkGroupStore</em>, subtracted from the sequence size of the
+ * drink. So the last drink of an order jumps ahead of the first drinks of the
+ * orders placed a little later, and a large order does not hold up the small
+ * ones behind it, while its age bounds how long its drinks can be overtaken.
+ * Without a store, all the drinks of an order count as missing.
+ * <p/>
+ * The drinks held by the Waiter change while the others wait, so this ranking is
+ * meant to be evaluated when a drink is taken, as the
+ * {@link DynamicPriorityQueue} does; a heap would keep the ranking the drinks
+ * had when they were queued.
+ */
+public class DrinkPriorityComparator implements Comparator<Message<?>> {
+
+	private final MessageGroupStore drinkGroupStore;
+
+	private final Map<SlaClass, Long> slack = new EnumMap<>(SlaClass.class);
+
+	private long missingDrinkPenalty = 5000;
+
+	/**
+	 * Create a comparator that does not know which drinks the Waiter holds.
+	 */
+	public DrinkPriorityComparator() {
+		this(null);
+	}
+
+	/**
+	 * @param drinkGroupStore the store of the Waiter, grouping the drinks by order number, or null
+	 */
+	public DrinkPriorityComparator(MessageGroupStore drinkGroupStore) {
+		this.drinkGroupStore = drinkGroupStore;
+		this.slack.put(SlaClass.EXPRESS, 0L);
+		this.slack.put(SlaClass.STANDARD, 30000L);
+		this.slack.put(SlaClass.RELAXED, 120000L);
+	}
+
+	/**
+	 * @param slack the milliseconds after which the drinks of each class are due,
+	 * by default 0 for {@link SlaClass#EXPRESS}, 30 seconds for
+	 * {@link SlaClass#STANDARD} and 2 minutes for {@link SlaClass#RELAXED}
+	 */
+	public void setSlack(Map<SlaClass, Long> slack) {
+		Assert.notNull(slack, "'slack' must not be null");
+		this.slack.putAll(slack);
+	}
+
+	/**
+	 * @param missingDrinkPenalty the milliseconds a drink is due later for every
+	 * other drink its order is still missing, 5 seconds by default, about the time
+	 * a hot drink takes
+	 */
+	public void setMissingDrinkPenalty(long missingDrinkPenalty) {
+		Assert.isTrue(missingDrinkPenalty >= 0, "'missingDrinkPenalty' must not be negative");
+		this.missingDrinkPenalty = missingDrinkPenalty;
+	}
+
+	@Override
+	public int compare(Message<?> drink1, Message<?> drink2) {
+		return Long.compare(due(drink1), due(drink2));
+	}
+
+	/**
+	 * @param drink the message of an order item
+	 * @return the time in milliseconds when the drink is due
+	 */
+	public long due(Message<?> drink) {
+		Long timestamp = drink.getHeaders().getTimestamp();
+		long due = timestamp != null ? timestamp : 0;
+		Object payload = drink.getPayload();
+		SlaClass slaClass = payload instanceof OrderItem ? ((OrderItem) payload).getSlaClass() : null;
+		Long slack = this.slack.get(slaClass != null ? slaClass : SlaClass.STANDARD);
+		return due + (slack != null ? slack : 0) + (missingDrinks(drink) - 1) * this.missingDrinkPenalty;
+	}
+
+	private int missingDrinks(Message<?> drink) {
+		int missing = Math.max(StaticMessageHeaderAccessor.getSequenceSize(drink), 1);
+		if (this.drinkGroupStore != null && drink.getPayload() instanceof OrderItem) {
+			missing -= this.drinkGroupStore.messageGroupSize(((OrderItem) drink.getPayload()).getOrderNumber());
+		}
+		// at least this drink is missing
+		return Math.max(missing, 1);
+	}
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.channel;
+
+import java.util.Comparator;
+
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.messaging.Message;
+
+/**
+ * A {@link QueueChannel} backed by a {@link DynamicPriorityQueue}: a receiver
+ * gets the message the comparator ranks first when it receives, rather than
+ * when the message was sent as with a <code>PriorityChannel</code>. With a
+ * {@link DrinkPriorityComparator} it replaces the FIFO barista queues, so that
+ * the drinks completing an order and those of urgent orders are prepared first.
+ */
+public class DynamicPriorityChannel extends QueueChannel {
+
+	/**
+	 * @param capacity the capacity, kept small since every receive compares all the messages
+	 * @param comparator ranks the message to receive first lowest
+	 */
+	public DynamicPriorityChannel(int capacity, Comparator<? super Message<?>> comparator) {
+		super(new DynamicPriorityQueue<>(capacity, comparator));
+	}
+
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.channel;
+
+import java.util.AbstractQueue;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.util.Assert;
+
+/**
+ * A bounded {@link BlockingQueue} that hands out the element its comparator
+ * ranks first at the time the element is taken, for rankings that change while
+ * the elements wait, such as the one of the {@link DrinkPriorityComparator}.
+ * <p/>
+ * The elements are kept in the order they were added, and every poll or peek
+ * compares all of them, so the capacity should stay small, e.g. the 16 drinks
+ * of the default barista queues; elements that rank the same are taken in the
+ * order they were added. A single lock guards the queue, as in an
+ * <code>ArrayBlockingQueue</code>. The iterator is a snapshot in the order of
+ * addition, which does not support removal.
+ *
+ * @param <E> the element type
+ */
+public class DynamicPriorityQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+	private final Object[] elements;
+
+	private final Comparator<? super E> comparator;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition notEmpty = this.lock.newCondition();
+
+	private final Condition notFull = this.lock.newCondition();
+
+	private int count;
+
+	/**
+	 * @param capacity the capacity
+	 * @param comparator ranks the element to take first lowest
+	 */
+	public DynamicPriorityQueue(int capacity, Comparator<? super E> comparator) {
+		Assert.isTrue(capacity > 0, "'capacity' must be positive");
+		Assert.notNull(comparator, "'comparator' must not be null");
+		this.elements = new Object[capacity];
+		this.comparator = comparator;
+	}
+
+	@Override
+	public boolean offer(E element) {
+		Assert.notNull(element, "'element' must not be null");
+		this.lock.lock();
+		try {
+			if (this.count == this.elements.length) {
+				return false;
+			}
+			enqueue(element);
+			return true;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public E poll() {
+		this.lock.lock();
+		try {
+			return this.count == 0 ? null : dequeue();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E peek() {
+		this.lock.lock();
+		try {
+			return this.count == 0 ? null : (E) this.elements[first()];
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public void put(E element) throws InterruptedException {
+		Assert.notNull(element, "'element' must not be null");
+		this.lock.lockInterruptibly();
+		try {
+			while (this.count == this.elements.length) {
+				this.notFull.await();
+			}
+			enqueue(element);
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException {
+		Assert.notNull(element, "'element' must not be null");
+		long nanos = unit.toNanos(timeout);
+		this.lock.lockInterruptibly();
+		try {
+			while (this.count == this.elements.length) {
+				if (nanos <= 0) {
+					return false;
+				}
+				nanos = this.notFull.awaitNanos(nanos);
+			}
+			enqueue(element);
+			return true;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		this.lock.lockInterruptibly();
+		try {
+			while (this.count == 0) {
+				this.notEmpty.await();
+			}
+			return dequeue();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		this.lock.lockInterruptibly();
+		try {
+			while (this.count == 0) {
+				if (nanos <= 0) {
+					return null;
+				}
+				nanos = this.notEmpty.awaitNanos(nanos);
+			}
+			return dequeue();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		this.lock.lock();
+		try {
+			return this.count;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return this.elements.length - size();
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> collection) {
+		return drainTo(collection, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Drain the elements in the order they rank at the time of the call.
+	 */
+	@Override
+	public int drainTo(Collection<? super E> collection, int maxElements) {
+		Assert.isTrue(collection != this, "Cannot drain a queue into itself");
+		this.lock.lock();
+		try {
+			int drained = 0;
+			while (drained < maxElements && this.count > 0) {
+				collection.add(dequeue());
+				drained++;
+			}
+			return drained;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public void clear() {
+		this.lock.lock();
+		try {
+			Arrays.fill(this.elements, 0, this.count, null);
+			this.count = 0;
+			this.notFull.signalAll();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return an iterator over a snapshot of the elements, which does not support removal
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Iterator<E> iterator() {
+		this.lock.lock();
+		try {
+			return Collections.unmodifiableList(Arrays.asList((E[]) Arrays.copyOf(this.elements, this.count)))
+					.iterator();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	private void enqueue(E element) {
+		this.elements[this.count++] = element;
+		this.notEmpty.signal();
+	}
+
+	@SuppressWarnings("unchecked")
+	private E dequeue() {
+		int first = first();
+		E element = (E) this.elements[first];
+		// keep the order of addition for the elements that rank the same
+		System.arraycopy(this.elements, first + 1, this.elements, first, this.count - first - 1);
+		this.elements[--this.count] = null;
+		this.notFull.signal();
+		return element;
+	}
+
+	@SuppressWarnings("unchecked")
+	private int first() {
+		int first = 0;
+		for (int i = 1; i < this.count; i++) {
+			if (this.comparator.compare((E) this.elements[i], (E) this.elements[first]) < 0) {
+				first = i;
+			}
+		}
+		return first;
+	}
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.channel;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+import org.springframework.integration.channel.QueueChannel;
+
+/**
+ * A {@link QueueChannel} backed by a {@link MappedJournalQueue}: the messages
+ * queued are kept in a memory-mapped journal file and are queued again when the
+ * channel is created after a crash. A message received is no longer in the
+ * journal, so one a consumer was handling at the time of the crash is lost. It is polled like any other queue channel,
+ * so it can replace <code>&lt;int:channel&gt;&lt;int:queue/&gt;&lt;/int:channel&gt;</code>
+ * as is, as long as the payloads can be written by the journal's serializer.
+ * <p/>
+ * Removing individual messages with {@link #purge} is not supported. The journal
+ * file is closed with the application context.
+ */
+public class JournalChannel extends QueueChannel implements Closeable {
+
+	/**
+	 * The size of a new journal file if none is given.
+	 */
+	public static final int DEFAULT_JOURNAL_SIZE = 1024 * 1024;
+
+	private final MappedJournalQueue journal;
+
+	/**
+	 * Open or create a journal of cafe payloads of the default size.
+	 * @param file the journal file
+	 * @param capacity the maximum number of messages in the channel
+	 * @throws IOException if the file cannot be mapped or is not a journal
+	 */
+	public JournalChannel(File file, int capacity) throws IOException {
+		this(new MappedJournalQueue(file, DEFAULT_JOURNAL_SIZE, capacity));
+	}
+
+	/**
+	 * @param journal the journal to queue the messages in
+	 */
+	public JournalChannel(MappedJournalQueue journal) {
+		super(journal);
+		this.journal = journal;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.journal.close();
+	}
+
+}
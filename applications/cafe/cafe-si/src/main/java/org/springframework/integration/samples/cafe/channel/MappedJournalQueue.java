@@ -0,0 +1,501 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.channel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.core.serializer.Serializer;
+import org.springframework.integration.samples.cafe.codec.CafeCodec;
+import org.springframework.integration.samples.cafe.codec.MessageCodec;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessagingException;
+import org.springframework.util.Assert;
+
+/**
+ * A bounded {@link BlockingQueue} of messages that keeps them in an append-only
+ * journal file mapped into memory, so that the messages still queued survive a
+ * crash of the process.
+ * <p/>
+ * Each message is appended as a record of its headers and its payload, written
+ * by a {@link MessageCodec} with the {@link CafeCodec} unless another serializer
+ * is given, and followed by an end marker; its length is written last, which
+ * publishes it. The offset of the first message not yet taken, the consumer
+ * offset, is kept at the start of the file and moves past each message as it is
+ * taken, before the consumer has handled it. On opening an existing journal, the
+ * messages from the consumer offset up to the end marker are queued again. A
+ * message is therefore delivered at most once once it is taken: a crash while
+ * its consumer handles it, e.g. while a barista prepares the drink, loses it.
+ * <p/>
+ * When the records reach the end of the file, the journal wraps around to its
+ * start, as far as the messages there have been taken; once all messages are
+ * taken it starts over at the beginning. Only headers with a <code>String</code>,
+ * <code>Integer</code>, <code>Long</code>, <code>Boolean</code> or <code>UUID</code>
+ * value, such as the correlation and sequence headers, are kept; other headers,
+ * such as reply channel instances, and the message id and timestamp are not.
+ * <p/>
+ * The records are written to the page cache, which survives the process; with
+ * {@link #setForce(boolean) force} each append and take is also flushed to
+ * the disk, which survives the machine, at the cost of a disk write per message.
+ * Messages cannot be removed from the middle of the queue, and its iterator is a
+ * snapshot.
+ */
+public class MappedJournalQueue extends AbstractQueue<Message<?>> implements BlockingQueue<Message<?>>, Closeable {
+
+	private static final int MAGIC = 0xCAFEF11E;
+
+	private static final int CONSUMER_OFFSET = 8;
+
+	private static final int DATA_START = 16;
+
+	private static final int END = 0;
+
+	private static final int WRAP = -1;
+
+	private final File file;
+
+	private final int capacity;
+
+	private final MessageCodec codec;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition notEmpty = this.lock.newCondition();
+
+	private final Condition notFull = this.lock.newCondition();
+
+	private final FileChannel channel;
+
+	private final MappedByteBuffer journal;
+
+	private final int journalSize;
+
+	private int readOffset;
+
+	private int writeOffset;
+
+	private int count;
+
+	private volatile boolean force;
+
+	/**
+	 * Open or create a journal of cafe payloads.
+	 * @param file the journal file, created along with its directory if needed
+	 * @param journalSize the size of a new journal file in bytes; an existing one keeps its size
+	 * @param capacity the maximum number of messages in the queue
+	 * @throws IOException if the file cannot be mapped or is not a journal
+	 */
+	public MappedJournalQueue(File file, int journalSize, int capacity) throws IOException {
+		this(file, journalSize, capacity, new CafeCodec(), new CafeCodec());
+	}
+
+	/**
+	 * Open or create a journal.
+	 * @param file the journal file, created along with its directory if needed
+	 * @param journalSize the size of a new journal file in bytes; an existing one keeps its size
+	 * @param capacity the maximum number of messages in the queue
+	 * @param serializer the serializer for the payloads
+	 * @param deserializer the deserializer for the payloads
+	 * @throws IOException if the file cannot be mapped or is not a journal
+	 */
+	public MappedJournalQueue(File file, int journalSize, int capacity, Serializer<Object> serializer,
+			Deserializer<Object> deserializer) throws IOException {
+
+		Assert.notNull(file, "'file' must not be null");
+		Assert.isTrue(journalSize >= 1024, "'journalSize' must be at least 1024 bytes");
+		Assert.isTrue(capacity > 0, "'capacity' must be positive");
+		this.file = file;
+		this.capacity = capacity;
+		this.codec = new MessageCodec(serializer, deserializer);
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (directory != null) {
+			Files.createDirectories(directory.toPath());
+		}
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			long existingSize = this.channel.size();
+			boolean existing = existingSize >= DATA_START;
+			this.journalSize = existing ? (int) Math.min(existingSize, Integer.MAX_VALUE) : journalSize;
+			this.journal = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, this.journalSize);
+			if (existing) {
+				recover();
+			}
+			else {
+				this.journal.putInt(DATA_START, END);
+				this.journal.putLong(CONSUMER_OFFSET, DATA_START);
+				this.journal.putInt(0, MAGIC);
+				this.readOffset = DATA_START;
+				this.writeOffset = DATA_START;
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			this.channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param force true to flush each append and take to the disk
+	 */
+	public void setForce(boolean force) {
+		this.force = force;
+	}
+
+	private void recover() throws IOException {
+		if (this.journal.getInt(0) != MAGIC) {
+			throw new IOException(this.file + " is not a message journal");
+		}
+		long consumerOffset = this.journal.getLong(CONSUMER_OFFSET);
+		if (consumerOffset < DATA_START || consumerOffset > this.journalSize - 4) {
+			throw new IOException("Corrupt journal " + this.file + ": consumer offset " + consumerOffset);
+		}
+		int position = (int) consumerOffset;
+		boolean wrapped = false;
+		int count = 0;
+		while (true) {
+			int length = this.journal.getInt(position);
+			if (length == END) {
+				break;
+			}
+			if (length == WRAP && !wrapped) {
+				wrapped = true;
+				position = DATA_START;
+				continue;
+			}
+			int next = position + 4 + length;
+			if (length < 0 || next + 4 > (wrapped ? consumerOffset : this.journalSize)) {
+				throw new IOException("Corrupt journal " + this.file + ": record of " + length + " bytes at "
+						+ position);
+			}
+			position = next;
+			count++;
+		}
+		this.readOffset = (int) consumerOffset;
+		this.writeOffset = position;
+		this.count = count;
+	}
+
+	@Override
+	public boolean offer(Message<?> message) {
+		byte[] record = encode(message);
+		this.lock.lock();
+		try {
+			return enqueue(record);
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public void put(Message<?> message) throws InterruptedException {
+		byte[] record = encode(message);
+		this.lock.lockInterruptibly();
+		try {
+			while (!enqueue(record)) {
+				this.notFull.await();
+			}
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean offer(Message<?> message, long timeout, TimeUnit unit) throws InterruptedException {
+		byte[] record = encode(message);
+		long nanos = unit.toNanos(timeout);
+		this.lock.lockInterruptibly();
+		try {
+			while (!enqueue(record)) {
+				if (nanos <= 0) {
+					return false;
+				}
+				nanos = this.notFull.awaitNanos(nanos);
+			}
+			return true;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public Message<?> poll() {
+		byte[] record;
+		this.lock.lock();
+		try {
+			if (this.count == 0) {
+				return null;
+			}
+			record = dequeue();
+		}
+		finally {
+			this.lock.unlock();
+		}
+		return decode(record);
+	}
+
+	@Override
+	public Message<?> take() throws InterruptedException {
+		byte[] record;
+		this.lock.lockInterruptibly();
+		try {
+			while (this.count == 0) {
+				this.notEmpty.await();
+			}
+			record = dequeue();
+		}
+		finally {
+			this.lock.unlock();
+		}
+		return decode(record);
+	}
+
+	@Override
+	public Message<?> poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		byte[] record;
+		this.lock.lockInterruptibly();
+		try {
+			while (this.count == 0) {
+				if (nanos <= 0) {
+					return null;
+				}
+				nanos = this.notEmpty.awaitNanos(nanos);
+			}
+			record = dequeue();
+		}
+		finally {
+			this.lock.unlock();
+		}
+		return decode(record);
+	}
+
+	@Override
+	public Message<?> peek() {
+		byte[] record;
+		this.lock.lock();
+		try {
+			if (this.count == 0) {
+				return null;
+			}
+			record = read(recordStart(this.readOffset));
+		}
+		finally {
+			this.lock.unlock();
+		}
+		return decode(record);
+	}
+
+	/**
+	 * Append a record if the capacity and the room left in the journal allow.
+	 * Must be called with the lock held.
+	 */
+	private boolean enqueue(byte[] record) {
+		if (this.count >= this.capacity) {
+			return false;
+		}
+		int length = record.length;
+		int position = this.writeOffset;
+		// each record leaves room for the end marker after it
+		if (position >= this.readOffset) {
+			if (position + 4 + length + 4 > this.journalSize) {
+				if (DATA_START + 4 + length + 4 > this.readOffset) {
+					return false;
+				}
+				this.journal.putInt(DATA_START, END);
+				this.journal.putInt(position, WRAP);
+				position = DATA_START;
+			}
+		}
+		else if (position + 4 + length + 4 > this.readOffset) {
+			return false;
+		}
+		this.journal.position(position + 4);
+		this.journal.put(record);
+		this.journal.putInt(position + 4 + length, END);
+		this.journal.putInt(position, length);
+		if (this.force) {
+			this.journal.force();
+		}
+		this.writeOffset = position + 4 + length;
+		this.count++;
+		this.notEmpty.signal();
+		return true;
+	}
+
+	/**
+	 * Take the first record and move the consumer offset past it. Must be called
+	 * with the lock held and at least one record queued.
+	 */
+	private byte[] dequeue() {
+		int position = recordStart(this.readOffset);
+		byte[] record = read(position);
+		int next = position + 4 + record.length;
+		if (--this.count == 0) {
+			// start over at the beginning rather than wrap around later
+			this.journal.putInt(DATA_START, END);
+			next = DATA_START;
+			this.writeOffset = DATA_START;
+		}
+		this.journal.putLong(CONSUMER_OFFSET, next);
+		if (this.force) {
+			this.journal.force();
+		}
+		this.readOffset = next;
+		this.notFull.signal();
+		return record;
+	}
+
+	private int recordStart(int position) {
+		return this.journal.getInt(position) == WRAP ? DATA_START : position;
+	}
+
+	private byte[] read(int position) {
+		byte[] record = new byte[this.journal.getInt(position)];
+		this.journal.position(position + 4);
+		this.journal.get(record);
+		return record;
+	}
+
+	private byte[] encode(Message<?> message) {
+		Assert.notNull(message, "'message' must not be null");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			this.codec.encode(message, out);
+			out.flush();
+		}
+		catch (IOException | IllegalArgumentException e) {
+			throw new MessagingException(message, "Failed to write the message to the journal " + this.file, e);
+		}
+		Assert.isTrue(DATA_START + 4 + bytes.size() + 4 <= this.journalSize,
+				() -> "A message of " + bytes.size() + " bytes does not fit into the journal " + this.file);
+		return bytes.toByteArray();
+	}
+
+	private Message<?> decode(byte[] record) {
+		try {
+			return this.codec.decode(new DataInputStream(new ByteArrayInputStream(record)));
+		}
+		catch (IOException e) {
+			throw new MessagingException("Failed to read a message from the journal " + this.file, e);
+		}
+	}
+
+	@Override
+	public int size() {
+		this.lock.lock();
+		try {
+			return this.count;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of messages that can be added up to the capacity; a
+	 * journal file too small for all of them takes fewer
+	 */
+	@Override
+	public int remainingCapacity() {
+		return this.capacity - size();
+	}
+
+	@Override
+	public int drainTo(Collection<? super Message<?>> collection) {
+		return drainTo(collection, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super Message<?>> collection, int maxElements) {
+		Assert.isTrue(collection != this, "Cannot drain a queue into itself");
+		int drained = 0;
+		Message<?> message;
+		while (drained < maxElements && (message = poll()) != null) {
+			collection.add(message);
+			drained++;
+		}
+		return drained;
+	}
+
+	/**
+	 * @return an iterator over a snapshot of the messages, which does not support removal
+	 */
+	@Override
+	public Iterator<Message<?>> iterator() {
+		List<byte[]> records = new ArrayList<>();
+		this.lock.lock();
+		try {
+			int position = this.readOffset;
+			for (int i = 0; i < this.count; i++) {
+				position = recordStart(position);
+				byte[] record = read(position);
+				records.add(record);
+				position += 4 + record.length;
+			}
+		}
+		finally {
+			this.lock.unlock();
+		}
+		List<Message<?>> snapshot = new ArrayList<>(records.size());
+		for (byte[] record : records) {
+			snapshot.add(decode(record));
+		}
+		return Collections.unmodifiableList(snapshot).iterator();
+	}
+
+	/**
+	 * Flush the journal to the disk and close the file. The mapping itself is
+	 * released once the queue is garbage collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.lock.lock();
+		try {
+			this.journal.force();
+			this.channel.close();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.channel;
+
+import org.springframework.integration.channel.QueueChannel;
+
+/**
+ * A {@link QueueChannel} backed by a {@link RingBufferQueue} instead of a
+ * <code>LinkedBlockingQueue</code>: sending a message neither allocates a node
+ * nor takes a lock. It is polled like any other queue channel, so it can replace
+ * <code>&lt;int:channel&gt;&lt;int:queue/&gt;&lt;/int:channel&gt;</code> as is.
+ * <p/>
+ * Removing individual messages with {@link #purge} is not supported.
+ */
+public class RingBufferChannel extends QueueChannel {
+
+	/**
+	 * Create a channel that parks waiting consumers and producers.
+	 * @param capacity the capacity, rounded up to a power of two of at least 2
+	 */
+	public RingBufferChannel(int capacity) {
+		this(capacity, WaitStrategy.PARK);
+	}
+
+	/**
+	 * @param capacity the capacity, rounded up to a power of two of at least 2
+	 * @param waitStrategy how receivers wait for a message and senders for room
+	 */
+	public RingBufferChannel(int capacity, WaitStrategy waitStrategy) {
+		super(new RingBufferQueue<>(capacity, waitStrategy));
+	}
+
+}
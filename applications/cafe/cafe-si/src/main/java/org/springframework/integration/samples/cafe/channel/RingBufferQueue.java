@@ -0,0 +1,271 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.channel;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.util.Assert;
+
+/**
+ * A bounded, lock-free {@link BlockingQueue} for many producers and consumers,
+ * backed by a ring buffer that is allocated up front.
+ * <p/>
+ * Each slot carries a sequence number that tells whether it is free for the
+ * producer of a given position or filled for the consumer of that position, so
+ * producers and consumers only compete with each other on their own position
+ * counter, with a single compare-and-set per element and no allocation. Both
+ * counters are padded against false sharing. Blocking operations wait according
+ * to the {@link WaitStrategy} instead of on a lock and condition.
+ * <p/>
+ * The capacity is rounded up to a power of two, and is at least 2. Elements
+ * cannot be removed from the middle of the queue, and its iterator is a weakly
+ * consistent snapshot.
+ *
+ * @param <E> the element type
+ */
+public class RingBufferQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+	private final Object[] buffer;
+
+	private final AtomicLongArray sequences;
+
+	private final int mask;
+
+	private final PaddedPosition producerPosition = new PaddedPosition();
+
+	private final PaddedPosition consumerPosition = new PaddedPosition();
+
+	private final WaitStrategy waitStrategy;
+
+	public RingBufferQueue(int capacity) {
+		this(capacity, WaitStrategy.PARK);
+	}
+
+	/**
+	 * @param capacity the capacity, rounded up to a power of two of at least 2
+	 * @param waitStrategy how to wait for a full or empty queue
+	 */
+	public RingBufferQueue(int capacity, WaitStrategy waitStrategy) {
+		Assert.isTrue(capacity > 0 && capacity <= (1 << 30), "'capacity' must be between 1 and 2^30");
+		Assert.notNull(waitStrategy, "'waitStrategy' must not be null");
+		// with a single slot, a filled slot would look free to the next producer
+		int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+		this.buffer = new Object[size];
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			this.sequences.set(i, i);
+		}
+		this.mask = size - 1;
+		this.waitStrategy = waitStrategy;
+	}
+
+	@Override
+	public boolean offer(E element) {
+		Assert.notNull(element, "'element' must not be null");
+		long position = this.producerPosition.get();
+		while (true) {
+			int index = (int) position & this.mask;
+			long sequence = this.sequences.get(index);
+			if (sequence == position) {
+				if (this.producerPosition.compareAndSet(position, position + 1)) {
+					this.buffer[index] = element;
+					this.sequences.lazySet(index, position + 1);
+					return true;
+				}
+				position = this.producerPosition.get();
+			}
+			else if (sequence < position) {
+				// the slot still holds the element put there one round earlier
+				return false;
+			}
+			else {
+				position = this.producerPosition.get();
+			}
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E poll() {
+		long position = this.consumerPosition.get();
+		while (true) {
+			int index = (int) position & this.mask;
+			long sequence = this.sequences.get(index);
+			if (sequence == position + 1) {
+				if (this.consumerPosition.compareAndSet(position, position + 1)) {
+					E element = (E) this.buffer[index];
+					this.buffer[index] = null;
+					this.sequences.lazySet(index, position + this.mask + 1);
+					return element;
+				}
+				position = this.consumerPosition.get();
+			}
+			else if (sequence < position + 1) {
+				// nothing has been put into the slot for this position yet
+				return null;
+			}
+			else {
+				position = this.consumerPosition.get();
+			}
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E peek() {
+		while (true) {
+			long position = this.consumerPosition.get();
+			int index = (int) position & this.mask;
+			if (this.sequences.get(index) != position + 1) {
+				if (position == this.consumerPosition.get()) {
+					return null;
+				}
+				continue;
+			}
+			E element = (E) this.buffer[index];
+			if (element != null && position == this.consumerPosition.get()) {
+				return element;
+			}
+		}
+	}
+
+	@Override
+	public void put(E element) throws InterruptedException {
+		for (int attempt = 0; !offer(element); attempt++) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			this.waitStrategy.idle(attempt);
+		}
+	}
+
+	@Override
+	public boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (int attempt = 0; !offer(element); attempt++) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			if (System.nanoTime() - deadline >= 0) {
+				return false;
+			}
+			this.waitStrategy.idle(attempt);
+		}
+		return true;
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		E element;
+		for (int attempt = 0; (element = poll()) == null; attempt++) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			this.waitStrategy.idle(attempt);
+		}
+		return element;
+	}
+
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		E element;
+		for (int attempt = 0; (element = poll()) == null; attempt++) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			if (System.nanoTime() - deadline >= 0) {
+				return null;
+			}
+			this.waitStrategy.idle(attempt);
+		}
+		return element;
+	}
+
+	@Override
+	public int size() {
+		while (true) {
+			long consumed = this.consumerPosition.get();
+			long produced = this.producerPosition.get();
+			if (consumed == this.consumerPosition.get()) {
+				return (int) Math.max(0, Math.min(produced - consumed, this.buffer.length));
+			}
+		}
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return this.buffer.length - size();
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> collection) {
+		return drainTo(collection, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> collection, int maxElements) {
+		Assert.isTrue(collection != this, "Cannot drain a queue into itself");
+		int drained = 0;
+		E element;
+		while (drained < maxElements && (element = poll()) != null) {
+			collection.add(element);
+			drained++;
+		}
+		return drained;
+	}
+
+	/**
+	 * @return an iterator over a snapshot of the elements, which does not support removal
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Iterator<E> iterator() {
+		List<E> snapshot = new ArrayList<>();
+		long position = this.consumerPosition.get();
+		long end = this.producerPosition.get();
+		for (; position < end; position++) {
+			int index = (int) position & this.mask;
+			Object element = this.buffer[index];
+			if (this.sequences.get(index) == position + 1 && element != null) {
+				snapshot.add((E) element);
+			}
+		}
+		return Collections.unmodifiableList(snapshot).iterator();
+	}
+
+
+	/**
+	 * A position counter on a cache line of its own.
+	 */
+	@SuppressWarnings({ "serial", "unused" })
+	private static final class PaddedPosition extends AtomicLong {
+
+		private long p1, p2, p3, p4, p5, p6, p7;
+
+	}
+
+}
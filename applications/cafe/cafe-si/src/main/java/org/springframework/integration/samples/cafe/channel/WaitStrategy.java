@@ -0,0 +1,90 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.channel;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits for a {@link RingBufferQueue} that is empty (consumers) or
+ * full (producers). No strategy takes a lock or needs a signal from the other
+ * side; they trade CPU for the latency of noticing the change.
+ */
+public enum WaitStrategy {
+
+	/**
+	 * Spin on the CPU: the lowest latency, but each waiting thread keeps a core busy.
+	 */
+	BUSY_SPIN {
+
+		@Override
+		void idle(int attempt) {
+		}
+
+	},
+
+	/**
+	 * Spin briefly, then yield the CPU to other threads between attempts.
+	 */
+	YIELD {
+
+		@Override
+		void idle(int attempt) {
+			if (attempt >= SPINS) {
+				Thread.yield();
+			}
+		}
+
+	},
+
+	/**
+	 * Spin briefly, yield for a while, then park, for twice as long after each
+	 * failed attempt, up to a millisecond; the most frugal strategy. A thread
+	 * that has been idle for a while wakes up about once a millisecond, so it
+	 * notices a change up to a millisecond late.
+	 */
+	PARK {
+
+		@Override
+		void idle(int attempt) {
+			if (attempt >= SPINS + YIELDS) {
+				int parks = Math.min(attempt - SPINS - YIELDS, MAX_PARK_DOUBLINGS);
+				LockSupport.parkNanos(Math.min(MIN_PARK_NANOS << parks, MAX_PARK_NANOS));
+			}
+			else if (attempt >= SPINS) {
+				Thread.yield();
+			}
+		}
+
+	};
+
+	private static final int SPINS = 100;
+
+	private static final int YIELDS = 100;
+
+	private static final long MIN_PARK_NANOS = 1000;
+
+	private static final long MAX_PARK_NANOS = 1000000;
+
+	private static final int MAX_PARK_DOUBLINGS = 10;
+
+	/**
+	 * Wait before the next attempt.
+	 * @param attempt the number of failed attempts so far
+	 */
+	abstract void idle(int attempt);
+
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.core.serializer.Serializer;
+import org.springframework.integration.samples.cafe.Delivery;
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.integration.samples.cafe.OrderItem;
+import org.springframework.integration.samples.cafe.SlaClass;
+import org.springframework.util.Assert;
+
+/**
+ * A compact binary format for the cafe's payloads: {@link Order}, {@link OrderItem},
+ * {@link Drink}, {@link Delivery} and <code>List</code>s of them, e.g. the batches
+ * of orders and drinks.
+ * <p/>
+ * Each value starts with a one byte tag. Numbers are written as variable-length
+ * integers, so order numbers below 64 take one byte. The drink type, whether it
+ * is iced and its shots are packed into a single integer, with the ordinal of the
+ * type in its lowest 3 bits; the order number of an item or drink is only written
+ * again when it differs from the one of its order or delivery. An order item thus
+ * takes 3 or 4 bytes instead of a couple of hundred with Java serialization, and
+ * neither side reflects on the classes. The {@link SlaClass} of an order or item
+ * is kept in the upper bits of its tag, so a {@link SlaClass#STANDARD} one is
+ * encoded as before there were classes, and the items of an order share its class.
+ * <p/>
+ * As a {@link Serializer} and {@link Deserializer} the codec can be used wherever
+ * Spring accepts them, e.g. as the <code>serializer</code> and
+ * <code>deserializer</code> of the payload-serializing and payload-deserializing
+ * transformers, to carry the payloads as <code>byte[]</code> across any channel.
+ * Serializing to a stream writes a byte at a time, so an unbuffered stream should be
+ * wrapped; {@link #serializeToByteArray(Object)} and
+ * {@link #deserializeFromByteArray(byte[])} need no buffering.
+ */
+public class CafeCodec implements Serializer<Object>, Deserializer<Object> {
+
+	private static final int NULL = 0;
+
+	private static final int ORDER = 1;
+
+	private static final int ORDER_ITEM = 2;
+
+	private static final int DRINK = 3;
+
+	private static final int DELIVERY = 4;
+
+	private static final int LIST = 5;
+
+	private static final int TAG_MASK = 0x0F;
+
+	private static final int SLA_SHIFT = 4;
+
+	private static final int TYPE_MASK = 0x07;
+
+	private static final int ICED = 0x08;
+
+	private static final int OWN_ORDER_NUMBER = 0x10;
+
+	private static final int SHOTS_SHIFT = 5;
+
+	private static final DrinkType[] DRINK_TYPES = DrinkType.values();
+
+	private static final SlaClass[] SLA_CLASSES = SlaClass.values();
+
+	static {
+		Assert.state(DRINK_TYPES.length < TYPE_MASK, "Too many drink types to pack");
+		Assert.state(SLA_CLASSES.length <= (0xFF >>> SLA_SHIFT), "Too many SLA classes to pack");
+	}
+
+	@Override
+	public void serialize(Object object, OutputStream outputStream) throws IOException {
+		write(object, outputStream);
+	}
+
+	@Override
+	public Object deserialize(InputStream inputStream) throws IOException {
+		return read(inputStream);
+	}
+
+	private void write(Object object, OutputStream out) throws IOException {
+		if (object == null) {
+			out.write(NULL);
+		}
+		else if (object instanceof OrderItem) {
+			OrderItem item = (OrderItem) object;
+			out.write(ORDER_ITEM | sla(item.getSlaClass()));
+			writeInt(item.getOrderNumber(), out);
+			writeVarint(pack(item.getDrinkType(), item.isIced(), item.getShots(), false), out);
+		}
+		else if (object instanceof Drink) {
+			Drink drink = (Drink) object;
+			out.write(DRINK);
+			writeInt(drink.getOrderNumber(), out);
+			writeVarint(pack(drink.getDrinkType(), drink.isIced(), drink.getShots(), false), out);
+		}
+		else if (object instanceof Order) {
+			Order order = (Order) object;
+			out.write(ORDER | sla(order.getSlaClass()));
+			writeInt(order.getNumber(), out);
+			List<OrderItem> items = order.getItems();
+			writeSize(items, out);
+			if (items != null) {
+				for (OrderItem item : items) {
+					boolean own = item.getOrderNumber() != order.getNumber();
+					writeVarint(pack(item.getDrinkType(), item.isIced(), item.getShots(), own), out);
+					if (own) {
+						writeInt(item.getOrderNumber(), out);
+					}
+				}
+			}
+		}
+		else if (object instanceof Delivery) {
+			Delivery delivery = (Delivery) object;
+			out.write(DELIVERY);
+			writeInt(delivery.getOrderNumber(), out);
+			List<Drink> drinks = delivery.getDeliveredDrinks();
+			writeSize(drinks, out);
+			if (drinks != null) {
+				for (Drink drink : drinks) {
+					boolean own = drink.getOrderNumber() != delivery.getOrderNumber();
+					writeVarint(pack(drink.getDrinkType(), drink.isIced(), drink.getShots(), own), out);
+					if (own) {
+						writeInt(drink.getOrderNumber(), out);
+					}
+				}
+			}
+		}
+		else if (object instanceof List) {
+			List<?> list = (List<?>) object;
+			out.write(LIST);
+			writeSize(list, out);
+			for (Object element : list) {
+				write(element, out);
+			}
+		}
+		else {
+			throw new IllegalArgumentException(getClass().getSimpleName() + " cannot serialize "
+					+ object.getClass().getName());
+		}
+	}
+
+	private Object read(InputStream in) throws IOException {
+		int tag = readByte(in);
+		int type = tag & TAG_MASK;
+		if (type != tag && type != ORDER && type != ORDER_ITEM) {
+			// only orders and items have a class
+			throw new StreamCorruptedException("Unknown tag " + tag);
+		}
+		switch (type) {
+			case NULL:
+				return null;
+			case ORDER_ITEM: {
+				int orderNumber = readInt(in);
+				int packed = readVarint(in);
+				OrderItem item = new OrderItem(orderNumber, drinkType(packed), shots(packed), iced(packed));
+				item.setSlaClass(slaClass(tag));
+				return item;
+			}
+			case DRINK: {
+				int orderNumber = readInt(in);
+				int packed = readVarint(in);
+				return new Drink(orderNumber, drinkType(packed), iced(packed), shots(packed));
+			}
+			case ORDER: {
+				Order order = new Order(readInt(in));
+				SlaClass slaClass = slaClass(tag);
+				order.setSlaClass(slaClass);
+				int size = readVarint(in) - 1;
+				if (size < 0) {
+					order.setItems(null);
+					return order;
+				}
+				List<OrderItem> items = new ArrayList<>(size);
+				for (int i = 0; i < size; i++) {
+					int packed = readVarint(in);
+					int orderNumber = (packed & OWN_ORDER_NUMBER) != 0 ? readInt(in) : order.getNumber();
+					OrderItem item = new OrderItem(orderNumber, drinkType(packed), shots(packed), iced(packed));
+					item.setSlaClass(slaClass);
+					items.add(item);
+				}
+				order.setItems(items);
+				return order;
+			}
+			case DELIVERY: {
+				Delivery delivery = new Delivery();
+				delivery.setOrderNumber(readInt(in));
+				int size = readVarint(in) - 1;
+				if (size >= 0) {
+					List<Drink> drinks = new ArrayList<>(size);
+					for (int i = 0; i < size; i++) {
+						int packed = readVarint(in);
+						int orderNumber = (packed & OWN_ORDER_NUMBER) != 0 ? readInt(in) : delivery.getOrderNumber();
+						drinks.add(new Drink(orderNumber, drinkType(packed), iced(packed), shots(packed)));
+					}
+					delivery.setDeliveredDrinks(drinks);
+				}
+				return delivery;
+			}
+			case LIST: {
+				int size = readVarint(in) - 1;
+				if (size < 0) {
+					throw new StreamCorruptedException("Negative list size");
+				}
+				List<Object> list = new ArrayList<>(size);
+				for (int i = 0; i < size; i++) {
+					list.add(read(in));
+				}
+				return list;
+			}
+			default:
+				throw new StreamCorruptedException("Unknown tag " + tag);
+		}
+	}
+
+	private static int pack(DrinkType type, boolean iced, int shots, boolean ownOrderNumber) {
+		Assert.isTrue(shots >= 0 && shots < (1 << (32 - SHOTS_SHIFT)), "Shots must be between 0 and 2^27");
+		return (shots << SHOTS_SHIFT) | (ownOrderNumber ? OWN_ORDER_NUMBER : 0) | (iced ? ICED : 0)
+				| (type == null ? 0 : type.ordinal() + 1);
+	}
+
+	private static int sla(SlaClass slaClass) {
+		return slaClass == null ? 0 : slaClass.ordinal() << SLA_SHIFT;
+	}
+
+	private static SlaClass slaClass(int tag) throws IOException {
+		int sla = tag >>> SLA_SHIFT;
+		if (sla >= SLA_CLASSES.length) {
+			throw new StreamCorruptedException("Unknown SLA class " + sla);
+		}
+		return SLA_CLASSES[sla];
+	}
+
+	private static DrinkType drinkType(int packed) throws IOException {
+		int type = packed & TYPE_MASK;
+		if (type > DRINK_TYPES.length) {
+			throw new StreamCorruptedException("Unknown drink type " + (type - 1));
+		}
+		return type == 0 ? null : DRINK_TYPES[type - 1];
+	}
+
+	private static boolean iced(int packed) {
+		return (packed & ICED) != 0;
+	}
+
+	private static int shots(int packed) {
+		return packed >>> SHOTS_SHIFT;
+	}
+
+	/**
+	 * The size of a list, plus one so that a <code>null</code> list is 0.
+	 */
+	private static void writeSize(List<?> list, OutputStream out) throws IOException {
+		writeVarint(list == null ? 0 : list.size() + 1, out);
+	}
+
+	/**
+	 * A zigzag-encoded varint, so that negative numbers stay short too.
+	 */
+	private static void writeInt(int value, OutputStream out) throws IOException {
+		writeVarint((value << 1) ^ (value >> 31), out);
+	}
+
+	private static int readInt(InputStream in) throws IOException {
+		int value = readVarint(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static void writeVarint(int value, OutputStream out) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static int readVarint(InputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = readByte(in);
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new StreamCorruptedException("Malformed varint");
+	}
+
+	private static int readByte(InputStream in) throws IOException {
+		int b = in.read();
+		if (b < 0) {
+			throw new EOFException();
+		}
+		return b;
+	}
+
+}
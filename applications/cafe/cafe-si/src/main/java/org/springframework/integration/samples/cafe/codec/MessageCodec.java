@@ -0,0 +1,176 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.codec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.core.serializer.Serializer;
+import org.springframework.integration.support.MutableMessage;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.util.Assert;
+
+/**
+ * Writes a message as its headers followed by its payload, for keeping messages
+ * outside of the heap, e.g. in a journal file or in direct memory.
+ * <p/>
+ * The payload is written by the {@link CafeCodec} unless another serializer is
+ * given. Only headers with a <code>String</code>, <code>Integer</code>,
+ * <code>Long</code>, <code>Boolean</code> or <code>UUID</code> value, such as the
+ * correlation and sequence headers, are kept; other headers, such as reply
+ * channel instances, and the message id and timestamp are not. A message read
+ * back gets a new id, unless the caller kept the original one and passes it to
+ * {@link #decode(DataInputStream, UUID, long)}.
+ */
+public class MessageCodec {
+
+	private final Serializer<Object> serializer;
+
+	private final Deserializer<Object> deserializer;
+
+	/**
+	 * Create a codec for cafe payloads.
+	 */
+	public MessageCodec() {
+		this(new CafeCodec(), new CafeCodec());
+	}
+
+	/**
+	 * @param serializer the serializer for the payloads
+	 * @param deserializer the deserializer for the payloads
+	 */
+	public MessageCodec(Serializer<Object> serializer, Deserializer<Object> deserializer) {
+		Assert.notNull(serializer, "'serializer' must not be null");
+		Assert.notNull(deserializer, "'deserializer' must not be null");
+		this.serializer = serializer;
+		this.deserializer = deserializer;
+	}
+
+	/**
+	 * Write the headers and the payload of a message.
+	 * @param message the message
+	 * @param out the output
+	 * @throws IOException if the output fails
+	 * @throws IllegalArgumentException if the serializer does not support the payload
+	 */
+	public void encode(Message<?> message, DataOutputStream out) throws IOException {
+		List<Map.Entry<String, Object>> headers = new ArrayList<>(message.getHeaders().size());
+		for (Map.Entry<String, Object> header : message.getHeaders().entrySet()) {
+			Object value = header.getValue();
+			if (!MessageHeaders.ID.equals(header.getKey()) && !MessageHeaders.TIMESTAMP.equals(header.getKey())
+					&& (value instanceof String || value instanceof Integer || value instanceof Long
+							|| value instanceof Boolean || value instanceof UUID)) {
+				headers.add(header);
+			}
+		}
+		out.writeShort(headers.size());
+		for (Map.Entry<String, Object> header : headers) {
+			out.writeUTF(header.getKey());
+			writeValue(header.getValue(), out);
+		}
+		this.serializer.serialize(message.getPayload(), out);
+	}
+
+	/**
+	 * Read a message written by {@link #encode(Message, DataOutputStream)}, with a new id.
+	 * @param in the input
+	 * @return the message
+	 * @throws IOException if the input fails or is not a message
+	 */
+	public Message<?> decode(DataInputStream in) throws IOException {
+		Map<String, Object> headers = readHeaders(in, 0);
+		return new GenericMessage<>(this.deserializer.deserialize(in), headers);
+	}
+
+	/**
+	 * Read a message written by {@link #encode(Message, DataOutputStream)} with its
+	 * original id and timestamp, so that it equals the message written.
+	 * @param in the input
+	 * @param id the id of the message written
+	 * @param timestamp the timestamp of the message written
+	 * @return the message
+	 * @throws IOException if the input fails or is not a message
+	 */
+	public Message<?> decode(DataInputStream in, UUID id, long timestamp) throws IOException {
+		Map<String, Object> headers = readHeaders(in, 2);
+		headers.put(MessageHeaders.ID, id);
+		headers.put(MessageHeaders.TIMESTAMP, timestamp);
+		return new MutableMessage<>(this.deserializer.deserialize(in), headers);
+	}
+
+	private static Map<String, Object> readHeaders(DataInputStream in, int extra) throws IOException {
+		int headerCount = in.readUnsignedShort();
+		Map<String, Object> headers = new HashMap<>((headerCount + extra) * 2);
+		for (int i = 0; i < headerCount; i++) {
+			headers.put(in.readUTF(), readValue(in));
+		}
+		return headers;
+	}
+
+	private static void writeValue(Object value, DataOutputStream out) throws IOException {
+		if (value instanceof String) {
+			out.writeByte('S');
+			out.writeUTF((String) value);
+		}
+		else if (value instanceof Integer) {
+			out.writeByte('I');
+			out.writeInt((Integer) value);
+		}
+		else if (value instanceof Long) {
+			out.writeByte('J');
+			out.writeLong((Long) value);
+		}
+		else if (value instanceof Boolean) {
+			out.writeByte('Z');
+			out.writeBoolean((Boolean) value);
+		}
+		else {
+			UUID uuid = (UUID) value;
+			out.writeByte('U');
+			out.writeLong(uuid.getMostSignificantBits());
+			out.writeLong(uuid.getLeastSignificantBits());
+		}
+	}
+
+	private static Object readValue(DataInputStream in) throws IOException {
+		int type = in.readByte();
+		switch (type) {
+			case 'S':
+				return in.readUTF();
+			case 'I':
+				return in.readInt();
+			case 'J':
+				return in.readLong();
+			case 'Z':
+				return in.readBoolean();
+			case 'U':
+				return new UUID(in.readLong(), in.readLong());
+			default:
+				throw new IOException("Unknown header type " + type);
+		}
+	}
+
+}
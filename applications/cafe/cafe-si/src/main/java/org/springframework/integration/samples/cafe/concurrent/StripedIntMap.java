@@ -0,0 +1,261 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import org.springframework.util.Assert;
+
+/**
+ * A thread safe map from primitive <code>int</code> keys (order numbers) to values.
+ * <p/>
+ * The entries are spread over a number of stripes, each one an open addressing
+ * table with linear probing and backward shift deletion, guarded by its own
+ * monitor. Keys are never boxed and unrelated keys rarely contend on the same lock.
+ *
+ * @param <V> the value type
+ */
+public class StripedIntMap<V> {
+
+	private static final int DEFAULT_STRIPES = 64;
+
+	private static final int INITIAL_STRIPE_CAPACITY = 16;
+
+	private final Stripe<V>[] stripes;
+
+	private final int stripeMask;
+
+	public StripedIntMap() {
+		this(DEFAULT_STRIPES);
+	}
+
+	/**
+	 * @param stripes the number of independently locked stripes, rounded up
+	 * to a power of two
+	 */
+	@SuppressWarnings("unchecked")
+	public StripedIntMap(int stripes) {
+		Assert.isTrue(stripes > 0 && stripes <= (1 << 16), "'stripes' must be between 1 and 65536");
+		int size = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+		this.stripes = (Stripe<V>[]) new Stripe<?>[size];
+		for (int i = 0; i < size; i++) {
+			this.stripes[i] = new Stripe<>();
+		}
+		this.stripeMask = size - 1;
+	}
+
+	public V get(int key) {
+		int hash = hash(key);
+		return stripeFor(hash).get(key, hash);
+	}
+
+	/**
+	 * @param key the key
+	 * @param factory creates the value if there is none; called while holding
+	 * the stripe's lock, so it must be cheap
+	 * @return the existing or created value
+	 */
+	public V computeIfAbsent(int key, IntFunction<? extends V> factory) {
+		int hash = hash(key);
+		return stripeFor(hash).computeIfAbsent(key, hash, factory);
+	}
+
+	/**
+	 * @param key the key
+	 * @param value the value to add
+	 * @return the existing value, or null if the value was added
+	 */
+	public V putIfAbsent(int key, V value) {
+		Assert.notNull(value, "'value' must not be null");
+		int hash = hash(key);
+		return stripeFor(hash).putIfAbsent(key, hash, value);
+	}
+
+	/**
+	 * @param key the key
+	 * @return the removed value or null
+	 */
+	public V remove(int key) {
+		int hash = hash(key);
+		return stripeFor(hash).remove(key, hash, null);
+	}
+
+	/**
+	 * Remove the entry only if it is mapped to the given value.
+	 * @param key the key
+	 * @param value the expected value
+	 * @return true if the entry was removed
+	 */
+	public boolean remove(int key, V value) {
+		int hash = hash(key);
+		return stripeFor(hash).remove(key, hash, value) != null;
+	}
+
+	public int size() {
+		int size = 0;
+		for (Stripe<V> stripe : this.stripes) {
+			size += stripe.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return a snapshot of the values; each stripe is copied atomically but
+	 * not the map as a whole
+	 */
+	public List<V> values() {
+		List<V> values = new ArrayList<>();
+		for (Stripe<V> stripe : this.stripes) {
+			stripe.collect(values);
+		}
+		return values;
+	}
+
+	private Stripe<V> stripeFor(int hash) {
+		return this.stripes[(hash >>> 16) & this.stripeMask];
+	}
+
+	static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+
+	private static final class Stripe<V> {
+
+		private int[] keys = new int[INITIAL_STRIPE_CAPACITY];
+
+		private Object[] values = new Object[INITIAL_STRIPE_CAPACITY];
+
+		private int size;
+
+		@SuppressWarnings("unchecked")
+		synchronized V get(int key, int hash) {
+			int mask = this.keys.length - 1;
+			for (int i = hash & mask; ; i = (i + 1) & mask) {
+				Object value = this.values[i];
+				if (value == null || this.keys[i] == key) {
+					return (V) value;
+				}
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		synchronized V computeIfAbsent(int key, int hash, IntFunction<? extends V> factory) {
+			int i = indexOf(key, hash);
+			if (this.values[i] != null) {
+				return (V) this.values[i];
+			}
+			V value = factory.apply(key);
+			insert(i, key, value);
+			return value;
+		}
+
+		@SuppressWarnings("unchecked")
+		synchronized V putIfAbsent(int key, int hash, V value) {
+			int i = indexOf(key, hash);
+			if (this.values[i] != null) {
+				return (V) this.values[i];
+			}
+			insert(i, key, value);
+			return null;
+		}
+
+		@SuppressWarnings("unchecked")
+		synchronized V remove(int key, int hash, V expected) {
+			int i = indexOf(key, hash);
+			Object removed = this.values[i];
+			if (removed == null || (expected != null && removed != expected)) {
+				return null;
+			}
+			int mask = this.keys.length - 1;
+			int j = i;
+			while (true) {
+				j = (j + 1) & mask;
+				if (this.values[j] == null) {
+					break;
+				}
+				int home = hash(this.keys[j]) & mask;
+				boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+				if (!stays) {
+					this.keys[i] = this.keys[j];
+					this.values[i] = this.values[j];
+					i = j;
+				}
+			}
+			this.values[i] = null;
+			this.size--;
+			return (V) removed;
+		}
+
+		synchronized int size() {
+			return this.size;
+		}
+
+		@SuppressWarnings("unchecked")
+		synchronized void collect(List<V> target) {
+			for (Object value : this.values) {
+				if (value != null) {
+					target.add((V) value);
+				}
+			}
+		}
+
+		/**
+		 * The slot of the key, or the free slot where it would be inserted.
+		 */
+		private int indexOf(int key, int hash) {
+			int mask = this.keys.length - 1;
+			int i = hash & mask;
+			while (this.values[i] != null && this.keys[i] != key) {
+				i = (i + 1) & mask;
+			}
+			return i;
+		}
+
+		private void insert(int i, int key, V value) {
+			this.keys[i] = key;
+			this.values[i] = value;
+			if (++this.size > (this.keys.length >> 1) + (this.keys.length >> 2)) {
+				resize();
+			}
+		}
+
+		private void resize() {
+			int[] oldKeys = this.keys;
+			Object[] oldValues = this.values;
+			int capacity = oldKeys.length << 1;
+			int mask = capacity - 1;
+			this.keys = new int[capacity];
+			this.values = new Object[capacity];
+			for (int n = 0; n < oldKeys.length; n++) {
+				if (oldValues[n] != null) {
+					int i = hash(oldKeys[n]) & mask;
+					while (this.values[i] != null) {
+						i = (i + 1) & mask;
+					}
+					this.keys[i] = oldKeys[n];
+					this.values[i] = oldValues[n];
+				}
+			}
+		}
+
+	}
+
+}
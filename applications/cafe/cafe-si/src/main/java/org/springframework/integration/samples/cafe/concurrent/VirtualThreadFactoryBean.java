@@ -0,0 +1,81 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.integration.samples.cafe.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Creates a {@link ThreadFactory} for virtual threads when the JVM supports them
+ * (Java 21 and later), so that a thread per task executor can run a very large
+ * number of blocking tasks, such as drinks being prepared by the Barista.
+ * <p/>
+ * The virtual thread API is looked up reflectively, since the samples are built
+ * for Java 8; on older JVMs the factory falls back to daemon platform threads.
+ */
+public class VirtualThreadFactoryBean implements FactoryBean<ThreadFactory> {
+
+	private static final Log logger = LogFactory.getLog(VirtualThreadFactoryBean.class);
+
+	private String threadNamePrefix = "virtual-";
+
+	public void setThreadNamePrefix(String threadNamePrefix) {
+		this.threadNamePrefix = threadNamePrefix;
+	}
+
+	@Override
+	public ThreadFactory getObject() {
+		ThreadFactory virtualThreads = virtualThreadFactory(this.threadNamePrefix);
+		if (virtualThreads != null) {
+			return virtualThreads;
+		}
+		logger.warn("Virtual threads are not available on this JVM, using platform threads instead");
+		CustomizableThreadFactory platformThreads = new CustomizableThreadFactory(this.threadNamePrefix);
+		platformThreads.setDaemon(true);
+		return platformThreads;
+	}
+
+	@Override
+	public Class<?> getObjectType() {
+		return ThreadFactory.class;
+	}
+
+	/**
+	 * @param threadNamePrefix the prefix for the names of the created threads
+	 * @return a factory for virtual threads, or null if the JVM does not support them
+	 */
+	public static ThreadFactory virtualThreadFactory(String threadNamePrefix) {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			Method name = builderType.getMethod("name", String.class, long.class);
+			builder = name.invoke(builder, threadNamePrefix, 0L);
+			return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+		}
+		catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+}
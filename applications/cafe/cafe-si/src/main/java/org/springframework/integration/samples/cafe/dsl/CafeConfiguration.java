@@ -0,0 +1,307 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.dsl;
+
+import java.util.List;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableMBeanExport;
+import org.springframework.integration.annotation.GlobalChannelInterceptor;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.PublishSubscribeChannel;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.config.EnableIntegration;
+import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.integration.dsl.IntegrationFlows;
+import org.springframework.integration.dsl.Pollers;
+import org.springframework.integration.gateway.GatewayProxyFactoryBean;
+import org.springframework.integration.samples.cafe.Cafe;
+import org.springframework.integration.samples.cafe.Delivery;
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.integration.samples.cafe.OrderBatchDispatcher;
+import org.springframework.integration.samples.cafe.OrderItem;
+import org.springframework.integration.samples.cafe.PendingDeliveries;
+import org.springframework.integration.samples.cafe.SingleItemOrderFastPath;
+import org.springframework.integration.samples.cafe.admission.DuplicateOrderFilter;
+import org.springframework.integration.samples.cafe.admission.OrderAdmissionController;
+import org.springframework.integration.samples.cafe.latency.FlowLatencyInterceptor;
+import org.springframework.integration.samples.cafe.sink.BatchingDeliverySink;
+import org.springframework.integration.samples.cafe.store.OrderNumberMessageGroupStore;
+import org.springframework.integration.samples.cafe.xml.Barista;
+import org.springframework.integration.samples.cafe.xml.Waiter;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+/**
+ * The flow of "cafeDemo-xml.xml", without its profiles, as Java DSL
+ * {@link IntegrationFlow}s that evaluate no SpEL per message.
+ * <p/>
+ * The splitter calls <code>Order.getItems()</code> through a method reference
+ * instead of evaluating <code>payload.items</code>, and the router returns the
+ * <em>hotDrinks</em> or <em>coldDrinks</em> channel itself, resolved once when
+ * the flow is built, instead of evaluating
+ * <code>payload.iced ? 'coldDrinks' : 'hotDrinks'</code> and looking the
+ * channel name up in the bean factory for every drink. The same goes for the
+ * correlation of the drinks by order number and the call to the {@link Waiter}.
+ * The channels keep the names of the XML configuration, so the stage latencies
+ * are recorded the same way.
+ * <p/>
+ * The <strong>FlowDefinitionBenchmark</strong> of the cafe-benchmarks module
+ * compares the two styles on the flow of "cafeBenchmark-xml.xml", with every
+ * stage on the caller's thread, and its copy written the same way as this class,
+ * <strong>CafeBenchmarkConfiguration</strong>; it does not load this class.
+ */
+@Configuration
+@EnableIntegration
+@EnableMBeanExport
+@EnableScheduling
+public class CafeConfiguration implements SchedulingConfigurer {
+
+	@Bean
+	public GatewayProxyFactoryBean cafe() {
+		GatewayProxyFactoryBean cafe = new GatewayProxyFactoryBean(Cafe.class);
+		// placeOrderAsync returns the future created by pendingDeliveries
+		cafe.setAsyncExecutor(null);
+		return cafe;
+	}
+
+	@Bean
+	public DirectChannel orders() {
+		DirectChannel orders = new DirectChannel();
+		orders.addInterceptor(orderAdmission());
+		return orders;
+	}
+
+	@Bean
+	public DirectChannel drinks() {
+		return new DirectChannel();
+	}
+
+	@Bean
+	public QueueChannel hotDrinks() {
+		QueueChannel hotDrinks = new QueueChannel(10);
+		hotDrinks.addInterceptor(orderAdmission());
+		orderAdmission().setHotDrinks(hotDrinks);
+		return hotDrinks;
+	}
+
+	@Bean
+	public QueueChannel coldDrinks() {
+		QueueChannel coldDrinks = new QueueChannel(10);
+		coldDrinks.addInterceptor(orderAdmission());
+		orderAdmission().setColdDrinks(coldDrinks);
+		return coldDrinks;
+	}
+
+	@Bean
+	public DirectChannel preparedDrinks() {
+		return new DirectChannel();
+	}
+
+	@Bean
+	public PublishSubscribeChannel deliveries() {
+		return new PublishSubscribeChannel();
+	}
+
+	@Bean
+	public DirectChannel asyncOrders() {
+		return new DirectChannel();
+	}
+
+	@Bean
+	public DirectChannel orderBatches() {
+		DirectChannel orderBatches = new DirectChannel();
+		orderBatches.addInterceptor(orderAdmission());
+		return orderBatches;
+	}
+
+	@Bean
+	@SuppressWarnings("unchecked")
+	public IntegrationFlow orderFlow() {
+		SingleItemOrderFastPath singleItemOrders = singleItemOrders();
+		MessageChannel hotDrinks = hotDrinks();
+		MessageChannel coldDrinks = coldDrinks();
+		PendingDeliveries pendingDeliveries = pendingDeliveries();
+		return IntegrationFlows.from(orders())
+				// orders placed again are dropped before they are split, failing their futures if placed async
+				.filter(duplicateOrders(), "accept", filter -> filter.discardFlow(discarded -> discarded
+						.handle((MessageHandler) order -> pendingDeliveries.reject((Order) order.getPayload()))))
+				// orders of a single item skip the splitter
+				.handle(Message.class, (order, headers) -> singleItemOrders.placeOrder((Message<Order>) order))
+				.split(Order.class, Order::getItems)
+				.channel(drinks())
+				.route(OrderItem.class, item -> item.isIced() ? coldDrinks : hotDrinks)
+				.get();
+	}
+
+	@Bean
+	public IntegrationFlow hotDrinkBaristaFlow() {
+		Barista barista = barista();
+		return IntegrationFlows.from(hotDrinks())
+				.transform(OrderItem.class, barista::prepareHotDrink, e -> e.poller(Pollers.fixedDelay(1000)))
+				.channel(preparedDrinks())
+				.get();
+	}
+
+	@Bean
+	public IntegrationFlow coldDrinkBaristaFlow() {
+		Barista barista = barista();
+		return IntegrationFlows.from(coldDrinks())
+				.transform(OrderItem.class, barista::prepareColdDrink, e -> e.poller(Pollers.fixedDelay(1000)))
+				.channel(preparedDrinks())
+				.get();
+	}
+
+	@Bean
+	@SuppressWarnings("unchecked")
+	public IntegrationFlow deliveryFlow() {
+		SingleItemOrderFastPath singleItemOrders = singleItemOrders();
+		return IntegrationFlows.from(preparedDrinks())
+				// the drink of a single item order skips the aggregator
+				.handle(Message.class, (drink, headers) -> singleItemOrders.deliver((Message<Drink>) drink))
+				.aggregate(aggregator -> aggregator
+						.correlationStrategy(drink -> ((Drink) drink.getPayload()).getOrderNumber())
+						.outputProcessor(new DeliveryGroupProcessor(new Waiter()))
+						.messageStore(drinkGroupStore())
+						.expireGroupsUponCompletion(true)
+						.sendPartialResultOnExpiry(true))
+				.channel(deliveries())
+				.get();
+	}
+
+	@Bean
+	public IntegrationFlow printedDeliveries() {
+		return IntegrationFlows.from(deliveries())
+				.handle(deliverySink())
+				.get();
+	}
+
+	@Bean
+	public IntegrationFlow pendingDeliveryFlow() {
+		PendingDeliveries pendingDeliveries = pendingDeliveries();
+		return IntegrationFlows.from(deliveries())
+				.handle((MessageHandler) delivery -> pendingDeliveries.deliver((Delivery) delivery.getPayload()))
+				.get();
+	}
+
+	@Bean
+	public IntegrationFlow asyncOrderFlow() {
+		PendingDeliveries pendingDeliveries = pendingDeliveries();
+		return IntegrationFlows.from(asyncOrders())
+				.handle(Order.class, (order, headers) -> pendingDeliveries.placeOrder(order))
+				.get();
+	}
+
+	@Bean
+	@SuppressWarnings("unchecked")
+	public IntegrationFlow orderBatchFlow() {
+		OrderBatchDispatcher orderBatchDispatcher = orderBatchDispatcher();
+		return IntegrationFlows.from(orderBatches())
+				.handle((MessageHandler) batch -> orderBatchDispatcher.placeOrders((List<Order>) batch.getPayload()))
+				.get();
+	}
+
+	@Bean
+	public BatchingDeliverySink deliverySink() {
+		return new BatchingDeliverySink();
+	}
+
+	@Bean
+	public OrderNumberMessageGroupStore drinkGroupStore() {
+		OrderNumberMessageGroupStore drinkGroupStore = new OrderNumberMessageGroupStore();
+		drinkGroupStore.setGroupTimeout(1800000);
+		return drinkGroupStore;
+	}
+
+	@Bean
+	public PendingDeliveries pendingDeliveries() {
+		PendingDeliveries pendingDeliveries = new PendingDeliveries(orders());
+		pendingDeliveries.setTimeout(600000);
+		pendingDeliveries.setExecutor(orderPlacement());
+		return pendingDeliveries;
+	}
+
+	/**
+	 * Places the async orders off the caller's thread; once 1000 orders wait for
+	 * a thread, further ones fail their futures.
+	 */
+	@Bean
+	public ThreadPoolTaskExecutor orderPlacement() {
+		ThreadPoolTaskExecutor orderPlacement = new ThreadPoolTaskExecutor();
+		orderPlacement.setCorePoolSize(4);
+		orderPlacement.setMaxPoolSize(4);
+		orderPlacement.setQueueCapacity(1000);
+		return orderPlacement;
+	}
+
+	@Bean
+	public SingleItemOrderFastPath singleItemOrders() {
+		return new SingleItemOrderFastPath(hotDrinks(), coldDrinks(), deliveries());
+	}
+
+	@Bean
+	public OrderBatchDispatcher orderBatchDispatcher() {
+		return new OrderBatchDispatcher(hotDrinks(), coldDrinks());
+	}
+
+	/**
+	 * The drink queues register themselves with the controller, which intercepts them.
+	 */
+	@Bean
+	public OrderAdmissionController orderAdmission() {
+		OrderAdmissionController orderAdmission = new OrderAdmissionController();
+		orderAdmission.setPolicy(OrderAdmissionController.OverloadPolicy.DELAY);
+		orderAdmission.setMaxDelay(600000);
+		orderAdmission.setTargetQueueTime(10000);
+		return orderAdmission;
+	}
+
+	@Bean
+	public DuplicateOrderFilter duplicateOrders() {
+		return new DuplicateOrderFilter(4096, 64, 262144, 0.01);
+	}
+
+	@Bean
+	@GlobalChannelInterceptor(order = -1,
+			patterns = { "orders", "orderBatches", "drinks", "hotDrinks", "coldDrinks", "preparedDrinks", "deliveries" })
+	public FlowLatencyInterceptor flowLatency() {
+		FlowLatencyInterceptor flowLatency = new FlowLatencyInterceptor();
+		flowLatency.setEnabled(Boolean.getBoolean("cafe.flow-latency"));
+		return flowLatency;
+	}
+
+	@Bean
+	public Barista barista() {
+		return new Barista();
+	}
+
+	@Override
+	public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+		taskRegistrar.addFixedRateTask(drinkGroupStore()::expireTimedOutGroups, 1000);
+		taskRegistrar.addFixedRateTask(pendingDeliveries()::expire, 1000);
+		taskRegistrar.addFixedRateTask(orderAdmission()::updateLimits, 1000);
+		taskRegistrar.addFixedRateTask(flowLatency()::expire, 1000);
+	}
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.dsl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.integration.aggregator.AbstractAggregatingMessageGroupProcessor;
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.xml.Waiter;
+import org.springframework.integration.store.MessageGroup;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * Hands the drinks of a released group to the {@link Waiter} with a plain method
+ * call, in place of the method-invoking processor that the XML aggregator
+ * resolves its <code>prepareDelivery</code> method with. The headers the drinks
+ * have in common are still carried over to the delivery.
+ */
+public class DeliveryGroupProcessor extends AbstractAggregatingMessageGroupProcessor {
+
+	private final Waiter waiter;
+
+	public DeliveryGroupProcessor(Waiter waiter) {
+		Assert.notNull(waiter, "'waiter' must not be null");
+		this.waiter = waiter;
+	}
+
+	@Override
+	protected Object aggregatePayloads(MessageGroup group, Map<String, Object> defaultHeaders) {
+		Collection<Message<?>> messages = group.getMessages();
+		List<Drink> drinks = new ArrayList<>(messages.size());
+		for (Message<?> message : messages) {
+			drinks.add((Drink) message.getPayload());
+		}
+		return this.waiter.prepareDelivery(drinks);
+	}
+
+}
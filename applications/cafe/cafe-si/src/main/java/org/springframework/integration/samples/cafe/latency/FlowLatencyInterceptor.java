@@ -0,0 +1,395 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.latency;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import org.springframework.integration.StaticMessageHeaderAccessor;
+import org.springframework.integration.channel.interceptor.VetoCapableInterceptor;
+import org.springframework.integration.samples.cafe.Delivery;
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.integration.samples.cafe.OrderItem;
+import org.springframework.integration.samples.cafe.concurrent.StripedIntMap;
+import org.springframework.integration.support.context.NamedComponent;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.InterceptableChannel;
+
+/**
+ * Times each {@link Stage} of the cafe flow into an HdrHistogram, to show where
+ * the time of an order goes.
+ * <p/>
+ * Registered as a global channel interceptor on the channels of the flow, it
+ * knows them by their bean names. It is off unless {@link #setEnabled(boolean)
+ * enabled}, in which case it vetoes its registration and costs the flow nothing.
+ * <p/>
+ * The messages pass unchanged: the times are kept by order number rather than in
+ * headers. On the <em>orders</em> and <em>orderBatches</em> channels it notes the
+ * time each order was placed, which also starts the first stage of each of its
+ * items. On each later channel it records the time since the previous one for
+ * the stage that ends there, for the item of the drink's sequence number:
+ * <em>drinks</em> ends the split, sending to <em>hotDrinks</em> or
+ * <em>coldDrinks</em> ends the route and taking a drink off them the queue wait,
+ * and <em>preparedDrinks</em> ends the preparation. On <em>deliveries</em> it
+ * records the aggregation, since the first drink of the order was prepared,
+ * and the delivery, since the order was placed. Stages of orders it did not see
+ * placed, or of drinks without a sequence number in orders of several items, are
+ * not recorded.
+ * <p/>
+ * The latencies are recorded without locking and collected into a histogram per
+ * stage when read. Their percentiles, maximum and count are exposed over JMX as
+ * arrays in the order of the {@link Stage}s, in milliseconds. The orders that are
+ * never delivered are forgotten by {@link #expire()}, which is meant to be
+ * scheduled at a fixed rate.
+ */
+@ManagedResource
+public class FlowLatencyInterceptor implements ChannelInterceptor, VetoCapableInterceptor {
+
+	private static final Stage[] STAGES = Stage.values();
+
+	private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final StageLatency[] latencies = new StageLatency[STAGES.length];
+
+	private final StripedIntMap<OrderTiming> orders = new StripedIntMap<>();
+
+	private volatile boolean enabled;
+
+	private volatile long timeout = 1800000;
+
+	public FlowLatencyInterceptor() {
+		for (int i = 0; i < this.latencies.length; i++) {
+			this.latencies[i] = new StageLatency();
+		}
+	}
+
+	/**
+	 * @param enabled whether to intercept the channels of the flow at all; must be
+	 * set before the global interceptors are applied to them (default false)
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	@ManagedAttribute
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	/**
+	 * @param timeout the time in milliseconds after which an order that is not
+	 * delivered is forgotten
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	@Override
+	public boolean shouldIntercept(String beanName, InterceptableChannel channel) {
+		return this.enabled;
+	}
+
+	@Override
+	public Message<?> preSend(Message<?> message, MessageChannel channel) {
+		long now = System.nanoTime();
+		Object payload = message.getPayload();
+		switch (channelName(channel)) {
+			case "orders":
+				if (payload instanceof Order) {
+					placed((Order) payload, now);
+				}
+				break;
+			case "orderBatches":
+				if (payload instanceof List) {
+					for (Object order : (List<?>) payload) {
+						if (order instanceof Order) {
+							placed((Order) order, now);
+						}
+					}
+				}
+				break;
+			case "drinks":
+				endStage(Stage.SPLIT, message, now);
+				break;
+			case "hotDrinks":
+			case "coldDrinks":
+				endStage(Stage.ROUTE, message, now);
+				break;
+			case "preparedDrinks":
+				OrderTiming timing = endStage(Stage.PREPARATION, message, now);
+				if (timing != null) {
+					timing.prepared(now);
+				}
+				break;
+			case "deliveries":
+				if (payload instanceof Delivery) {
+					delivered(this.orders.remove(((Delivery) payload).getOrderNumber()), now);
+				}
+				break;
+			default:
+				break;
+		}
+		return message;
+	}
+
+	@Override
+	public Message<?> postReceive(Message<?> message, MessageChannel channel) {
+		switch (channelName(channel)) {
+			case "hotDrinks":
+			case "coldDrinks":
+				endStage(Stage.QUEUE_WAIT, message, System.nanoTime());
+				break;
+			default:
+				break;
+		}
+		return message;
+	}
+
+	private static String channelName(MessageChannel channel) {
+		String name = channel instanceof NamedComponent ? ((NamedComponent) channel).getComponentName() : null;
+		return name != null ? name : "";
+	}
+
+	private void placed(Order order, long now) {
+		OrderTiming timing = new OrderTiming(order.getNumber(), now, Math.max(1, order.getItems().size()));
+		this.orders.remove(timing.orderNumber);
+		this.orders.putIfAbsent(timing.orderNumber, timing);
+	}
+
+	private OrderTiming endStage(Stage stage, Message<?> message, long now) {
+		Object payload = message.getPayload();
+		int orderNumber;
+		if (payload instanceof OrderItem) {
+			orderNumber = ((OrderItem) payload).getOrderNumber();
+		}
+		else if (payload instanceof Drink) {
+			orderNumber = ((Drink) payload).getOrderNumber();
+		}
+		else {
+			return null;
+		}
+		OrderTiming timing = this.orders.get(orderNumber);
+		if (timing == null) {
+			return null;
+		}
+		int item = StaticMessageHeaderAccessor.getSequenceNumber(message);
+		if (item == 0 && timing.stageStarted.length == 1) {
+			item = 1;
+		}
+		if (item < 1 || item > timing.stageStarted.length) {
+			return null;
+		}
+		record(stage, now - timing.stageStarted[item - 1]);
+		timing.stageStarted[item - 1] = now;
+		return timing;
+	}
+
+	private void delivered(OrderTiming timing, long now) {
+		if (timing == null) {
+			return;
+		}
+		long aggregation = timing.sincePrepared(now);
+		if (aggregation >= 0) {
+			record(Stage.AGGREGATION, aggregation);
+		}
+		record(Stage.DELIVERY, now - timing.placed);
+	}
+
+	/**
+	 * @param stage the stage
+	 * @param nanos its latency in nanoseconds
+	 */
+	public void record(Stage stage, long nanos) {
+		this.latencies[stage.ordinal()].recorder.recordValue(Math.max(0, nanos));
+	}
+
+	/**
+	 * Forget the orders that were not delivered within the timeout.
+	 * @return the number of orders forgotten
+	 */
+	public int expire() {
+		long oldest = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(this.timeout);
+		int expired = 0;
+		for (OrderTiming timing : this.orders.values()) {
+			if (timing.placed - oldest < 0 && this.orders.remove(timing.orderNumber, timing)) {
+				expired++;
+			}
+		}
+		return expired;
+	}
+
+	/**
+	 * @param stage the stage
+	 * @param percentile the percentile, e.g. 99.9
+	 * @return the latency of the stage at that percentile in milliseconds
+	 */
+	@ManagedOperation
+	public double getPercentileMillis(String stage, double percentile) {
+		return this.latencies[Stage.valueOf(stage).ordinal()].valueAtPercentile(percentile) / NANOS_PER_MILLI;
+	}
+
+	@ManagedAttribute(description = "The stages, in the order of the latency arrays")
+	public String[] getStages() {
+		String[] stages = new String[STAGES.length];
+		for (int i = 0; i < stages.length; i++) {
+			stages[i] = STAGES[i].name();
+		}
+		return stages;
+	}
+
+	@ManagedAttribute(description = "The latencies recorded per stage")
+	public long[] getCounts() {
+		long[] counts = new long[this.latencies.length];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = this.latencies[i].count();
+		}
+		return counts;
+	}
+
+	@ManagedAttribute(description = "The median latency per stage in milliseconds")
+	public double[] getMedianMillis() {
+		return percentileMillis(50);
+	}
+
+	@ManagedAttribute(description = "The 99th percentile latency per stage in milliseconds")
+	public double[] getP99Millis() {
+		return percentileMillis(99);
+	}
+
+	@ManagedAttribute(description = "The 99.9th percentile latency per stage in milliseconds")
+	public double[] getP999Millis() {
+		return percentileMillis(99.9);
+	}
+
+	@ManagedAttribute(description = "The maximum latency per stage in milliseconds")
+	public double[] getMaxMillis() {
+		double[] millis = new double[this.latencies.length];
+		for (int i = 0; i < millis.length; i++) {
+			millis[i] = this.latencies[i].max() / NANOS_PER_MILLI;
+		}
+		return millis;
+	}
+
+	private double[] percentileMillis(double percentile) {
+		double[] millis = new double[this.latencies.length];
+		for (int i = 0; i < millis.length; i++) {
+			millis[i] = this.latencies[i].valueAtPercentile(percentile) / NANOS_PER_MILLI;
+		}
+		return millis;
+	}
+
+	/**
+	 * Start recording the latencies afresh.
+	 */
+	@ManagedOperation
+	public void reset() {
+		for (StageLatency latency : this.latencies) {
+			latency.reset();
+		}
+	}
+
+
+	/**
+	 * The latencies of a stage: recorded concurrently, collected and read under
+	 * its lock.
+	 */
+	private static final class StageLatency {
+
+		private final Recorder recorder = new Recorder(3);
+
+		private final Histogram total = new Histogram(3);
+
+		private Histogram interval;
+
+		synchronized long count() {
+			return collect().getTotalCount();
+		}
+
+		synchronized long max() {
+			return collect().getMaxValue();
+		}
+
+		synchronized long valueAtPercentile(double percentile) {
+			return collect().getValueAtPercentile(percentile);
+		}
+
+		synchronized void reset() {
+			this.recorder.reset();
+			this.total.reset();
+		}
+
+		private Histogram collect() {
+			this.interval = this.recorder.getIntervalHistogram(this.interval);
+			this.total.add(this.interval);
+			return this.total;
+		}
+
+	}
+
+
+	/**
+	 * When an order was placed, when the current stage of each of its items
+	 * started, and when its first drink was prepared. Each item is in one stage
+	 * at a time, which the channel between two stages hands over.
+	 */
+	private static final class OrderTiming {
+
+		private final int orderNumber;
+
+		private final long placed;
+
+		private final long[] stageStarted;
+
+		private boolean prepared;
+
+		private long firstPrepared;
+
+		OrderTiming(int orderNumber, long placed, int items) {
+			this.orderNumber = orderNumber;
+			this.placed = placed;
+			this.stageStarted = new long[items];
+			Arrays.fill(this.stageStarted, placed);
+		}
+
+		synchronized void prepared(long now) {
+			if (!this.prepared) {
+				this.prepared = true;
+				this.firstPrepared = now;
+			}
+		}
+
+		/**
+		 * @param now the time of the delivery
+		 * @return the time since the first drink was prepared, or -1 if none was
+		 */
+		synchronized long sincePrepared(long now) {
+			return this.prepared ? Math.max(0, now - this.firstPrepared) : -1;
+		}
+
+	}
+
+}
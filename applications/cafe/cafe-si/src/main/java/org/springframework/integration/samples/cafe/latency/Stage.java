@@ -0,0 +1,57 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.latency;
+
+/**
+ * The stages of the cafe flow that {@link FlowLatencyInterceptor} times.
+ */
+public enum Stage {
+
+	/**
+	 * From placing the order to its items reaching the <em>drinks</em> channel.
+	 */
+	SPLIT,
+
+	/**
+	 * From the <em>drinks</em> channel, or placing a single-item or batched order,
+	 * to the drink queue.
+	 */
+	ROUTE,
+
+	/**
+	 * From entering the drink queue to being taken off it by a barista.
+	 */
+	QUEUE_WAIT,
+
+	/**
+	 * From being taken off the drink queue to the prepared drink reaching the
+	 * <em>preparedDrinks</em> channel.
+	 */
+	PREPARATION,
+
+	/**
+	 * From the first prepared drink of an order to its delivery, the time the
+	 * Waiter holds the drinks until the order is complete.
+	 */
+	AGGREGATION,
+
+	/**
+	 * From placing the order to its delivery, end to end.
+	 */
+	DELIVERY
+
+}
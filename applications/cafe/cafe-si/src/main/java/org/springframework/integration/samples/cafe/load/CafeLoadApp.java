@@ -0,0 +1,69 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.load;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.support.AbstractApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.integration.samples.cafe.Cafe;
+import org.springframework.integration.samples.cafe.dsl.CafeConfiguration;
+
+/**
+ * Provides the 'main' method for placing an open-loop load on the Cafe Demo
+ * instead of its fixed loop of orders, and printing the throughput and latency
+ * percentiles. The load is configured with the <code>cafe.load.*</code> system
+ * properties described in {@link LoadProfile#fromSystemProperties()}, e.g.
+ * <pre>
+ * -Dcafe.load.rate=50 -Dcafe.load.duration=120 -Dcafe.load.warmup=20 -Dcafe.load.arrivals=poisson
+ * </pre>
+ * The first argument selects the configuration, <code>xml</code> (the default),
+ * <code>annotation</code> or <code>dsl</code>; the usual <code>spring.profiles.active</code>
+ * selects the barista execution mode. The JMS and AMQP variants have their own
+ * main classes that place the same load through {@link #placeLoad(BeanFactory)}.
+ */
+public class CafeLoadApp {
+
+	/**
+	 * Place the load of the <code>cafe.load.*</code> system properties with the
+	 * <em>cafe</em> gateway and print the report.
+	 * @param beanFactory the context of the Cafe
+	 * @return the report
+	 * @throws InterruptedException if interrupted while placing the load
+	 */
+	public static LoadReport placeLoad(BeanFactory beanFactory) throws InterruptedException {
+		Cafe cafe = beanFactory.getBean("cafe", Cafe.class);
+		LoadReport report = new OpenLoopLoadGenerator(cafe, LoadProfile.fromSystemProperties()).run();
+		System.out.println(report);
+		return report;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		String config = args.length > 0 ? args[0] : "xml";
+		AbstractApplicationContext context = "dsl".equals(config)
+				? new AnnotationConfigApplicationContext(CafeConfiguration.class)
+				: new ClassPathXmlApplicationContext("/META-INF/spring/integration/cafeDemo-" + config + ".xml",
+						CafeLoadApp.class);
+		try {
+			placeLoad(context);
+		}
+		finally {
+			context.close();
+		}
+	}
+
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * The load an {@link OpenLoopLoadGenerator} places on the Cafe: the rate at
+ * which orders arrive, for how long, and what the orders look like.
+ * <p/>
+ * The number of items of an order and the drink type of each item are drawn
+ * from weighted distributions, written as comma-separated <code>value=weight</code>
+ * pairs, e.g. <code>1=60,2=30,4=10</code> for the order sizes or
+ * <code>LATTE=3,MOCHA=1</code> for the drink mix. Each item is iced with the
+ * configured probability and has between 1 and the maximum number of shots.
+ * <p/>
+ * {@link #fromSystemProperties()} reads the profile from <code>cafe.load.*</code>
+ * system properties, so that every variant of the Cafe can be driven with the
+ * same load from the command line.
+ */
+public class LoadProfile {
+
+	/**
+	 * How the arrival times of the orders are spaced.
+	 */
+	public enum Arrivals {
+
+		/**
+		 * The orders arrive at a constant interval.
+		 */
+		UNIFORM,
+
+		/**
+		 * The intervals are exponentially distributed, like independent customers.
+		 */
+		POISSON
+
+	}
+
+	private double rate = 10;
+
+	private long duration = 60000;
+
+	private long warmup;
+
+	private long drainTimeout = 60000;
+
+	private Arrivals arrivals = Arrivals.UNIFORM;
+
+	private Weighted<Integer> orderSizes = Weighted.parse("2", Integer::valueOf);
+
+	private Weighted<DrinkType> drinkMix = Weighted.parse("LATTE,MOCHA", DrinkType::valueOf);
+
+	private double icedRatio = 0.5;
+
+	private int maxShots = 3;
+
+	private long seed = System.nanoTime();
+
+	/**
+	 * Create a profile from the <code>cafe.load.rate</code> (orders per second),
+	 * <code>cafe.load.duration</code>, <code>cafe.load.warmup</code> and
+	 * <code>cafe.load.drainTimeout</code> (in seconds), <code>cafe.load.arrivals</code>,
+	 * <code>cafe.load.orderSizes</code>, <code>cafe.load.drinkMix</code>,
+	 * <code>cafe.load.icedRatio</code>, <code>cafe.load.maxShots</code> and
+	 * <code>cafe.load.seed</code> system properties; the ones not set keep their
+	 * defaults.
+	 * @return the profile
+	 */
+	public static LoadProfile fromSystemProperties() {
+		LoadProfile profile = new LoadProfile();
+		String value = System.getProperty("cafe.load.rate");
+		if (value != null) {
+			profile.setRate(Double.parseDouble(value));
+		}
+		value = System.getProperty("cafe.load.duration");
+		if (value != null) {
+			profile.setDuration(TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+		}
+		value = System.getProperty("cafe.load.warmup");
+		if (value != null) {
+			profile.setWarmup(TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+		}
+		value = System.getProperty("cafe.load.drainTimeout");
+		if (value != null) {
+			profile.setDrainTimeout(TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+		}
+		value = System.getProperty("cafe.load.arrivals");
+		if (value != null) {
+			profile.setArrivals(Arrivals.valueOf(value.toUpperCase()));
+		}
+		value = System.getProperty("cafe.load.orderSizes");
+		if (value != null) {
+			profile.setOrderSizes(value);
+		}
+		value = System.getProperty("cafe.load.drinkMix");
+		if (value != null) {
+			profile.setDrinkMix(value);
+		}
+		value = System.getProperty("cafe.load.icedRatio");
+		if (value != null) {
+			profile.setIcedRatio(Double.parseDouble(value));
+		}
+		value = System.getProperty("cafe.load.maxShots");
+		if (value != null) {
+			profile.setMaxShots(Integer.parseInt(value));
+		}
+		value = System.getProperty("cafe.load.seed");
+		if (value != null) {
+			profile.setSeed(Long.parseLong(value));
+		}
+		return profile;
+	}
+
+	/**
+	 * @param rate the orders placed per second
+	 */
+	public void setRate(double rate) {
+		Assert.isTrue(rate > 0, "'rate' must be positive");
+		this.rate = rate;
+	}
+
+	public double getRate() {
+		return this.rate;
+	}
+
+	/**
+	 * @param duration the time in milliseconds during which orders are placed,
+	 * including the warmup
+	 */
+	public void setDuration(long duration) {
+		Assert.isTrue(duration > 0, "'duration' must be positive");
+		this.duration = duration;
+	}
+
+	public long getDuration() {
+		return this.duration;
+	}
+
+	/**
+	 * @param warmup the time in milliseconds at the start whose orders are placed
+	 * but not measured
+	 */
+	public void setWarmup(long warmup) {
+		Assert.isTrue(warmup >= 0, "'warmup' must not be negative");
+		this.warmup = warmup;
+	}
+
+	public long getWarmup() {
+		return this.warmup;
+	}
+
+	/**
+	 * @param drainTimeout the time in milliseconds to wait for the deliveries
+	 * still missing after the last order has been placed
+	 */
+	public void setDrainTimeout(long drainTimeout) {
+		Assert.isTrue(drainTimeout >= 0, "'drainTimeout' must not be negative");
+		this.drainTimeout = drainTimeout;
+	}
+
+	public long getDrainTimeout() {
+		return this.drainTimeout;
+	}
+
+	public void setArrivals(Arrivals arrivals) {
+		Assert.notNull(arrivals, "'arrivals' must not be null");
+		this.arrivals = arrivals;
+	}
+
+	public Arrivals getArrivals() {
+		return this.arrivals;
+	}
+
+	/**
+	 * @param orderSizes the weighted numbers of items per order, e.g. <code>1=60,2=30,4=10</code>
+	 */
+	public void setOrderSizes(String orderSizes) {
+		Weighted<Integer> sizes = Weighted.parse(orderSizes, Integer::valueOf);
+		for (Integer size : sizes.values) {
+			Assert.isTrue(size > 0, "Order sizes must be positive");
+		}
+		this.orderSizes = sizes;
+	}
+
+	/**
+	 * @param drinkMix the weighted drink types, e.g. <code>LATTE=3,MOCHA=1</code>
+	 */
+	public void setDrinkMix(String drinkMix) {
+		this.drinkMix = Weighted.parse(drinkMix.toUpperCase(), DrinkType::valueOf);
+	}
+
+	/**
+	 * @param icedRatio the probability of an item being iced
+	 */
+	public void setIcedRatio(double icedRatio) {
+		Assert.isTrue(icedRatio >= 0 && icedRatio <= 1, "'icedRatio' must be between 0 and 1");
+		this.icedRatio = icedRatio;
+	}
+
+	/**
+	 * @param maxShots the maximum number of shots of an item
+	 */
+	public void setMaxShots(int maxShots) {
+		Assert.isTrue(maxShots > 0, "'maxShots' must be positive");
+		this.maxShots = maxShots;
+	}
+
+	/**
+	 * @param seed the seed of the random arrivals and orders, to repeat a load
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	long getSeed() {
+		return this.seed;
+	}
+
+	/**
+	 * @param random the source of randomness
+	 * @return the time in nanoseconds until the next order arrives
+	 */
+	long nextInterval(Random random) {
+		double meanNanos = TimeUnit.SECONDS.toNanos(1) / this.rate;
+		if (this.arrivals == Arrivals.POISSON) {
+			return (long) (-Math.log(1 - random.nextDouble()) * meanNanos);
+		}
+		return (long) meanNanos;
+	}
+
+	/**
+	 * @param number the order number
+	 * @param random the source of randomness
+	 * @return an order drawn from this profile
+	 */
+	Order newOrder(int number, Random random) {
+		Order order = new Order(number);
+		int items = this.orderSizes.next(random);
+		for (int i = 0; i < items; i++) {
+			order.addItem(this.drinkMix.next(random), 1 + random.nextInt(this.maxShots),
+					random.nextDouble() < this.icedRatio);
+		}
+		return order;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%.1f orders/s for %d s (%d s warmup), %s arrivals, order sizes %s, drinks %s, "
+						+ "%.0f%% iced, up to %d shots",
+				this.rate, TimeUnit.MILLISECONDS.toSeconds(this.duration),
+				TimeUnit.MILLISECONDS.toSeconds(this.warmup), this.arrivals.name().toLowerCase(),
+				this.orderSizes, this.drinkMix, this.icedRatio * 100, this.maxShots);
+	}
+
+
+	/**
+	 * Values drawn with probabilities proportional to their weights.
+	 */
+	private static final class Weighted<T> {
+
+		private final List<T> values = new ArrayList<>();
+
+		private final List<Double> cumulativeWeights = new ArrayList<>();
+
+		private final String spec;
+
+		private Weighted(String spec) {
+			this.spec = spec;
+		}
+
+		static <T> Weighted<T> parse(String spec, Function<String, T> parser) {
+			Weighted<T> weighted = new Weighted<>(spec);
+			double total = 0;
+			for (String pair : StringUtils.commaDelimitedListToStringArray(spec)) {
+				String[] valueAndWeight = pair.trim().split("=");
+				Assert.isTrue(valueAndWeight.length <= 2, () -> "Not a value=weight pair: " + pair);
+				double weight = valueAndWeight.length == 2 ? Double.parseDouble(valueAndWeight[1].trim()) : 1;
+				Assert.isTrue(weight > 0, () -> "Weights must be positive: " + pair);
+				total += weight;
+				weighted.values.add(parser.apply(valueAndWeight[0].trim()));
+				weighted.cumulativeWeights.add(total);
+			}
+			Assert.isTrue(!weighted.values.isEmpty(), () -> "No values in '" + spec + "'");
+			return weighted;
+		}
+
+		T next(Random random) {
+			double total = this.cumulativeWeights.get(this.cumulativeWeights.size() - 1);
+			double point = random.nextDouble() * total;
+			for (int i = 0; i < this.values.size(); i++) {
+				if (point < this.cumulativeWeights.get(i)) {
+					return this.values.get(i);
+				}
+			}
+			return this.values.get(this.values.size() - 1);
+		}
+
+		@Override
+		public String toString() {
+			return this.spec;
+		}
+
+	}
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.load;
+
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * The outcome of a run of the {@link OpenLoopLoadGenerator}: how many of the
+ * measured orders were delivered, failed or are still missing, the delivery
+ * throughput, and two latency histograms.
+ * <p/>
+ * The <em>response time</em> of an order is measured from when it was due to be
+ * placed according to the arrival schedule, so that the time an order spends
+ * waiting behind a blocked caller is not omitted. The <em>service time</em> is
+ * measured from when it was actually placed, which is what a closed-loop client
+ * would report; the difference between the two shows how much the Cafe pushed
+ * back on the caller.
+ */
+public class LoadReport {
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final LoadProfile profile;
+
+	private final long placed;
+
+	private final long delivered;
+
+	private final long failed;
+
+	private final long elapsed;
+
+	private final Histogram responseTimes;
+
+	private final Histogram serviceTimes;
+
+	LoadReport(LoadProfile profile, long placed, long delivered, long failed, long elapsed,
+			Histogram responseTimes, Histogram serviceTimes) {
+
+		this.profile = profile;
+		this.placed = placed;
+		this.delivered = delivered;
+		this.failed = failed;
+		this.elapsed = elapsed;
+		this.responseTimes = responseTimes;
+		this.serviceTimes = serviceTimes;
+	}
+
+	/**
+	 * @return the measured orders placed, after the warmup
+	 */
+	public long getPlaced() {
+		return this.placed;
+	}
+
+	/**
+	 * @return the measured orders delivered
+	 */
+	public long getDelivered() {
+		return this.delivered;
+	}
+
+	/**
+	 * @return the measured orders rejected or failed otherwise
+	 */
+	public long getFailed() {
+		return this.failed;
+	}
+
+	/**
+	 * @return the measured orders neither delivered nor failed within the drain timeout
+	 */
+	public long getMissing() {
+		return this.placed - this.delivered - this.failed;
+	}
+
+	/**
+	 * @return the deliveries of measured orders per second
+	 */
+	public double getThroughput() {
+		return this.elapsed > 0 ? this.delivered * (double) TimeUnit.SECONDS.toNanos(1) / this.elapsed : 0;
+	}
+
+	/**
+	 * @return the response times in nanoseconds, corrected for coordinated omission
+	 */
+	public Histogram getResponseTimes() {
+		return this.responseTimes;
+	}
+
+	/**
+	 * @return the service times in nanoseconds, as a closed-loop client sees them
+	 */
+	public Histogram getServiceTimes() {
+		return this.serviceTimes;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder report = new StringBuilder();
+		report.append("Load: ").append(this.profile).append('\n');
+		report.append(String.format("Placed %d orders: %d delivered, %d failed, %d missing; %.1f deliveries/s%n",
+				this.placed, this.delivered, this.failed, getMissing(), getThroughput()));
+		report.append(String.format("%-14s", "latency (ms)"));
+		for (double percentile : PERCENTILES) {
+			report.append(String.format("%10s", "p" + (percentile == (long) percentile
+					? String.valueOf((long) percentile) : String.valueOf(percentile))));
+		}
+		report.append(String.format("%10s%n", "max"));
+		appendLatencies(report, "response time", this.responseTimes);
+		appendLatencies(report, "service time", this.serviceTimes);
+		return report.toString();
+	}
+
+	private static void appendLatencies(StringBuilder report, String name, Histogram histogram) {
+		report.append(String.format("%-14s", name));
+		for (double percentile : PERCENTILES) {
+			report.append(String.format("%10.2f", histogram.getValueAtPercentile(percentile) / NANOS_PER_MILLI));
+		}
+		report.append(String.format("%10.2f%n", histogram.getMaxValue() / NANOS_PER_MILLI));
+	}
+
+}
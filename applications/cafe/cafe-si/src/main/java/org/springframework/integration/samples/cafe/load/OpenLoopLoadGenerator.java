@@ -0,0 +1,149 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.load;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Recorder;
+
+import org.springframework.integration.samples.cafe.Cafe;
+import org.springframework.integration.samples.cafe.Delivery;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.util.Assert;
+
+/**
+ * Places orders with the {@link Cafe} at the arrival rate of a {@link LoadProfile},
+ * whether or not the earlier orders have been delivered, and measures the time
+ * until each delivery.
+ * <p/>
+ * The orders are placed with {@link Cafe#placeOrderAsync(Order)}, so the caller
+ * does not wait for a delivery, only for the Cafe to take the order. Each order
+ * has an intended start time on the arrival schedule; when the Cafe blocks the
+ * caller, e.g. because admission control delays it, the following orders are
+ * placed late but their latency is still measured from their intended start.
+ * This corrects for coordinated omission: a stalled Cafe shows up as the queue
+ * of customers it would have built up, rather than as a few slow orders. The
+ * uncorrected service time is reported alongside, for comparison.
+ * <p/>
+ * The orders of the warmup are placed but not measured. After the last order
+ * the generator waits up to the drain timeout for the outstanding deliveries.
+ */
+public class OpenLoopLoadGenerator {
+
+	private final Cafe cafe;
+
+	private final LoadProfile profile;
+
+	private volatile int firstOrderNumber = 1;
+
+	/**
+	 * @param cafe the Cafe to place the orders with
+	 * @param profile the load to place
+	 */
+	public OpenLoopLoadGenerator(Cafe cafe, LoadProfile profile) {
+		Assert.notNull(cafe, "'cafe' must not be null");
+		Assert.notNull(profile, "'profile' must not be null");
+		this.cafe = cafe;
+		this.profile = profile;
+	}
+
+	/**
+	 * @param firstOrderNumber the number of the first order placed; the others
+	 * are numbered consecutively
+	 */
+	public void setFirstOrderNumber(int firstOrderNumber) {
+		this.firstOrderNumber = firstOrderNumber;
+	}
+
+	/**
+	 * Place the load and wait for the deliveries.
+	 * @return the report of the measured orders
+	 * @throws InterruptedException if interrupted while placing the orders or
+	 * waiting for the deliveries
+	 */
+	public LoadReport run() throws InterruptedException {
+		Random random = new Random(this.profile.getSeed());
+		Recorder responseTimes = new Recorder(3);
+		Recorder serviceTimes = new Recorder(3);
+		AtomicLong delivered = new AtomicLong();
+		AtomicLong failed = new AtomicLong();
+		AtomicLong lastDelivery = new AtomicLong();
+
+		long start = System.nanoTime();
+		long measuredFrom = start + TimeUnit.MILLISECONDS.toNanos(this.profile.getWarmup());
+		long end = start + TimeUnit.MILLISECONDS.toNanos(this.profile.getDuration());
+		long placed = 0;
+		int number = this.firstOrderNumber;
+		for (long due = start; due - end < 0; due += this.profile.nextInterval(random)) {
+			long wait;
+			while ((wait = due - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(wait);
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+			}
+			Order order = this.profile.newOrder(number++, random);
+			long sent = System.nanoTime();
+			CompletableFuture<Delivery> delivery = placeOrder(order);
+			if (due - measuredFrom >= 0) {
+				placed++;
+				long intended = due;
+				delivery.whenComplete((result, ex) -> {
+					long now = System.nanoTime();
+					if (ex != null) {
+						failed.incrementAndGet();
+						return;
+					}
+					responseTimes.recordValue(now - intended);
+					serviceTimes.recordValue(now - sent);
+					lastDelivery.accumulateAndGet(now, (last, next) -> next - last > 0 ? next : last);
+					delivered.incrementAndGet();
+				});
+			}
+		}
+
+		long drainDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.profile.getDrainTimeout());
+		while (delivered.get() + failed.get() < placed && System.nanoTime() - drainDeadline < 0) {
+			Thread.sleep(10);
+		}
+		long elapsed = delivered.get() > 0 ? lastDelivery.get() - measuredFrom : 0;
+		return new LoadReport(this.profile, placed, delivered.get(), failed.get(), elapsed,
+				responseTimes.getIntervalHistogram(), serviceTimes.getIntervalHistogram());
+	}
+
+	private CompletableFuture<Delivery> placeOrder(Order order) {
+		try {
+			CompletableFuture<Delivery> delivery = this.cafe.placeOrderAsync(order);
+			if (delivery != null) {
+				return delivery;
+			}
+			delivery = new CompletableFuture<>();
+			delivery.completeExceptionally(new IllegalStateException("No future for order #" + order.getNumber()));
+			return delivery;
+		}
+		catch (RuntimeException e) {
+			CompletableFuture<Delivery> delivery = new CompletableFuture<>();
+			delivery.completeExceptionally(e);
+			return delivery;
+		}
+	}
+
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.pool;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.integration.channel.QueueChannelOperations;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.util.Assert;
+
+/**
+ * Grows and shrinks a {@link BaristaPool} with the load on the <em>hotDrinks</em>
+ * and <em>coldDrinks</em> queues.
+ * <p/>
+ * {@link #adjust()} is meant to be scheduled at a fixed rate. Each call samples
+ * the drinks waiting in both queues and the rate at which the pool has prepared
+ * drinks since the last call, smoothed over the calls, and estimates how long
+ * the pool would take to drain the queues. If that is longer than the target
+ * drain time, the pool grows in proportion, by at least one and at most double
+ * its size. Once the drain time has stayed below half the target for a number of
+ * calls in a row, the pool shrinks by one. The pool size stays within the
+ * configured bounds.
+ * <p/>
+ * The number of scaling actions and the most recent decisions, with the load
+ * they were based on, are exposed over JMX.
+ */
+@ManagedResource
+public class BaristaAutoscaler {
+
+	private static final Log logger = LogFactory.getLog(BaristaAutoscaler.class);
+
+	private static final int HISTORY_SIZE = 16;
+
+	private final BaristaPool pool;
+
+	private final QueueChannelOperations hotDrinks;
+
+	private final QueueChannelOperations coldDrinks;
+
+	private volatile int minPoolSize = 1;
+
+	private volatile int maxPoolSize = 16;
+
+	private volatile long targetDrainTime = 10000;
+
+	private volatile int scaleDownSamples = 5;
+
+	private volatile double smoothing = 0.3;
+
+	private final Deque<String> history = new ArrayDeque<>(HISTORY_SIZE);
+
+	private long lastSampleTime;
+
+	private long lastPrepared = -1;
+
+	private int lowSamples;
+
+	private volatile int queuedDrinks;
+
+	private volatile double drainRate = Double.NaN;
+
+	private volatile long scaleUps;
+
+	private volatile long scaleDowns;
+
+	/**
+	 * @param pool the pool to resize
+	 * @param hotDrinks the queue of the hot drinks
+	 * @param coldDrinks the queue of the iced drinks
+	 */
+	public BaristaAutoscaler(BaristaPool pool, QueueChannelOperations hotDrinks, QueueChannelOperations coldDrinks) {
+		Assert.notNull(pool, "'pool' must not be null");
+		Assert.notNull(hotDrinks, "'hotDrinks' must not be null");
+		Assert.notNull(coldDrinks, "'coldDrinks' must not be null");
+		this.pool = pool;
+		this.hotDrinks = hotDrinks;
+		this.coldDrinks = coldDrinks;
+	}
+
+	/**
+	 * @param minPoolSize the fewest baristas to keep
+	 */
+	public void setMinPoolSize(int minPoolSize) {
+		Assert.isTrue(minPoolSize > 0, "'minPoolSize' must be positive");
+		this.minPoolSize = minPoolSize;
+	}
+
+	/**
+	 * @param maxPoolSize the most baristas to grow to
+	 */
+	public void setMaxPoolSize(int maxPoolSize) {
+		Assert.isTrue(maxPoolSize > 0, "'maxPoolSize' must be positive");
+		this.maxPoolSize = maxPoolSize;
+	}
+
+	/**
+	 * @param targetDrainTime the milliseconds the pool may take to prepare the
+	 * drinks waiting in the queues before it grows
+	 */
+	public void setTargetDrainTime(long targetDrainTime) {
+		Assert.isTrue(targetDrainTime > 0, "'targetDrainTime' must be positive");
+		this.targetDrainTime = targetDrainTime;
+	}
+
+	/**
+	 * @param scaleDownSamples the calls in a row with a drain time below half the
+	 * target before the pool shrinks by one
+	 */
+	public void setScaleDownSamples(int scaleDownSamples) {
+		Assert.isTrue(scaleDownSamples > 0, "'scaleDownSamples' must be positive");
+		this.scaleDownSamples = scaleDownSamples;
+	}
+
+	/**
+	 * @param smoothing the weight of the latest sample in the smoothed drain rate
+	 */
+	public void setSmoothing(double smoothing) {
+		Assert.isTrue(smoothing > 0 && smoothing <= 1, "'smoothing' must be in (0, 1]");
+		this.smoothing = smoothing;
+	}
+
+	/**
+	 * Sample the queues and the pool, and resize the pool if needed.
+	 */
+	public synchronized void adjust() {
+		long now = System.nanoTime();
+		long prepared = this.pool.getPreparedHotDrinks() + this.pool.getPreparedColdDrinks();
+		int queued = this.hotDrinks.getQueueSize() + this.coldDrinks.getQueueSize();
+		this.queuedDrinks = queued;
+		int size = this.pool.getPoolSize();
+		int min = this.minPoolSize;
+		int max = Math.max(min, this.maxPoolSize);
+		if (this.lastPrepared < 0) {
+			this.lastPrepared = prepared;
+			this.lastSampleTime = now;
+			if (size < min || size > max) {
+				resize(size, Math.min(max, Math.max(min, size)), "out of bounds");
+			}
+			return;
+		}
+		double rate = (prepared - this.lastPrepared) * 1e9 / Math.max(1, now - this.lastSampleTime);
+		this.lastPrepared = prepared;
+		this.lastSampleTime = now;
+		double smoothed = Double.isNaN(this.drainRate) ? rate
+				: this.smoothing * rate + (1 - this.smoothing) * this.drainRate;
+		this.drainRate = smoothed;
+
+		double drainTime;
+		if (queued == 0) {
+			drainTime = 0;
+		}
+		else if (smoothed > 0) {
+			drainTime = queued / smoothed * 1000;
+		}
+		else if (this.pool.getBusyHotBaristas() + this.pool.getBusyColdBaristas() > 0) {
+			// no drink finished yet, but the baristas are on it: no rate to judge by
+			this.lowSamples = 0;
+			return;
+		}
+		else {
+			drainTime = Double.POSITIVE_INFINITY;
+		}
+		String load = String.format("%d drinks queued, %.2f drinks/s", queued, smoothed);
+		if (drainTime > this.targetDrainTime) {
+			this.lowSamples = 0;
+			if (size < max) {
+				double needed = Double.isInfinite(drainTime) ? 2 * size : size * drainTime / this.targetDrainTime;
+				int grown = (int) Math.min(Math.min(max, 2L * size), Math.max(size + 1, (long) Math.ceil(needed)));
+				resize(size, grown, load);
+			}
+		}
+		else if (drainTime < this.targetDrainTime / 2.0 && size > min) {
+			if (++this.lowSamples >= this.scaleDownSamples) {
+				this.lowSamples = 0;
+				resize(size, size - 1, load);
+			}
+		}
+		else {
+			this.lowSamples = 0;
+		}
+	}
+
+	private void resize(int from, int to, String reason) {
+		this.pool.setPoolSize(to);
+		if (to > from) {
+			this.scaleUps++;
+		}
+		else {
+			this.scaleDowns++;
+		}
+		String decision = (to > from ? "up " : "down ") + from + " -> " + to + " baristas: " + reason;
+		if (logger.isInfoEnabled()) {
+			logger.info("Scaled " + decision);
+		}
+		synchronized (this.history) {
+			if (this.history.size() == HISTORY_SIZE) {
+				this.history.removeFirst();
+			}
+			this.history.addLast(System.currentTimeMillis() + " " + decision);
+		}
+	}
+
+	@ManagedAttribute
+	public int getPoolSize() {
+		return this.pool.getPoolSize();
+	}
+
+	@ManagedAttribute(description = "The drinks waiting in both queues at the last sample")
+	public int getQueuedDrinks() {
+		return this.queuedDrinks;
+	}
+
+	@ManagedAttribute(description = "The smoothed drinks per second prepared by the pool")
+	public double getDrainRate() {
+		return this.drainRate;
+	}
+
+	@ManagedAttribute
+	public long getScaleUps() {
+		return this.scaleUps;
+	}
+
+	@ManagedAttribute
+	public long getScaleDowns() {
+		return this.scaleDowns;
+	}
+
+	/**
+	 * @return the most recent scaling decisions, oldest first, each with the time
+	 * in milliseconds and the load it was based on
+	 */
+	@ManagedOperation
+	public String[] getScalingHistory() {
+		synchronized (this.history) {
+			return this.history.toArray(new String[0]);
+		}
+	}
+
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.pool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.handler.ServiceActivatingHandler;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A pool of baristas shared by the <em>hotDrinks</em> and <em>coldDrinks</em>
+ * queues, in place of a consumer per queue.
+ * <p/>
+ * Each barista has a home queue, half of them the hot and half the cold one. A
+ * barista whose home queue is empty steals a drink from the other queue, so a
+ * burst of hot drinks is prepared by the whole pool instead of by the hot
+ * baristas alone. Per-type limits cap the number of baristas preparing one type
+ * of drink at a time: with a hot drink limit below the pool size, some baristas
+ * are always free for the cold drinks, however deep the hot queue gets.
+ * <p/>
+ * The pool can be resized while it is running, e.g. by a {@link BaristaAutoscaler}.
+ * Baristas added are at home on the hot and cold queue in turn; baristas removed
+ * finish the drink they are preparing first.
+ * <p/>
+ * The drinks are taken with {@link QueueChannel#receive(long)}, so channel
+ * interceptors, such as admission control, see them leave their queue as usual.
+ * A barista claims its place under the limit just before it takes a drink,
+ * without waiting on the queue, and an idle barista sleeps between looks at the
+ * queues, backing off up to the idle wait. Only the baristas preparing a drink
+ * therefore count as busy and against the limits, and a drink taken off a queue
+ * is never put back.
+ */
+@ManagedResource
+public class BaristaPool implements SmartLifecycle, BeanFactoryAware, InitializingBean {
+
+	private static final Log logger = LogFactory.getLog(BaristaPool.class);
+
+	private static final long MIN_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	private final Object barista;
+
+	private final QueueChannel hotDrinks;
+
+	private final QueueChannel coldDrinks;
+
+	private final MessageChannel preparedDrinks;
+
+	private int poolSize = 4;
+
+	private int hotDrinkLimit = Integer.MAX_VALUE;
+
+	private int coldDrinkLimit = Integer.MAX_VALUE;
+
+	private long idleWait = 10;
+
+	private ThreadFactory threadFactory = new CustomizableThreadFactory("barista-");
+
+	private BeanFactory beanFactory;
+
+	private Lane hot;
+
+	private Lane cold;
+
+	private final List<Worker> workers = new ArrayList<>();
+
+	private volatile boolean running;
+
+	/**
+	 * @param barista the barista with 'prepareHotDrink' and 'prepareColdDrink' methods
+	 * @param hotDrinks the queue of the hot drinks
+	 * @param coldDrinks the queue of the iced drinks
+	 * @param preparedDrinks the channel for the prepared drinks
+	 */
+	public BaristaPool(Object barista, QueueChannel hotDrinks, QueueChannel coldDrinks,
+			MessageChannel preparedDrinks) {
+
+		Assert.notNull(barista, "'barista' must not be null");
+		Assert.notNull(hotDrinks, "'hotDrinks' must not be null");
+		Assert.notNull(coldDrinks, "'coldDrinks' must not be null");
+		Assert.notNull(preparedDrinks, "'preparedDrinks' must not be null");
+		this.barista = barista;
+		this.hotDrinks = hotDrinks;
+		this.coldDrinks = coldDrinks;
+		this.preparedDrinks = preparedDrinks;
+	}
+
+	/**
+	 * @param poolSize the number of baristas; a running pool adds or removes baristas
+	 */
+	@ManagedAttribute
+	public synchronized void setPoolSize(int poolSize) {
+		Assert.isTrue(poolSize > 0, "'poolSize' must be positive");
+		this.poolSize = poolSize;
+		if (this.running) {
+			resize();
+		}
+	}
+
+	/**
+	 * @param hotDrinkLimit the most baristas preparing hot drinks at a time
+	 */
+	public void setHotDrinkLimit(int hotDrinkLimit) {
+		Assert.isTrue(hotDrinkLimit > 0, "'hotDrinkLimit' must be positive");
+		this.hotDrinkLimit = hotDrinkLimit;
+	}
+
+	/**
+	 * @param coldDrinkLimit the most baristas preparing iced drinks at a time
+	 */
+	public void setColdDrinkLimit(int coldDrinkLimit) {
+		Assert.isTrue(coldDrinkLimit > 0, "'coldDrinkLimit' must be positive");
+		this.coldDrinkLimit = coldDrinkLimit;
+	}
+
+	/**
+	 * @param idleWait the most milliseconds an idle barista sleeps before it looks
+	 * at the queues again; it sleeps twice as long after each look that finds no
+	 * drink it may take
+	 */
+	public void setIdleWait(long idleWait) {
+		Assert.isTrue(idleWait > 0, "'idleWait' must be positive");
+		this.idleWait = idleWait;
+	}
+
+	/**
+	 * @param threadFactory the factory for the barista threads
+	 */
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		Assert.notNull(threadFactory, "'threadFactory' must not be null");
+		this.threadFactory = threadFactory;
+	}
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) {
+		this.beanFactory = beanFactory;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		this.hot = new Lane(this.hotDrinks, barista("prepareHotDrink"), this.hotDrinkLimit);
+		this.cold = new Lane(this.coldDrinks, barista("prepareColdDrink"), this.coldDrinkLimit);
+	}
+
+	private MessageHandler barista(String method) {
+		ServiceActivatingHandler handler = new ServiceActivatingHandler(this.barista, method);
+		handler.setOutputChannel(this.preparedDrinks);
+		handler.setBeanFactory(this.beanFactory);
+		handler.afterPropertiesSet();
+		return handler;
+	}
+
+	@Override
+	public synchronized void start() {
+		if (!this.running) {
+			this.running = true;
+			resize();
+		}
+	}
+
+	@Override
+	public synchronized void stop() {
+		if (this.running) {
+			this.running = false;
+			for (Worker worker : this.workers) {
+				worker.thread.interrupt();
+			}
+			this.workers.clear();
+		}
+	}
+
+	private void resize() {
+		while (this.workers.size() < this.poolSize) {
+			Worker worker = this.workers.size() % 2 == 0
+					? new Worker(this.hot, this.cold)
+					: new Worker(this.cold, this.hot);
+			worker.thread = this.threadFactory.newThread(worker);
+			this.workers.add(worker);
+			worker.thread.start();
+		}
+		while (this.workers.size() > this.poolSize) {
+			this.workers.remove(this.workers.size() - 1).retired = true;
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	@ManagedAttribute
+	public synchronized int getPoolSize() {
+		return this.poolSize;
+	}
+
+	@ManagedAttribute(description = "The baristas preparing a hot drink right now")
+	public int getBusyHotBaristas() {
+		return this.hot.busy.get();
+	}
+
+	@ManagedAttribute(description = "The baristas preparing an iced drink right now")
+	public int getBusyColdBaristas() {
+		return this.cold.busy.get();
+	}
+
+	@ManagedAttribute
+	public long getPreparedHotDrinks() {
+		return this.hot.prepared.get();
+	}
+
+	@ManagedAttribute
+	public long getPreparedColdDrinks() {
+		return this.cold.prepared.get();
+	}
+
+	@ManagedAttribute(description = "The hot drinks prepared by the baristas of the cold queue")
+	public long getStolenHotDrinks() {
+		return this.hot.stolen.get();
+	}
+
+	@ManagedAttribute(description = "The iced drinks prepared by the baristas of the hot queue")
+	public long getStolenColdDrinks() {
+		return this.cold.stolen.get();
+	}
+
+
+	/**
+	 * A queue with its barista, the limit of baristas working on it and its counters.
+	 */
+	private static final class Lane {
+
+		private final QueueChannel queue;
+
+		private final MessageHandler barista;
+
+		private final int limit;
+
+		private final AtomicInteger busy = new AtomicInteger();
+
+		private final AtomicLong prepared = new AtomicLong();
+
+		private final AtomicLong stolen = new AtomicLong();
+
+		Lane(QueueChannel queue, MessageHandler barista, int limit) {
+			this.queue = queue;
+			this.barista = barista;
+			this.limit = limit;
+		}
+
+		/**
+		 * Take a drink, without waiting, if there is one and the limit allows
+		 * another barista on it. The place under the limit is claimed before the
+		 * drink is taken and given up again if there was none, so a drink once
+		 * received is always prepared. The caller must {@link #release()} the lane
+		 * if a drink was taken.
+		 */
+		Message<?> take() {
+			int busy;
+			do {
+				busy = this.busy.get();
+				if (busy >= this.limit) {
+					return null;
+				}
+			}
+			while (!this.busy.compareAndSet(busy, busy + 1));
+			Message<?> message = this.queue.receive(0);
+			if (message == null) {
+				this.busy.decrementAndGet();
+			}
+			return message;
+		}
+
+		void release() {
+			this.busy.decrementAndGet();
+		}
+
+	}
+
+
+	/**
+	 * A barista that prefers its home queue and steals from the other one.
+	 */
+	private final class Worker implements Runnable {
+
+		private final Lane home;
+
+		private final Lane other;
+
+		private volatile Thread thread;
+
+		private volatile boolean retired;
+
+		Worker(Lane home, Lane other) {
+			this.home = home;
+			this.other = other;
+		}
+
+		@Override
+		public void run() {
+			long idleNanos = MIN_IDLE_NANOS;
+			while (BaristaPool.this.running && !this.retired && !Thread.currentThread().isInterrupted()) {
+				Lane lane = this.home;
+				Message<?> message = lane.take();
+				if (message == null && this.other.queue.getQueueSize() > 0) {
+					lane = this.other;
+					message = lane.take();
+				}
+				if (message != null) {
+					prepare(lane, message);
+					idleNanos = MIN_IDLE_NANOS;
+				}
+				else {
+					LockSupport.parkNanos(idleNanos);
+					idleNanos = Math.min(2 * idleNanos, TimeUnit.MILLISECONDS.toNanos(BaristaPool.this.idleWait));
+				}
+			}
+		}
+
+		private void prepare(Lane lane, Message<?> message) {
+			try {
+				lane.barista.handleMessage(message);
+				lane.prepared.incrementAndGet();
+				if (lane != this.home) {
+					lane.stolen.incrementAndGet();
+				}
+			}
+			catch (RuntimeException e) {
+				logger.error("Failed to prepare " + message.getPayload(), e);
+			}
+			finally {
+				lane.release();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.reactive;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.OrderItem;
+import org.springframework.util.Assert;
+
+/**
+ * A barista that does not block a thread while a drink is being prepared: the
+ * preparation time is a delay scheduled on a {@link Scheduler}, and the drink
+ * is emitted by the returned {@link Mono} when it is over. Any number of drinks
+ * can be in preparation at once; {@link ReactiveBaristas} decides how many.
+ */
+public class ReactiveBarista {
+
+	private static final Log logger = LogFactory.getLog(ReactiveBarista.class);
+
+	private long hotDrinkDelay = 5000;
+
+	private long coldDrinkDelay = 1000;
+
+	private Scheduler scheduler = Schedulers.parallel();
+
+	private final AtomicInteger hotDrinkCounter = new AtomicInteger();
+
+	private final AtomicInteger coldDrinkCounter = new AtomicInteger();
+
+	public void setHotDrinkDelay(long hotDrinkDelay) {
+		this.hotDrinkDelay = hotDrinkDelay;
+	}
+
+	public void setColdDrinkDelay(long coldDrinkDelay) {
+		this.coldDrinkDelay = coldDrinkDelay;
+	}
+
+	/**
+	 * @param scheduler the scheduler of the preparation delays, the parallel one by default
+	 */
+	public void setScheduler(Scheduler scheduler) {
+		Assert.notNull(scheduler, "'scheduler' must not be null");
+		this.scheduler = scheduler;
+	}
+
+	public Mono<Drink> prepareHotDrink(OrderItem orderItem) {
+		return prepare(orderItem, this.hotDrinkDelay, "hot", this.hotDrinkCounter);
+	}
+
+	public Mono<Drink> prepareColdDrink(OrderItem orderItem) {
+		return prepare(orderItem, this.coldDrinkDelay, "cold", this.coldDrinkCounter);
+	}
+
+	private Mono<Drink> prepare(OrderItem orderItem, long delay, String type, AtomicInteger counter) {
+		return Mono.delay(Duration.ofMillis(delay), this.scheduler)
+				.map(tick -> {
+					logger.info(Thread.currentThread().getName()
+							+ " prepared " + type + " drink #" + counter.incrementAndGet() + " for order #"
+							+ orderItem.getOrderNumber() + ": " + orderItem);
+					return new Drink(orderItem.getOrderNumber(), orderItem.getDrinkType(), orderItem.isIced(),
+							orderItem.getShots());
+				});
+	}
+
+}
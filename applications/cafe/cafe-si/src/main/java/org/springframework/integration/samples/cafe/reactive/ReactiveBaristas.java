@@ -0,0 +1,226 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.reactive;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.reactivestreams.Publisher;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import org.springframework.context.SmartLifecycle;
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.OrderItem;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.util.Assert;
+
+/**
+ * Subscribes a {@link ReactiveBarista} to the <em>hotDrinks</em> and
+ * <em>coldDrinks</em> publishers, typically {@code FluxMessageChannel}s, with a
+ * bounded demand, in place of a polling consumer per queue.
+ * <p/>
+ * At most the configured concurrency of drinks of each type is in preparation
+ * at a time; another drink is requested only when one has been prepared and
+ * taken by the <em>preparedDrinks</em> channel. The prepared drinks of each type
+ * are sent on by a single thread of their own, which waits while the channel
+ * does not accept them, e.g. because the Waiter is still busy. So no drinks pile
+ * up between the stages: when the Waiter or the baristas fall behind, the
+ * demand stops, the senders of the channels upstream wait in turn, and the
+ * Cafe gateway blocks the caller. No thread is blocked while a drink is being
+ * prepared.
+ * <p/>
+ * A drink that fails to be prepared or sent on is logged and dropped, like with
+ * a failing poller, so that the subscription goes on for the other drinks.
+ */
+@ManagedResource
+public class ReactiveBaristas implements SmartLifecycle {
+
+	private static final Log logger = LogFactory.getLog(ReactiveBaristas.class);
+
+	private final MessageChannel preparedDrinks;
+
+	private final Lane hot;
+
+	private final Lane cold;
+
+	private volatile boolean running;
+
+	/**
+	 * @param barista the barista preparing the drinks
+	 * @param hotDrinks the publisher of the hot drinks
+	 * @param coldDrinks the publisher of the iced drinks
+	 * @param preparedDrinks the channel for the prepared drinks
+	 */
+	public ReactiveBaristas(ReactiveBarista barista, Publisher<Message<?>> hotDrinks,
+			Publisher<Message<?>> coldDrinks, MessageChannel preparedDrinks) {
+
+		Assert.notNull(barista, "'barista' must not be null");
+		Assert.notNull(hotDrinks, "'hotDrinks' must not be null");
+		Assert.notNull(coldDrinks, "'coldDrinks' must not be null");
+		Assert.notNull(preparedDrinks, "'preparedDrinks' must not be null");
+		this.preparedDrinks = preparedDrinks;
+		this.hot = new Lane("hot", hotDrinks, barista::prepareHotDrink);
+		this.cold = new Lane("cold", coldDrinks, barista::prepareColdDrink);
+	}
+
+	/**
+	 * @param hotDrinkConcurrency the most hot drinks in preparation at a time
+	 */
+	public void setHotDrinkConcurrency(int hotDrinkConcurrency) {
+		Assert.isTrue(hotDrinkConcurrency > 0, "'hotDrinkConcurrency' must be positive");
+		this.hot.concurrency = hotDrinkConcurrency;
+	}
+
+	/**
+	 * @param coldDrinkConcurrency the most iced drinks in preparation at a time
+	 */
+	public void setColdDrinkConcurrency(int coldDrinkConcurrency) {
+		Assert.isTrue(coldDrinkConcurrency > 0, "'coldDrinkConcurrency' must be positive");
+		this.cold.concurrency = coldDrinkConcurrency;
+	}
+
+	@Override
+	public synchronized void start() {
+		if (!this.running) {
+			this.running = true;
+			this.hot.subscribe();
+			this.cold.subscribe();
+		}
+	}
+
+	@Override
+	public synchronized void stop() {
+		if (this.running) {
+			this.running = false;
+			this.hot.dispose();
+			this.cold.dispose();
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	@ManagedAttribute(description = "The hot drinks in preparation right now")
+	public int getHotDrinksInPreparation() {
+		return this.hot.inPreparation.get();
+	}
+
+	@ManagedAttribute(description = "The iced drinks in preparation right now")
+	public int getColdDrinksInPreparation() {
+		return this.cold.inPreparation.get();
+	}
+
+	@ManagedAttribute
+	public long getPreparedHotDrinks() {
+		return this.hot.prepared.get();
+	}
+
+	@ManagedAttribute
+	public long getPreparedColdDrinks() {
+		return this.cold.prepared.get();
+	}
+
+	@ManagedAttribute(description = "The drinks dropped because their preparation or delivery failed")
+	public long getFailedDrinks() {
+		return this.hot.failed.get() + this.cold.failed.get();
+	}
+
+
+	/**
+	 * The subscription to the drinks of one type, with its counters.
+	 */
+	private final class Lane {
+
+		private final String type;
+
+		private final Publisher<Message<?>> drinks;
+
+		private final Function<OrderItem, Mono<Drink>> barista;
+
+		private final AtomicInteger inPreparation = new AtomicInteger();
+
+		private final AtomicLong prepared = new AtomicLong();
+
+		private final AtomicLong failed = new AtomicLong();
+
+		private int concurrency = 16;
+
+		private Scheduler delivery;
+
+		private Disposable subscription;
+
+		Lane(String type, Publisher<Message<?>> drinks, Function<OrderItem, Mono<Drink>> barista) {
+			this.type = type;
+			this.drinks = drinks;
+			this.barista = barista;
+		}
+
+		void subscribe() {
+			this.delivery = Schedulers.newSingle(this.type + "-drink-delivery");
+			this.subscription = Flux.from(this.drinks)
+					.flatMap(this::prepare, this.concurrency, 1)
+					.publishOn(this.delivery, 1)
+					.subscribe(this::deliver,
+							ex -> logger.error("The " + this.type + " drink subscription failed", ex));
+		}
+
+		private Mono<Message<Drink>> prepare(Message<?> message) {
+			this.inPreparation.incrementAndGet();
+			return Mono.defer(() -> this.barista.apply((OrderItem) message.getPayload()))
+					.map(drink -> MessageBuilder.withPayload(drink).copyHeaders(message.getHeaders()).build())
+					.onErrorResume(ex -> {
+						this.failed.incrementAndGet();
+						logger.error("Failed to prepare " + message.getPayload(), ex);
+						return Mono.empty();
+					})
+					// before the completion asks for the next drink
+					.doOnTerminate(this.inPreparation::decrementAndGet)
+					.doOnCancel(this.inPreparation::decrementAndGet);
+		}
+
+		private void deliver(Message<Drink> drink) {
+			try {
+				ReactiveBaristas.this.preparedDrinks.send(drink);
+				this.prepared.incrementAndGet();
+			}
+			catch (RuntimeException ex) {
+				this.failed.incrementAndGet();
+				logger.error("Failed to deliver " + drink.getPayload(), ex);
+			}
+		}
+
+		void dispose() {
+			this.subscription.dispose();
+			this.delivery.dispose();
+		}
+
+	}
+
+}
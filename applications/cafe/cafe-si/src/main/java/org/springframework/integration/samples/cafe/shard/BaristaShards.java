@@ -0,0 +1,485 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.shard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.integration.aggregator.AggregatingMessageHandler;
+import org.springframework.integration.aggregator.MethodInvokingMessageGroupProcessor;
+import org.springframework.integration.channel.QueueChannelOperations;
+import org.springframework.integration.core.MessageSelector;
+import org.springframework.integration.handler.ServiceActivatingHandler;
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.OrderItem;
+import org.springframework.integration.samples.cafe.channel.RingBufferQueue;
+import org.springframework.integration.samples.cafe.channel.WaitStrategy;
+import org.springframework.integration.samples.cafe.store.OrderNumberMessageGroupStore;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Baristas and Waiters partitioned into shards by the order number, so that all
+ * drinks of an order are prepared and aggregated by the same thread.
+ * <p/>
+ * This is the channel the order items are sent to, in place of the
+ * <em>hotDrinks</em> and <em>coldDrinks</em> queues. Each shard has a queue of
+ * its own, drained by a dedicated thread that has the Barista prepare each drink
+ * and passes it to the shard's own aggregating Waiter and message group store.
+ * Shards share no state, so neither the queues nor the aggregation are contended
+ * by the other shards' threads and the throughput grows with the number of
+ * shards, up to the number of cores.
+ * <p/>
+ * A full shard queue blocks the sender, like a full queue channel. The queue
+ * operations report all shards together. {@link #getHotDrinks()} and
+ * {@link #getColdDrinks()} are the same shards seen as two drink queues: their
+ * queue operations only count the drinks of their type, and each drink taken
+ * off a shard is reported to the {@link #setInterceptors interceptors} as
+ * received from the queue of its type, so that e.g. admission control can
+ * measure how fast the shards prepare each type of drink.
+ * <p/>
+ * With a {@link #setGroupTimeout(long) group timeout}, the orders whose drinks
+ * are still incomplete once it has passed are delivered as they are, like with
+ * the shared Waiter, when {@link #expireTimedOutGroups()} runs next.
+ */
+@ManagedResource
+public class BaristaShards implements MessageChannel, QueueChannelOperations, SmartLifecycle,
+		BeanFactoryAware, InitializingBean {
+
+	private static final Log logger = LogFactory.getLog(BaristaShards.class);
+
+	private final Object barista;
+
+	private final Object waiter;
+
+	private final MessageChannel deliveries;
+
+	private int shardCount = Runtime.getRuntime().availableProcessors();
+
+	private int capacity = 16;
+
+	private WaitStrategy waitStrategy = WaitStrategy.PARK;
+
+	private long groupTimeout;
+
+	private ThreadFactory threadFactory = new CustomizableThreadFactory("barista-shard-");
+
+	private BeanFactory beanFactory;
+
+	private volatile List<ChannelInterceptor> interceptors = Collections.emptyList();
+
+	private final DrinkQueue hotDrinks = new DrinkQueue(false);
+
+	private final DrinkQueue coldDrinks = new DrinkQueue(true);
+
+	private Shard[] shards;
+
+	private volatile boolean running;
+
+	/**
+	 * @param barista the barista with 'prepareHotDrink' and 'prepareColdDrink' methods
+	 * @param waiter the waiter with a 'prepareDelivery' method for the drinks of an order
+	 * @param deliveries the channel for the deliveries
+	 */
+	public BaristaShards(Object barista, Object waiter, MessageChannel deliveries) {
+		Assert.notNull(barista, "'barista' must not be null");
+		Assert.notNull(waiter, "'waiter' must not be null");
+		Assert.notNull(deliveries, "'deliveries' must not be null");
+		this.barista = barista;
+		this.waiter = waiter;
+		this.deliveries = deliveries;
+	}
+
+	/**
+	 * @param shardCount the number of shards, the number of processors by default
+	 */
+	public void setShardCount(int shardCount) {
+		Assert.isTrue(shardCount > 0, "'shardCount' must be positive");
+		this.shardCount = shardCount;
+	}
+
+	/**
+	 * @param capacity the capacity of each shard's queue
+	 */
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @param waitStrategy how the shard threads wait for drinks and senders for room
+	 */
+	public void setWaitStrategy(WaitStrategy waitStrategy) {
+		Assert.notNull(waitStrategy, "'waitStrategy' must not be null");
+		this.waitStrategy = waitStrategy;
+	}
+
+	/**
+	 * @param groupTimeout the milliseconds after which a Waiter delivers the drinks
+	 * of an incomplete order as they are, scheduled in the store of its shard
+	 */
+	public void setGroupTimeout(long groupTimeout) {
+		Assert.isTrue(groupTimeout > 0, "'groupTimeout' must be positive");
+		this.groupTimeout = groupTimeout;
+	}
+
+	/**
+	 * @param threadFactory the factory for the shard threads
+	 */
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		Assert.notNull(threadFactory, "'threadFactory' must not be null");
+		this.threadFactory = threadFactory;
+	}
+
+	/**
+	 * @param interceptors the interceptors whose postReceive is called for each
+	 * drink taken off a shard, with the drink queue of its type as the channel;
+	 * the sending side is not intercepted
+	 */
+	public void setInterceptors(List<ChannelInterceptor> interceptors) {
+		Assert.notNull(interceptors, "'interceptors' must not be null");
+		this.interceptors = new ArrayList<>(interceptors);
+	}
+
+	/**
+	 * @return the shards as the queue of the hot drinks
+	 */
+	public DrinkQueue getHotDrinks() {
+		return this.hotDrinks;
+	}
+
+	/**
+	 * @return the shards as the queue of the cold drinks
+	 */
+	public DrinkQueue getColdDrinks() {
+		return this.coldDrinks;
+	}
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) {
+		this.beanFactory = beanFactory;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		this.shards = new Shard[this.shardCount];
+		for (int i = 0; i < this.shards.length; i++) {
+			this.shards[i] = new Shard();
+		}
+	}
+
+	@Override
+	public boolean send(Message<?> message, long timeout) {
+		Assert.isInstanceOf(OrderItem.class, message.getPayload(), "Only order items can be sent to the baristas");
+		OrderItem item = (OrderItem) message.getPayload();
+		Shard shard = this.shards[shardOf(item.getOrderNumber(), this.shards.length)];
+		// counted before it is queued, so that the shard thread never takes a drink not counted yet
+		DrinkQueue drinks = drinkQueue(item);
+		drinks.queued.increment();
+		boolean sent = false;
+		try {
+			if (timeout < 0) {
+				shard.queue.put(message);
+				sent = true;
+			}
+			else {
+				sent = shard.queue.offer(message, timeout, TimeUnit.MILLISECONDS);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			if (!sent) {
+				drinks.queued.decrement();
+			}
+		}
+		return sent;
+	}
+
+	private DrinkQueue drinkQueue(OrderItem item) {
+		return item.isIced() ? this.coldDrinks : this.hotDrinks;
+	}
+
+	@Override
+	public void start() {
+		if (!this.running) {
+			this.running = true;
+			for (Shard shard : this.shards) {
+				shard.thread = this.threadFactory.newThread(shard);
+				shard.thread.start();
+			}
+		}
+	}
+
+	@Override
+	public void stop() {
+		if (this.running) {
+			this.running = false;
+			for (Shard shard : this.shards) {
+				shard.thread.interrupt();
+			}
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	@Override
+	@ManagedAttribute(description = "The drinks waiting in all shards")
+	public int getQueueSize() {
+		int size = 0;
+		for (Shard shard : this.shards) {
+			size += shard.queue.size();
+		}
+		return size;
+	}
+
+	@Override
+	public int getRemainingCapacity() {
+		int remaining = 0;
+		for (Shard shard : this.shards) {
+			remaining += shard.queue.remainingCapacity();
+		}
+		return remaining;
+	}
+
+	@Override
+	public List<Message<?>> clear() {
+		List<Message<?>> cleared = new ArrayList<>();
+		for (Shard shard : this.shards) {
+			shard.queue.drainTo(cleared);
+		}
+		for (Message<?> message : cleared) {
+			drinkQueue((OrderItem) message.getPayload()).queued.decrement();
+		}
+		return cleared;
+	}
+
+	/**
+	 * Not supported, since drinks cannot be removed from the middle of a shard queue.
+	 */
+	@Override
+	public List<Message<?>> purge(MessageSelector selector) {
+		throw new UnsupportedOperationException("Drinks cannot be purged from the barista shards");
+	}
+
+	/**
+	 * Deliver the orders of all shards that have timed out since the previous call,
+	 * if a {@link #setGroupTimeout(long) group timeout} is set; meant to be
+	 * scheduled at a fixed rate.
+	 */
+	public void expireTimedOutGroups() {
+		for (Shard shard : this.shards) {
+			shard.drinkGroups.expireTimedOutGroups();
+		}
+	}
+
+	@ManagedAttribute(description = "The orders delivered incomplete after the group timeout")
+	public long getExpiredGroups() {
+		long expired = 0;
+		for (Shard shard : this.shards) {
+			expired += shard.drinkGroups.getExpiredGroups();
+		}
+		return expired;
+	}
+
+	@ManagedAttribute
+	public int getShardCount() {
+		return this.shards.length;
+	}
+
+	@ManagedAttribute(description = "The drinks prepared by each shard")
+	public long[] getPreparedDrinks() {
+		long[] prepared = new long[this.shards.length];
+		for (int i = 0; i < prepared.length; i++) {
+			prepared[i] = this.shards[i].prepared;
+		}
+		return prepared;
+	}
+
+	/**
+	 * The shard of an order: a mix of the bits of the order number, so that
+	 * consecutive and patterned numbers spread evenly.
+	 */
+	static int shardOf(int orderNumber, int shardCount) {
+		int hash = orderNumber * 0x9E3779B9;
+		return (int) (((hash ^ (hash >>> 16)) & 0xFFFFFFFFL) % shardCount);
+	}
+
+
+	/**
+	 * A queue, a thread, a barista and a waiter with its own store.
+	 */
+	private final class Shard implements Runnable {
+
+		private final RingBufferQueue<Message<?>> queue =
+				new RingBufferQueue<>(BaristaShards.this.capacity, BaristaShards.this.waitStrategy);
+
+		private final OrderNumberMessageGroupStore drinkGroups = new OrderNumberMessageGroupStore(1);
+
+		private final MessageHandler hotDrinkBarista;
+
+		private final MessageHandler coldDrinkBarista;
+
+		private volatile Thread thread;
+
+		private volatile long prepared;
+
+		Shard() {
+			if (BaristaShards.this.groupTimeout > 0) {
+				this.drinkGroups.setGroupTimeout(BaristaShards.this.groupTimeout);
+			}
+			AggregatingMessageHandler waiter = new AggregatingMessageHandler(
+					new MethodInvokingMessageGroupProcessor(BaristaShards.this.waiter, "prepareDelivery"),
+					this.drinkGroups);
+			waiter.setCorrelationStrategy(message -> ((Drink) message.getPayload()).getOrderNumber());
+			waiter.setOutputChannel(BaristaShards.this.deliveries);
+			waiter.setExpireGroupsUponCompletion(true);
+			waiter.setSendPartialResultOnExpiry(true);
+			waiter.setBeanFactory(BaristaShards.this.beanFactory);
+			waiter.afterPropertiesSet();
+			MessageChannel preparedDrinks = (message, timeout) -> {
+				this.prepared++;
+				waiter.handleMessage(message);
+				return true;
+			};
+			this.hotDrinkBarista = barista("prepareHotDrink", preparedDrinks);
+			this.coldDrinkBarista = barista("prepareColdDrink", preparedDrinks);
+		}
+
+		private MessageHandler barista(String method, MessageChannel preparedDrinks) {
+			ServiceActivatingHandler barista = new ServiceActivatingHandler(BaristaShards.this.barista, method);
+			barista.setOutputChannel(preparedDrinks);
+			barista.setBeanFactory(BaristaShards.this.beanFactory);
+			barista.afterPropertiesSet();
+			return barista;
+		}
+
+		@Override
+		public void run() {
+			while (BaristaShards.this.running) {
+				Message<?> message;
+				try {
+					message = this.queue.poll(100, TimeUnit.MILLISECONDS);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				if (message != null) {
+					boolean iced = ((OrderItem) message.getPayload()).isIced();
+					DrinkQueue drinks = iced ? BaristaShards.this.coldDrinks : BaristaShards.this.hotDrinks;
+					drinks.queued.decrement();
+					try {
+						message = drinks.received(message);
+						if (message != null) {
+							(iced ? this.coldDrinkBarista : this.hotDrinkBarista).handleMessage(message);
+						}
+					}
+					catch (RuntimeException e) {
+						logger.error("Failed to prepare " + message.getPayload(), e);
+					}
+				}
+			}
+		}
+
+	}
+
+
+	/**
+	 * The drinks of one type on all shards. Sending to it sends to the shards;
+	 * its queue operations only count the drinks of its type.
+	 */
+	public final class DrinkQueue implements MessageChannel, QueueChannelOperations {
+
+		private final boolean iced;
+
+		private final LongAdder queued = new LongAdder();
+
+		DrinkQueue(boolean iced) {
+			this.iced = iced;
+		}
+
+		@Override
+		public boolean send(Message<?> message, long timeout) {
+			Assert.isTrue(message.getPayload() instanceof OrderItem
+					&& ((OrderItem) message.getPayload()).isIced() == this.iced,
+					() -> "Only " + (this.iced ? "cold" : "hot") + " drinks can be sent to this queue");
+			return BaristaShards.this.send(message, timeout);
+		}
+
+		@Override
+		public int getQueueSize() {
+			return (int) Math.max(0, this.queued.sum());
+		}
+
+		/**
+		 * The room left on all shards, which the drinks of both types share.
+		 */
+		@Override
+		public int getRemainingCapacity() {
+			return BaristaShards.this.getRemainingCapacity();
+		}
+
+		/**
+		 * Not supported, since the shard queues hold the drinks of both types.
+		 */
+		@Override
+		public List<Message<?>> clear() {
+			throw new UnsupportedOperationException("Drinks of one type cannot be cleared from the barista shards");
+		}
+
+		/**
+		 * Not supported, since drinks cannot be removed from the middle of a shard queue.
+		 */
+		@Override
+		public List<Message<?>> purge(MessageSelector selector) {
+			throw new UnsupportedOperationException("Drinks cannot be purged from the barista shards");
+		}
+
+		Message<?> received(Message<?> message) {
+			for (ChannelInterceptor interceptor : BaristaShards.this.interceptors) {
+				message = interceptor.postReceive(message, this);
+				if (message == null) {
+					return null;
+				}
+			}
+			return message;
+		}
+
+	}
+
+}
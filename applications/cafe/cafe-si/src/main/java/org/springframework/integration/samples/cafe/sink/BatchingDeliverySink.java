@@ -0,0 +1,425 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.sink;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.context.SmartLifecycle;
+import org.springframework.integration.samples.cafe.Delivery;
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.channel.RingBufferQueue;
+import org.springframework.integration.samples.cafe.channel.WaitStrategy;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Writes the deliveries to stdout, a file or a socket from a writer thread of
+ * its own, in place of a stdout channel adapter, which formats each delivery
+ * into a new <code>String</code> and writes it on the thread of the Waiter.
+ * <p/>
+ * Handling a message only queues its payload in a {@link RingBufferQueue}. The
+ * writer thread takes all the deliveries queued, up to a maximum batch size,
+ * encodes them as ASCII straight into a direct buffer that is reused for every
+ * batch, in the same format as <code>Delivery.toString()</code>, and writes the
+ * buffer with a single call per batch. So the more deliveries arrive, the larger
+ * the batches, and the Waiter only waits for the output when the queue is full.
+ * Payloads other than deliveries are written as their <code>byte[]</code>, or
+ * else their <code>String</code> value in UTF-8.
+ * <p/>
+ * A failed write is logged, and the deliveries of its batch are counted as
+ * failed, as they would be lost with any other sink. The sink is started before
+ * and stopped after the endpoints, so that the deliveries queued when the
+ * context is closed are still written; a file or socket is then closed.
+ */
+@ManagedResource
+public class BatchingDeliverySink implements MessageHandler, SmartLifecycle {
+
+	private static final Log logger = LogFactory.getLog(BatchingDeliverySink.class);
+
+	private static final byte[] SEPARATOR = ascii("-----------------------\n");
+
+	private static final byte[] ORDER = ascii("Order #");
+
+	private static final byte[] HOT = ascii("Hot ");
+
+	private static final byte[] ICED = ascii("Iced ");
+
+	private static final byte[] SHOTS = ascii(" shots.\n");
+
+	private static final byte[] NULL = ascii("null");
+
+	private static final byte[][] DRINK_TYPES = new byte[DrinkType.values().length][];
+
+	static {
+		for (DrinkType type : DrinkType.values()) {
+			DRINK_TYPES[type.ordinal()] = ascii(type.toString() + ", ");
+		}
+	}
+
+	private final Callable<WritableByteChannel> target;
+
+	private final boolean closeTarget;
+
+	private int capacity = 1024;
+
+	private int bufferSize = 64 * 1024;
+
+	private int maxBatchSize = 256;
+
+	private ThreadFactory threadFactory = new CustomizableThreadFactory("delivery-writer-");
+
+	private RingBufferQueue<Object> queue;
+
+	private ByteBuffer buffer;
+
+	private WritableByteChannel channel;
+
+	private volatile Thread writer;
+
+	private volatile boolean running;
+
+	private volatile long writtenDeliveries;
+
+	private volatile long failedDeliveries;
+
+	private volatile long batches;
+
+	private volatile long bytesWritten;
+
+	/**
+	 * Create a sink writing to stdout.
+	 */
+	public BatchingDeliverySink() {
+		this(() -> Channels.newChannel(System.out), false);
+	}
+
+	/**
+	 * @param file the file to append the deliveries to
+	 */
+	public BatchingDeliverySink(File file) {
+		this(() -> FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND), true);
+		Assert.notNull(file, "'file' must not be null");
+	}
+
+	/**
+	 * @param host the host to connect to
+	 * @param port the port to connect to
+	 */
+	public BatchingDeliverySink(String host, int port) {
+		this(() -> SocketChannel.open(new InetSocketAddress(host, port)), true);
+		Assert.hasText(host, "'host' must not be empty");
+	}
+
+	private BatchingDeliverySink(Callable<WritableByteChannel> target, boolean closeTarget) {
+		this.target = target;
+		this.closeTarget = closeTarget;
+	}
+
+	/**
+	 * @param capacity the deliveries queued for the writer at most, before the
+	 * Waiter waits; rounded up to a power of two
+	 */
+	public void setCapacity(int capacity) {
+		Assert.isTrue(capacity > 0, "'capacity' must be positive");
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @param bufferSize the size of the buffer, flushed early when a batch does not fit
+	 */
+	public void setBufferSize(int bufferSize) {
+		Assert.isTrue(bufferSize >= 64, "'bufferSize' must be at least 64");
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * @param maxBatchSize the deliveries written with one call at most
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		Assert.isTrue(maxBatchSize > 0, "'maxBatchSize' must be positive");
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * @param threadFactory the factory for the writer thread
+	 */
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		Assert.notNull(threadFactory, "'threadFactory' must not be null");
+		this.threadFactory = threadFactory;
+	}
+
+	@Override
+	public void handleMessage(Message<?> message) {
+		if (!this.running) {
+			throw new MessageDeliveryException(message, "The delivery sink is not running");
+		}
+		try {
+			this.queue.put(message.getPayload());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MessageDeliveryException(message, "Interrupted while queuing the delivery", e);
+		}
+	}
+
+	@Override
+	public synchronized void start() {
+		if (!this.running) {
+			try {
+				this.channel = this.target.call();
+			}
+			catch (Exception e) {
+				throw new IllegalStateException("Failed to open the delivery sink", e);
+			}
+			this.queue = new RingBufferQueue<>(this.capacity, WaitStrategy.PARK);
+			this.buffer = ByteBuffer.allocateDirect(this.bufferSize);
+			this.running = true;
+			this.writer = this.threadFactory.newThread(this::write);
+			this.writer.start();
+		}
+	}
+
+	/**
+	 * Stop once the deliveries queued so far have been written.
+	 */
+	@Override
+	public synchronized void stop() {
+		if (this.running) {
+			this.running = false;
+			try {
+				this.writer.join();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (this.closeTarget) {
+				try {
+					this.channel.close();
+				}
+				catch (IOException e) {
+					logger.warn("Failed to close the delivery sink", e);
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	/**
+	 * @return a phase well below the one of the endpoints
+	 */
+	@Override
+	public int getPhase() {
+		return Integer.MIN_VALUE / 2;
+	}
+
+	@ManagedAttribute(description = "The deliveries waiting for the writer")
+	public int getQueuedDeliveries() {
+		RingBufferQueue<Object> queue = this.queue;
+		return queue != null ? queue.size() : 0;
+	}
+
+	@ManagedAttribute
+	public long getWrittenDeliveries() {
+		return this.writtenDeliveries;
+	}
+
+	@ManagedAttribute(description = "The deliveries lost with a failed write")
+	public long getFailedDeliveries() {
+		return this.failedDeliveries;
+	}
+
+	@ManagedAttribute(description = "The writes of a batch of deliveries")
+	public long getBatches() {
+		return this.batches;
+	}
+
+	@ManagedAttribute
+	public long getBytesWritten() {
+		return this.bytesWritten;
+	}
+
+	@ManagedAttribute(description = "The deliveries written per batch on average")
+	public double getMeanBatchSize() {
+		long batches = this.batches;
+		return batches == 0 ? 0 : (double) (this.writtenDeliveries + this.failedDeliveries) / batches;
+	}
+
+	private void write() {
+		while (this.running || !this.queue.isEmpty()) {
+			Object payload;
+			try {
+				payload = this.queue.poll(100, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e) {
+				// the queued deliveries are still written
+				continue;
+			}
+			if (payload != null) {
+				int batch = 0;
+				boolean written = true;
+				do {
+					written &= encode(payload);
+					batch++;
+				}
+				while (batch < this.maxBatchSize && (payload = this.queue.poll()) != null);
+				written &= flush();
+				this.batches++;
+				if (written) {
+					this.writtenDeliveries += batch;
+				}
+				else {
+					this.failedDeliveries += batch;
+				}
+			}
+		}
+	}
+
+	private boolean encode(Object payload) {
+		try {
+			if (payload instanceof Delivery) {
+				encode((Delivery) payload);
+			}
+			else if (payload instanceof byte[]) {
+				put((byte[]) payload);
+			}
+			else {
+				put(String.valueOf(payload).getBytes(StandardCharsets.UTF_8));
+			}
+			return true;
+		}
+		catch (IOException e) {
+			logger.error("Failed to write to the delivery sink", e);
+			this.buffer.clear();
+			return false;
+		}
+	}
+
+	private void encode(Delivery delivery) throws IOException {
+		put(SEPARATOR);
+		put(ORDER);
+		putInt(delivery.getOrderNumber());
+		put((byte) '\n');
+		List<Drink> drinks = delivery.getDeliveredDrinks();
+		if (drinks != null) {
+			for (Drink drink : drinks) {
+				put(drink.isIced() ? ICED : HOT);
+				DrinkType type = drink.getDrinkType();
+				if (type != null) {
+					put(DRINK_TYPES[type.ordinal()]);
+				}
+				else {
+					put(NULL);
+					put((byte) ',');
+					put((byte) ' ');
+				}
+				putInt(drink.getShots());
+				put(SHOTS);
+			}
+		}
+		put(SEPARATOR);
+	}
+
+	private void put(byte[] bytes) throws IOException {
+		int offset = 0;
+		while (offset < bytes.length) {
+			if (!this.buffer.hasRemaining()) {
+				writeBuffer();
+			}
+			int length = Math.min(bytes.length - offset, this.buffer.remaining());
+			this.buffer.put(bytes, offset, length);
+			offset += length;
+		}
+	}
+
+	private void put(byte b) throws IOException {
+		if (!this.buffer.hasRemaining()) {
+			writeBuffer();
+		}
+		this.buffer.put(b);
+	}
+
+	private void putInt(int value) throws IOException {
+		long remaining = value;
+		if (remaining < 0) {
+			put((byte) '-');
+			remaining = -remaining;
+		}
+		long divisor = 1;
+		while (divisor * 10 <= remaining) {
+			divisor *= 10;
+		}
+		for (; divisor > 0; divisor /= 10) {
+			put((byte) ('0' + remaining / divisor % 10));
+		}
+	}
+
+	private boolean flush() {
+		try {
+			writeBuffer();
+			return true;
+		}
+		catch (IOException e) {
+			logger.error("Failed to write to the delivery sink", e);
+			this.buffer.clear();
+			return false;
+		}
+	}
+
+	private void writeBuffer() throws IOException {
+		this.buffer.flip();
+		try {
+			while (this.buffer.hasRemaining()) {
+				this.bytesWritten += this.channel.write(this.buffer);
+			}
+		}
+		finally {
+			this.buffer.clear();
+		}
+	}
+
+	private static byte[] ascii(String text) {
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}
+
+}
@@ -0,0 +1,475 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.integration.samples.cafe.concurrent.StripedIntMap;
+import org.springframework.integration.store.MessageGroup;
+import org.springframework.integration.store.MessageGroupMetadata;
+import org.springframework.integration.store.MessageGroupStore;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * The base of the {@link MessageGroupStore}s for groups correlated by the order
+ * number, such as the drinks aggregated by the Waiter; subclasses decide where the
+ * messages of a group are kept.
+ * <p/>
+ * Groups live in a {@link StripedIntMap} keyed by the primitive <code>int</code>
+ * order number, so lookups neither box the key nor contend on a single store-wide
+ * lock. Only finding, creating and removing a group briefly locks its stripe.
+ * <p/>
+ * The correlation strategy still hands the order number over as an
+ * {@link Integer}, since that is what the aggregator API expects; the store
+ * unboxes it once per call and keeps the boxed id of each group for its
+ * lifetime.
+ * <p/>
+ * Groups that are not released in time are handled by {@link #expireMessageGroups(long)},
+ * typically called by a {@link org.springframework.integration.store.MessageGroupStoreReaper}:
+ * completed groups that have been emptied by the aggregator are simply removed,
+ * the others are passed to the registered expiry callbacks (i.e. the aggregator),
+ * or removed if there are none. That scans all the groups on every run; with a
+ * {@link #setGroupTimeout(long) group timeout}, the timeout of each group is
+ * scheduled in a {@link GroupTimeoutWheel} instead, and
+ * {@link #expireTimedOutGroups()} only visits the groups that are due. The
+ * timeout of a group is cancelled when the group is removed.
+ *
+ * @param <G> the type of the groups
+ */
+public abstract class AbstractOrderNumberMessageGroupStore<G extends AbstractOrderNumberMessageGroupStore.OrderNumberGroup>
+		implements MessageGroupStore, Iterable<MessageGroup> {
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private final StripedIntMap<G> groups;
+
+	private final List<MessageGroupCallback> expiryCallbacks = new CopyOnWriteArrayList<>();
+
+	private volatile boolean timeoutOnIdle;
+
+	private volatile long groupTimeout;
+
+	private volatile GroupTimeoutWheel groupTimeouts;
+
+	private final LongAdder expiredGroups = new LongAdder();
+
+
+	protected AbstractOrderNumberMessageGroupStore() {
+		this.groups = new StripedIntMap<>();
+	}
+
+	/**
+	 * @param stripes the number of independently locked stripes, rounded up
+	 * to a power of two
+	 */
+	protected AbstractOrderNumberMessageGroupStore(int stripes) {
+		this.groups = new StripedIntMap<>(stripes);
+	}
+
+	/**
+	 * Expire groups by the time they were last modified instead of the time
+	 * they were created.
+	 * @param timeoutOnIdle true to expire idle groups
+	 */
+	public void setTimeoutOnIdle(boolean timeoutOnIdle) {
+		this.timeoutOnIdle = timeoutOnIdle;
+	}
+
+	/**
+	 * Schedule the timeout of each group created from now on in a
+	 * {@link GroupTimeoutWheel}, for {@link #expireTimedOutGroups()} to expire the
+	 * group on its own once it has timed out.
+	 * @param groupTimeout the time after which a group is expired, in milliseconds
+	 */
+	public void setGroupTimeout(long groupTimeout) {
+		Assert.isTrue(groupTimeout > 0, "'groupTimeout' must be positive");
+		this.groupTimeout = groupTimeout;
+		// about a thousand slots, whatever the timeout
+		this.groupTimeouts = new GroupTimeoutWheel(groupTimeout, Math.max(1, groupTimeout >> 10));
+	}
+
+	/**
+	 * @param orderNumber the order number of the group
+	 * @return a new, empty group
+	 */
+	protected abstract G createGroup(int orderNumber);
+
+	@Override
+	public MessageGroup getMessageGroup(Object groupId) {
+		return this.groups.computeIfAbsent(orderNumber(groupId), this::newGroup);
+	}
+
+	@Override
+	public MessageGroup addMessageToGroup(Object groupId, Message<?> message) {
+		G group = this.groups.computeIfAbsent(orderNumber(groupId), this::newGroup);
+		group.add(message);
+		return group;
+	}
+
+	@Override
+	public void addMessagesToGroup(Object groupId, Message<?>... messages) {
+		G group = this.groups.computeIfAbsent(orderNumber(groupId), this::newGroup);
+		for (Message<?> message : messages) {
+			group.add(message);
+		}
+	}
+
+	@Override
+	public Message<?> pollMessageFromGroup(Object groupId) {
+		G group = find(groupId);
+		return group != null ? group.poll() : null;
+	}
+
+	@Override
+	public Message<?> getOneMessageFromGroup(Object groupId) {
+		G group = find(groupId);
+		return group != null ? group.getOne() : null;
+	}
+
+	@Override
+	public Collection<Message<?>> getMessagesForGroup(Object groupId) {
+		G group = find(groupId);
+		return group != null ? group.getMessages() : Collections.emptyList();
+	}
+
+	@Override
+	public int messageGroupSize(Object groupId) {
+		G group = find(groupId);
+		return group != null ? group.size() : 0;
+	}
+
+	@Override
+	public void removeMessagesFromGroup(Object groupId, Message<?>... messages) {
+		removeMessagesFromGroup(groupId, Arrays.asList(messages));
+	}
+
+	@Override
+	public void removeMessagesFromGroup(Object groupId, Collection<Message<?>> messages) {
+		G group = find(groupId);
+		if (group != null) {
+			group.removeAll(messages);
+		}
+	}
+
+	@Override
+	public void removeMessageGroup(Object groupId) {
+		G group = this.groups.remove(orderNumber(groupId));
+		if (group != null) {
+			removed(group);
+		}
+	}
+
+	@Override
+	public void setLastReleasedSequenceNumberForGroup(Object groupId, int sequenceNumber) {
+		G group = find(groupId);
+		if (group != null) {
+			group.setLastReleasedMessageSequenceNumber(sequenceNumber);
+		}
+	}
+
+	@Override
+	public void completeGroup(Object groupId) {
+		G group = find(groupId);
+		if (group != null) {
+			group.complete();
+		}
+	}
+
+	@Override
+	public MessageGroupMetadata getGroupMetadata(Object groupId) {
+		G group = find(groupId);
+		return new MessageGroupMetadata(group != null ? group : createGroup(orderNumber(groupId)));
+	}
+
+	@Override
+	public void setGroupCondition(Object groupId, String condition) {
+		G group = find(groupId);
+		if (group != null) {
+			group.setCondition(condition);
+		}
+	}
+
+	@Override
+	public Iterator<MessageGroup> iterator() {
+		return new ArrayList<MessageGroup>(this.groups.values()).iterator();
+	}
+
+	@Override
+	@ManagedAttribute
+	public int getMessageGroupCount() {
+		return this.groups.size();
+	}
+
+	@Override
+	@ManagedAttribute
+	public int getMessageCountForAllMessageGroups() {
+		int count = 0;
+		for (G group : this.groups.values()) {
+			count += group.size();
+		}
+		return count;
+	}
+
+	@Override
+	public void registerMessageGroupExpiryCallback(MessageGroupCallback callback) {
+		this.expiryCallbacks.add(callback);
+	}
+
+	@Override
+	public int expireMessageGroups(long timeout) {
+		long threshold = System.currentTimeMillis() - timeout;
+		int count = 0;
+		for (G group : this.groups.values()) {
+			if (expiryTimestamp(group) <= threshold) {
+				count++;
+				expire(group);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Expire the groups that have timed out since the previous call, if a
+	 * {@link #setGroupTimeout(long) group timeout} is set. A group is expired
+	 * within a thousandth of the timeout after it has timed out, or within the
+	 * interval between the calls if that is longer.
+	 */
+	public void expireTimedOutGroups() {
+		GroupTimeoutWheel groupTimeouts = this.groupTimeouts;
+		if (groupTimeouts != null) {
+			groupTimeouts.advance(System.currentTimeMillis(), this::expireIfTimedOut);
+		}
+	}
+
+	@ManagedAttribute(description = "The groups handed to the aggregator to be released partially or discarded")
+	public long getExpiredGroups() {
+		return this.expiredGroups.sum();
+	}
+
+	@ManagedAttribute(description = "The group timeouts scheduled right now")
+	public int getScheduledGroupTimeouts() {
+		GroupTimeoutWheel groupTimeouts = this.groupTimeouts;
+		return groupTimeouts != null ? groupTimeouts.size() : 0;
+	}
+
+	private G newGroup(int orderNumber) {
+		G group = createGroup(orderNumber);
+		GroupTimeoutWheel groupTimeouts = this.groupTimeouts;
+		if (groupTimeouts != null) {
+			group.timeout = groupTimeouts.schedule(orderNumber, group.getTimestamp() + this.groupTimeout);
+		}
+		return group;
+	}
+
+	/**
+	 * Take the timeout of a removed group off the wheel, so that the wheel only
+	 * holds the timeouts of the groups still open, and let the group release
+	 * what it holds.
+	 */
+	private void removed(G group) {
+		GroupTimeoutWheel groupTimeouts = this.groupTimeouts;
+		if (groupTimeouts != null && group.timeout != null) {
+			groupTimeouts.cancel(group.timeout);
+		}
+		group.discard();
+	}
+
+	private long expiryTimestamp(G group) {
+		if (this.timeoutOnIdle && group.getLastModified() > 0) {
+			return group.getLastModified();
+		}
+		return group.getTimestamp();
+	}
+
+	private long expireIfTimedOut(GroupTimeoutWheel.Timeout timeout, long now) {
+		G group = this.groups.get(timeout.getOrderNumber());
+		// a later group of the same order number has a timeout of its own
+		if (group == null || group.timeout != timeout) {
+			return 0;
+		}
+		long deadline = expiryTimestamp(group) + this.groupTimeout;
+		if (deadline > now) {
+			return deadline;
+		}
+		try {
+			expire(group);
+		}
+		catch (RuntimeException e) {
+			// logged by expire(), and the other groups are expired all the same
+		}
+		return 0;
+	}
+
+	private void expire(G group) {
+		if ((group.isComplete() && group.size() == 0) || this.expiryCallbacks.isEmpty()) {
+			if (this.groups.remove(group.orderNumber, group)) {
+				removed(group);
+			}
+			return;
+		}
+		this.expiredGroups.increment();
+		RuntimeException exception = null;
+		for (MessageGroupCallback callback : this.expiryCallbacks) {
+			try {
+				callback.execute(this, group);
+			}
+			catch (RuntimeException e) {
+				if (exception == null) {
+					exception = e;
+				}
+				this.logger.error("Exception in expiry callback for order #" + group.orderNumber, e);
+			}
+		}
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	private G find(Object groupId) {
+		return this.groups.get(orderNumber(groupId));
+	}
+
+	private static int orderNumber(Object groupId) {
+		Assert.isInstanceOf(Number.class, groupId, "The order number is expected as the correlation key");
+		return ((Number) groupId).intValue();
+	}
+
+
+	/**
+	 * The drinks of one order: its order number, boxed once, and the state the
+	 * aggregator keeps about it; subclasses keep the messages.
+	 */
+	protected abstract static class OrderNumberGroup implements MessageGroup {
+
+		final int orderNumber;
+
+		private final Integer groupId;
+
+		private final long timestamp = System.currentTimeMillis();
+
+		volatile long lastModified;
+
+		private volatile int lastReleasedSequence;
+
+		volatile boolean complete;
+
+		private volatile String condition;
+
+		volatile GroupTimeoutWheel.Timeout timeout;
+
+		protected OrderNumberGroup(int orderNumber) {
+			this.orderNumber = orderNumber;
+			this.groupId = orderNumber;
+		}
+
+		/**
+		 * @return the first message of the group, removed from it, or null if it is empty
+		 */
+		abstract Message<?> poll();
+
+		/**
+		 * Remove the messages from the group one by one.
+		 * @param messages the messages to remove
+		 */
+		void removeAll(Collection<Message<?>> messages) {
+			for (Message<?> message : messages) {
+				remove(message);
+			}
+		}
+
+		/**
+		 * Release what the group holds once it is removed from the store.
+		 */
+		void discard() {
+		}
+
+		@Override
+		public boolean canAdd(Message<?> message) {
+			return true;
+		}
+
+		@Override
+		public Object getGroupId() {
+			return this.groupId;
+		}
+
+		@Override
+		public int getLastReleasedMessageSequenceNumber() {
+			return this.lastReleasedSequence;
+		}
+
+		@Override
+		public void setLastReleasedMessageSequenceNumber(int sequenceNumber) {
+			this.lastReleasedSequence = sequenceNumber;
+		}
+
+		@Override
+		public boolean isComplete() {
+			return this.complete;
+		}
+
+		@Override
+		public void complete() {
+			this.complete = true;
+		}
+
+		@Override
+		public long getTimestamp() {
+			return this.timestamp;
+		}
+
+		@Override
+		public long getLastModified() {
+			return this.lastModified;
+		}
+
+		@Override
+		public void setLastModified(long lastModified) {
+			this.lastModified = lastModified;
+		}
+
+		@Override
+		public void setCondition(String condition) {
+			this.condition = condition;
+		}
+
+		@Override
+		public String getCondition() {
+			return this.condition;
+		}
+
+		@Override
+		public String toString() {
+			return getClass().getSimpleName() + "{orderNumber=" + this.orderNumber + ", size=" + size()
+					+ ", complete=" + this.complete + "}";
+		}
+
+	}
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.integration.samples.cafe.store;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.integration.aggregator.AbstractCorrelatingMessageHandler;
+import org.springframework.integration.store.MessageGroupStore;
+import org.springframework.util.Assert;
+
+/**
+ * The <code>@Aggregator</code> annotation has no attribute for the message store,
+ * so this post processor applies one to the aggregating handlers created from
+ * annotated methods (such as the annotation based Waiter), before they are
+ * initialized. XML configured aggregators should use the 'message-store'
+ * attribute instead.
+ */
+public class AggregatorMessageStoreConfigurer implements BeanPostProcessor {
+
+	private final MessageGroupStore messageStore;
+
+	private boolean expireGroupsUponCompletion;
+
+	public AggregatorMessageStoreConfigurer(MessageGroupStore messageStore) {
+		Assert.notNull(messageStore, "'messageStore' must not be null");
+		this.messageStore = messageStore;
+	}
+
+	/**
+	 * Remove groups from the store as soon as they are released, instead of
+	 * keeping them as completed groups until they are reaped.
+	 * @param expireGroupsUponCompletion true to remove released groups
+	 */
+	public void setExpireGroupsUponCompletion(boolean expireGroupsUponCompletion) {
+		this.expireGroupsUponCompletion = expireGroupsUponCompletion;
+	}
+
+	@Override
+	public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+		if (bean instanceof AbstractCorrelatingMessageHandler) {
+			AbstractCorrelatingMessageHandler handler = (AbstractCorrelatingMessageHandler) bean;
+			handler.setMessageStore(this.messageStore);
+			handler.setExpireGroupsUponCompletion(this.expireGroupsUponCompletion);
+		}
+		return bean;
+	}
+
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.store;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.util.Assert;
+
+/**
+ * A hashed timing wheel of the timeouts of message groups, keyed by their order
+ * number, for a store to expire its groups one by one when they time out instead
+ * of scanning all of them on every run of a reaper.
+ * <p/>
+ * The wheel has a slot per tick, enough of them for the timeout to fit within a
+ * single turn, and each slot holds the {@link Timeout}s of its ticks in an array.
+ * Scheduling a timeout appends it to the slot of its deadline, under the lock of
+ * that slot only, and returns it as a handle for the store to keep with its
+ * group. When the group is removed, {@link #cancel(Timeout)} takes the timeout
+ * out of its slot right away, so the wheel only holds the timeouts of the groups
+ * still open. Each call to {@link #advance(long, TimeoutHandler)} goes over the
+ * slots of the ticks elapsed since the previous one, and passes each timeout
+ * whose deadline has passed to the handler, which expires the group or, if the
+ * group has been modified since, tells the new deadline. So the cost of a
+ * timeout is the same however many groups are open, and a run touches only the
+ * timeouts that are due.
+ */
+public class GroupTimeoutWheel {
+
+	private final long tickDuration;
+
+	private final Slot[] slots;
+
+	private final int mask;
+
+	private final AtomicInteger size = new AtomicInteger();
+
+	private final TimeoutList due = new TimeoutList();
+
+	/**
+	 * The last tick whose slot has been gone over, written under the lock of that slot.
+	 */
+	private volatile long lastTick;
+
+	/**
+	 * @param timeout the longest timeout to be scheduled, which fits within one turn of the wheel
+	 * @param tickDuration the time covered by a slot, in milliseconds
+	 */
+	public GroupTimeoutWheel(long timeout, long tickDuration) {
+		Assert.isTrue(timeout > 0, "'timeout' must be positive");
+		Assert.isTrue(tickDuration > 0, "'tickDuration' must be positive");
+		long ticks = timeout / tickDuration + 2;
+		Assert.isTrue(ticks <= (1 << 20), "The timeout must not span more than 2^20 ticks");
+		int slotCount = Integer.highestOneBit((int) ticks - 1) << 1;
+		this.tickDuration = tickDuration;
+		this.slots = new Slot[slotCount];
+		for (int i = 0; i < slotCount; i++) {
+			this.slots[i] = new Slot();
+		}
+		this.mask = slotCount - 1;
+		this.lastTick = System.currentTimeMillis() / tickDuration;
+	}
+
+	/**
+	 * Schedule the timeout of a group. A deadline that has passed already is
+	 * handled by the next run.
+	 * @param orderNumber the order number of the group
+	 * @param deadline the time the group times out, in milliseconds
+	 * @return the timeout, to cancel it with when the group is removed
+	 */
+	public Timeout schedule(int orderNumber, long deadline) {
+		Timeout timeout = new Timeout(orderNumber);
+		schedule(timeout, deadline);
+		return timeout;
+	}
+
+	private void schedule(Timeout timeout, long deadline) {
+		long tick = deadline / this.tickDuration;
+		while (true) {
+			long next = Math.max(tick, this.lastTick + 1);
+			Slot slot = this.slots[(int) (next & this.mask)];
+			synchronized (slot) {
+				// else the run went over the slot in the meantime
+				if (next > this.lastTick) {
+					if (!timeout.cancelled) {
+						timeout.deadline = deadline;
+						slot.add(timeout);
+						this.size.incrementAndGet();
+					}
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Take a timeout off the wheel, e.g. as its group is removed. A timeout that
+	 * is being handed to the handler right now is no longer scheduled again.
+	 * @param timeout the timeout returned by {@link #schedule(int, long)}
+	 */
+	public void cancel(Timeout timeout) {
+		timeout.cancelled = true;
+		Slot slot = timeout.slot;
+		if (slot != null) {
+			synchronized (slot) {
+				// else it has been taken off for a run in the meantime
+				if (timeout.slot == slot) {
+					slot.remove(timeout);
+					this.size.decrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Go over the slots of the ticks elapsed since the previous run, and hand the
+	 * timeouts whose deadline has passed to the handler. Those it returns a later
+	 * deadline for are scheduled again.
+	 * @param now the current time, in milliseconds
+	 * @param handler the handler of the timeouts that are due
+	 * @return the number of timeouts handed to the handler
+	 */
+	public synchronized int advance(long now, TimeoutHandler handler) {
+		long nowTick = now / this.tickDuration;
+		// a slot holds the timeouts of all the ticks it stands for, so a single turn is enough
+		long tick = Math.max(this.lastTick + 1, nowTick - this.mask);
+		int handled = 0;
+		for (; tick <= nowTick; tick++) {
+			Slot slot = this.slots[(int) (tick & this.mask)];
+			synchronized (slot) {
+				this.lastTick = tick;
+				slot.removeDue(tick * this.tickDuration + this.tickDuration - 1, this.due);
+			}
+			this.size.addAndGet(-this.due.size);
+			for (int i = 0; i < this.due.size; i++) {
+				Timeout timeout = this.due.timeouts[i];
+				this.due.timeouts[i] = null;
+				// cancelled since it was taken off its slot
+				if (timeout.cancelled) {
+					continue;
+				}
+				long deadline = handler.handle(timeout, now);
+				if (deadline > 0) {
+					schedule(timeout, deadline);
+				}
+				handled++;
+			}
+			this.due.size = 0;
+		}
+		return handled;
+	}
+
+	/**
+	 * @return the number of timeouts scheduled
+	 */
+	public int size() {
+		return this.size.get();
+	}
+
+
+	/**
+	 * Handles a timeout that is due.
+	 */
+	@FunctionalInterface
+	public interface TimeoutHandler {
+
+		/**
+		 * @param timeout the timeout that is due
+		 * @param now the current time, in milliseconds
+		 * @return the deadline to schedule the timeout again with, if its group is
+		 * still open and has not timed out yet, or 0
+		 */
+		long handle(Timeout timeout, long now);
+
+	}
+
+
+	/**
+	 * The timeout of one group, and its place on the wheel.
+	 */
+	public static final class Timeout {
+
+		private final int orderNumber;
+
+		private long deadline;
+
+		/**
+		 * The slot holding the timeout, or null while it is not on the wheel,
+		 * written under the lock of that slot.
+		 */
+		private volatile Slot slot;
+
+		private int index;
+
+		private volatile boolean cancelled;
+
+		Timeout(int orderNumber) {
+			this.orderNumber = orderNumber;
+		}
+
+		/**
+		 * @return the order number of the group
+		 */
+		public int getOrderNumber() {
+			return this.orderNumber;
+		}
+
+	}
+
+
+	/**
+	 * The timeouts of the ticks that fall into one slot.
+	 */
+	private static final class Slot {
+
+		private static final int INITIAL_CAPACITY = 4;
+
+		private Timeout[] timeouts = new Timeout[INITIAL_CAPACITY];
+
+		private int size;
+
+		void add(Timeout timeout) {
+			if (this.size == this.timeouts.length) {
+				resize(this.size * 2);
+			}
+			timeout.index = this.size;
+			timeout.slot = this;
+			this.timeouts[this.size++] = timeout;
+		}
+
+		/**
+		 * Remove a timeout by moving the last one into its place.
+		 */
+		void remove(Timeout timeout) {
+			int last = --this.size;
+			Timeout moved = this.timeouts[last];
+			this.timeouts[timeout.index] = moved;
+			moved.index = timeout.index;
+			this.timeouts[last] = null;
+			timeout.slot = null;
+			shrink();
+		}
+
+		/**
+		 * Move the timeouts due by the given time to the list, and keep the
+		 * others, which belong to a later turn of the wheel.
+		 */
+		void removeDue(long time, TimeoutList due) {
+			int kept = 0;
+			for (int i = 0; i < this.size; i++) {
+				Timeout timeout = this.timeouts[i];
+				if (timeout.deadline <= time) {
+					timeout.slot = null;
+					due.add(timeout);
+				}
+				else {
+					timeout.index = kept;
+					this.timeouts[kept++] = timeout;
+				}
+			}
+			for (int i = kept; i < this.size; i++) {
+				this.timeouts[i] = null;
+			}
+			this.size = kept;
+			shrink();
+		}
+
+		/**
+		 * Give the memory of a burst back.
+		 */
+		private void shrink() {
+			if (this.size < this.timeouts.length / 4 && this.timeouts.length > INITIAL_CAPACITY) {
+				resize(Math.max(INITIAL_CAPACITY, this.timeouts.length / 2));
+			}
+		}
+
+		private void resize(int capacity) {
+			Timeout[] timeouts = new Timeout[capacity];
+			System.arraycopy(this.timeouts, 0, timeouts, 0, this.size);
+			this.timeouts = timeouts;
+		}
+
+	}
+
+
+	/**
+	 * The timeouts due in the current tick, reused by the runs.
+	 */
+	private static final class TimeoutList {
+
+		private Timeout[] timeouts = new Timeout[16];
+
+		private int size;
+
+		void add(Timeout timeout) {
+			if (this.size == this.timeouts.length) {
+				Timeout[] timeouts = new Timeout[this.size * 2];
+				System.arraycopy(this.timeouts, 0, timeouts, 0, this.size);
+				this.timeouts = timeouts;
+			}
+			this.timeouts[this.size++] = timeout;
+		}
+
+	}
+
+}
@@ -0,0 +1,490 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.integration.StaticMessageHeaderAccessor;
+import org.springframework.integration.samples.cafe.codec.CafeCodec;
+import org.springframework.integration.samples.cafe.codec.MessageCodec;
+import org.springframework.integration.store.MessageGroupStore;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.MessagingException;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link MessageGroupStore} for groups correlated by the order number, like the
+ * {@link OrderNumberMessageGroupStore}, that keeps the messages outside of the
+ * heap, so that drinks waiting a long time for the rest of their order neither
+ * fill the old generation nor lengthen the garbage collections.
+ * <p/>
+ * The messages are written by a {@link MessageCodec}, with the {@link CafeCodec}
+ * for the payloads, into a fixed amount of direct memory, or of a file mapped
+ * into memory, divided into slots of equal size. A message takes as many slots
+ * as it needs, chained to each other, and they are free again as soon as the
+ * message is removed from its group. The message id and timestamp are kept with
+ * the message, so the messages read back equal the ones added, as the aggregator
+ * expects; as with the journal queue, only the headers with simple values are
+ * kept. Only the bookkeeping of each group, a few dozen bytes plus the slot
+ * numbers of its messages, stays on the heap.
+ * <p/>
+ * When all slots are taken, a message is either kept on the heap instead, in
+ * which case it follows the off-heap messages of its group, or rejected with a
+ * {@link MessagingException}, which fails the send to the aggregator, depending
+ * on the {@link Spill} policy. The slots in use and the spilled and rejected
+ * messages are exposed as managed attributes.
+ * <p/>
+ * The groups are looked up and expired as described for the
+ * {@link AbstractOrderNumberMessageGroupStore}. The memory is not recovered on a
+ * restart; a mapped file only lets the operating system page the messages out.
+ */
+@ManagedResource
+public class OffHeapMessageGroupStore
+		extends AbstractOrderNumberMessageGroupStore<OffHeapMessageGroupStore.OffHeapGroup> {
+
+	/**
+	 * What to do with a message when all slots are taken.
+	 */
+	public enum Spill {
+
+		/**
+		 * Keep the message on the heap.
+		 */
+		HEAP,
+
+		/**
+		 * Reject the message with a {@link MessagingException}.
+		 */
+		REJECT
+
+	}
+
+	private static final int DEFAULT_SLOT_SIZE = 128;
+
+	/**
+	 * Each slot starts with the number of the next slot of its message and the
+	 * number of bytes of the message it holds.
+	 */
+	private static final int SLOT_HEADER = 8;
+
+	private static final int NONE = -1;
+
+	private final ByteBuffer memory;
+
+	private final int slotSize;
+
+	private final int slotCount;
+
+	private final int[] freeSlots;
+
+	private int freeCount;
+
+	private final AtomicInteger spilled = new AtomicInteger();
+
+	private final LongAdder rejected = new LongAdder();
+
+	private volatile MessageCodec codec = new MessageCodec();
+
+	private volatile Spill spill = Spill.HEAP;
+
+	/**
+	 * Keep the messages in direct memory, in slots of 128 bytes.
+	 * @param capacity the bytes of direct memory to allocate
+	 */
+	public OffHeapMessageGroupStore(int capacity) {
+		this(capacity, DEFAULT_SLOT_SIZE);
+	}
+
+	/**
+	 * Keep the messages in direct memory.
+	 * @param capacity the bytes of direct memory to allocate
+	 * @param slotSize the bytes of each slot
+	 */
+	public OffHeapMessageGroupStore(int capacity, int slotSize) {
+		this(ByteBuffer.allocateDirect(slots(capacity, slotSize) * slotSize), slotSize);
+	}
+
+	/**
+	 * Keep the messages in a file mapped into memory.
+	 * @param file the file, created along with its directory if needed, and overwritten
+	 * @param capacity the bytes of the file
+	 * @param slotSize the bytes of each slot
+	 * @throws IOException if the file cannot be mapped
+	 */
+	public OffHeapMessageGroupStore(File file, int capacity, int slotSize) throws IOException {
+		this(map(file, slots(capacity, slotSize) * slotSize), slotSize);
+	}
+
+	private OffHeapMessageGroupStore(ByteBuffer memory, int slotSize) {
+		this.memory = memory;
+		this.slotSize = slotSize;
+		this.slotCount = memory.capacity() / slotSize;
+		this.freeSlots = new int[this.slotCount];
+		// the lowest slots are taken first
+		for (int i = 0; i < this.slotCount; i++) {
+			this.freeSlots[i] = this.slotCount - 1 - i;
+		}
+		this.freeCount = this.slotCount;
+	}
+
+	private static int slots(int capacity, int slotSize) {
+		Assert.isTrue(slotSize > SLOT_HEADER + 24, () -> "'slotSize' must be more than " + (SLOT_HEADER + 24));
+		Assert.isTrue(capacity >= slotSize, "'capacity' must hold at least one slot");
+		return capacity / slotSize;
+	}
+
+	private static ByteBuffer map(File file, int size) throws IOException {
+		Assert.notNull(file, "'file' must not be null");
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (directory != null) {
+			Files.createDirectories(directory.toPath());
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			// the mapping stays valid once the channel is closed
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+	}
+
+	/**
+	 * @param codec the codec writing the messages, one for cafe payloads by default
+	 */
+	public void setMessageCodec(MessageCodec codec) {
+		Assert.notNull(codec, "'codec' must not be null");
+		this.codec = codec;
+	}
+
+	/**
+	 * @param spill what to do with a message when all slots are taken, {@link Spill#HEAP} by default
+	 */
+	public void setSpill(Spill spill) {
+		Assert.notNull(spill, "'spill' must not be null");
+		this.spill = spill;
+	}
+
+	@ManagedAttribute
+	public int getSlotSize() {
+		return this.slotSize;
+	}
+
+	@ManagedAttribute
+	public int getSlots() {
+		return this.slotCount;
+	}
+
+	@ManagedAttribute(description = "The slots holding messages right now")
+	public int getSlotsInUse() {
+		synchronized (this.freeSlots) {
+			return this.slotCount - this.freeCount;
+		}
+	}
+
+	@ManagedAttribute(description = "The messages kept on the heap right now, since all slots were taken")
+	public int getSpilledMessages() {
+		return this.spilled.get();
+	}
+
+	@ManagedAttribute(description = "The messages rejected since all slots were taken")
+	public long getRejectedMessages() {
+		return this.rejected.sum();
+	}
+
+	@Override
+	protected OffHeapGroup createGroup(int orderNumber) {
+		return new OffHeapGroup(orderNumber);
+	}
+
+	/**
+	 * Write a message into a chain of free slots.
+	 * @return the first slot, or {@link #NONE} if the message is to be kept on the heap
+	 */
+	private int write(Message<?> message) {
+		Assert.notNull(message, "'message' must not be null");
+		MessageHeaders headers = message.getHeaders();
+		UUID id = headers.getId();
+		Assert.notNull(id, "The message must have an id");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(this.slotSize);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeLong(id.getMostSignificantBits());
+			out.writeLong(id.getLeastSignificantBits());
+			Long timestamp = headers.getTimestamp();
+			out.writeLong(timestamp != null ? timestamp : 0);
+			this.codec.encode(message, out);
+			out.flush();
+		}
+		catch (IOException | IllegalArgumentException e) {
+			throw new MessagingException(message, "Failed to write the message off the heap", e);
+		}
+		int dataPerSlot = this.slotSize - SLOT_HEADER;
+		int[] slots = allocate((bytes.size() + dataPerSlot - 1) / dataPerSlot);
+		if (slots == null) {
+			if (this.spill == Spill.REJECT) {
+				this.rejected.increment();
+				throw new MessagingException(message, "All " + this.slotCount + " slots of the store are taken");
+			}
+			this.spilled.incrementAndGet();
+			return NONE;
+		}
+		byte[] record = bytes.toByteArray();
+		ByteBuffer memory = this.memory.duplicate();
+		for (int i = 0; i < slots.length; i++) {
+			int position = slots[i] * this.slotSize;
+			int offset = i * dataPerSlot;
+			int length = Math.min(dataPerSlot, record.length - offset);
+			memory.putInt(position, i + 1 < slots.length ? slots[i + 1] : NONE);
+			memory.putInt(position + 4, length);
+			memory.position(position + SLOT_HEADER);
+			memory.put(record, offset, length);
+		}
+		return slots[0];
+	}
+
+	private Message<?> read(int slot) {
+		int length = 0;
+		for (int next = slot; next != NONE; next = this.memory.getInt(next * this.slotSize)) {
+			length += this.memory.getInt(next * this.slotSize + 4);
+		}
+		byte[] record = new byte[length];
+		ByteBuffer memory = this.memory.duplicate();
+		int offset = 0;
+		for (int next = slot; next != NONE; next = memory.getInt(next * this.slotSize)) {
+			int position = next * this.slotSize;
+			int chunk = memory.getInt(position + 4);
+			memory.position(position + SLOT_HEADER);
+			memory.get(record, offset, chunk);
+			offset += chunk;
+		}
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+		try {
+			UUID id = new UUID(in.readLong(), in.readLong());
+			long timestamp = in.readLong();
+			return this.codec.decode(in, id, timestamp);
+		}
+		catch (IOException e) {
+			throw new MessagingException("Failed to read a message from slot " + slot, e);
+		}
+	}
+
+	private boolean hasId(int slot, UUID id) {
+		int position = slot * this.slotSize + SLOT_HEADER;
+		return this.memory.getLong(position) == id.getMostSignificantBits()
+				&& this.memory.getLong(position + 8) == id.getLeastSignificantBits();
+	}
+
+	private int[] allocate(int count) {
+		synchronized (this.freeSlots) {
+			if (count > this.freeCount) {
+				return null;
+			}
+			int[] slots = new int[count];
+			for (int i = 0; i < count; i++) {
+				slots[i] = this.freeSlots[--this.freeCount];
+			}
+			return slots;
+		}
+	}
+
+	private void free(int slot) {
+		synchronized (this.freeSlots) {
+			for (int next = slot; next != NONE; next = this.memory.getInt(next * this.slotSize)) {
+				this.freeSlots[this.freeCount++] = next;
+			}
+		}
+	}
+
+
+	/**
+	 * The drinks of one order: the first slots of the messages kept off the heap,
+	 * followed by the messages spilled onto the heap.
+	 */
+	final class OffHeapGroup extends OrderNumberGroup {
+
+		private int[] slots = new int[4];
+
+		private int slotCount;
+
+		private List<Message<?>> heapMessages = Collections.emptyList();
+
+		private boolean discarded;
+
+		private volatile int size;
+
+		private volatile int sequenceSize;
+
+		OffHeapGroup(int orderNumber) {
+			super(orderNumber);
+		}
+
+		@Override
+		public void add(Message<?> messageToAdd) {
+			int slot = write(messageToAdd);
+			synchronized (this) {
+				if (this.discarded) {
+					// the group was removed meanwhile, so is the message
+					release(slot, messageToAdd);
+					return;
+				}
+				if (slot != NONE) {
+					if (this.slotCount == this.slots.length) {
+						this.slots = Arrays.copyOf(this.slots, this.slotCount * 2);
+					}
+					this.slots[this.slotCount++] = slot;
+				}
+				else {
+					if (this.heapMessages.isEmpty()) {
+						this.heapMessages = new ArrayList<>();
+					}
+					this.heapMessages.add(messageToAdd);
+				}
+				if (this.sequenceSize == 0) {
+					this.sequenceSize = StaticMessageHeaderAccessor.getSequenceSize(messageToAdd);
+				}
+				this.size++;
+				this.lastModified = System.currentTimeMillis();
+			}
+		}
+
+		@Override
+		public synchronized boolean remove(Message<?> messageToRemove) {
+			UUID id = messageToRemove.getHeaders().getId();
+			for (int i = 0; i < this.slotCount; i++) {
+				if (hasId(this.slots[i], id)) {
+					int slot = this.slots[i];
+					System.arraycopy(this.slots, i + 1, this.slots, i, this.slotCount - i - 1);
+					this.slotCount--;
+					removed(slot, null);
+					return true;
+				}
+			}
+			for (Iterator<Message<?>> iterator = this.heapMessages.iterator(); iterator.hasNext();) {
+				Message<?> message = iterator.next();
+				if (id.equals(message.getHeaders().getId())) {
+					iterator.remove();
+					removed(NONE, message);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		synchronized Message<?> poll() {
+			if (this.slotCount > 0) {
+				int slot = this.slots[0];
+				Message<?> message = read(slot);
+				System.arraycopy(this.slots, 1, this.slots, 0, --this.slotCount);
+				removed(slot, null);
+				return message;
+			}
+			if (!this.heapMessages.isEmpty()) {
+				Message<?> message = this.heapMessages.remove(0);
+				removed(NONE, message);
+				return message;
+			}
+			return null;
+		}
+
+		private void removed(int slot, Message<?> message) {
+			release(slot, message);
+			this.size--;
+			this.lastModified = System.currentTimeMillis();
+		}
+
+		private void release(int slot, Message<?> message) {
+			if (slot != NONE) {
+				free(slot);
+			}
+			else if (message != null) {
+				OffHeapMessageGroupStore.this.spilled.decrementAndGet();
+			}
+		}
+
+		@Override
+		public synchronized Collection<Message<?>> getMessages() {
+			List<Message<?>> messages = new ArrayList<>(this.size);
+			for (int i = 0; i < this.slotCount; i++) {
+				messages.add(read(this.slots[i]));
+			}
+			messages.addAll(this.heapMessages);
+			return Collections.unmodifiableList(messages);
+		}
+
+		@Override
+		public int getSequenceSize() {
+			return this.sequenceSize;
+		}
+
+		@Override
+		public int size() {
+			return this.size;
+		}
+
+		@Override
+		public synchronized Message<?> getOne() {
+			if (this.slotCount > 0) {
+				return read(this.slots[0]);
+			}
+			return this.heapMessages.isEmpty() ? null : this.heapMessages.get(0);
+		}
+
+		@Override
+		public synchronized void clear() {
+			for (int i = 0; i < this.slotCount; i++) {
+				free(this.slots[i]);
+			}
+			OffHeapMessageGroupStore.this.spilled.addAndGet(-this.heapMessages.size());
+			this.slotCount = 0;
+			this.heapMessages = Collections.emptyList();
+			this.size = 0;
+			this.lastModified = System.currentTimeMillis();
+		}
+
+		/**
+		 * Free the slots of a group removed from the store.
+		 */
+		@Override
+		synchronized void discard() {
+			clear();
+			this.discarded = true;
+		}
+
+	}
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.store;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.integration.StaticMessageHeaderAccessor;
+import org.springframework.integration.store.MessageGroupStore;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.Message;
+
+/**
+ * A {@link MessageGroupStore} for groups correlated by the order number, such as
+ * the drinks aggregated by the Waiter, that keeps the messages on the heap.
+ * <p/>
+ * The groups are looked up and expired as described for the
+ * {@link AbstractOrderNumberMessageGroupStore}. Messages are appended to a group
+ * without locking.
+ */
+@ManagedResource
+public class OrderNumberMessageGroupStore
+		extends AbstractOrderNumberMessageGroupStore<OrderNumberMessageGroupStore.OrderGroup> {
+
+	public OrderNumberMessageGroupStore() {
+	}
+
+	/**
+	 * @param stripes the number of independently locked stripes, rounded up
+	 * to a power of two
+	 */
+	public OrderNumberMessageGroupStore(int stripes) {
+		super(stripes);
+	}
+
+	@Override
+	protected OrderGroup createGroup(int orderNumber) {
+		return new OrderGroup(orderNumber);
+	}
+
+
+	/**
+	 * The drinks of one order; appends and removals go to a lock-free queue.
+	 */
+	static final class OrderGroup extends OrderNumberGroup {
+
+		private final ConcurrentLinkedQueue<Message<?>> messages = new ConcurrentLinkedQueue<>();
+
+		private final Collection<Message<?>> unmodifiableMessages = Collections.unmodifiableCollection(this.messages);
+
+		private final AtomicInteger size = new AtomicInteger();
+
+		OrderGroup(int orderNumber) {
+			super(orderNumber);
+		}
+
+		@Override
+		public void add(Message<?> messageToAdd) {
+			this.messages.add(messageToAdd);
+			this.size.incrementAndGet();
+			this.lastModified = System.currentTimeMillis();
+		}
+
+		@Override
+		public boolean remove(Message<?> messageToRemove) {
+			if (this.messages.remove(messageToRemove)) {
+				this.size.decrementAndGet();
+				this.lastModified = System.currentTimeMillis();
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		void removeAll(Collection<Message<?>> messages) {
+			if (messages == this.unmodifiableMessages) {
+				clear();
+			}
+			else {
+				super.removeAll(messages);
+			}
+		}
+
+		@Override
+		Message<?> poll() {
+			Message<?> message = this.messages.poll();
+			if (message != null) {
+				this.size.decrementAndGet();
+				this.lastModified = System.currentTimeMillis();
+			}
+			return message;
+		}
+
+		@Override
+		public Collection<Message<?>> getMessages() {
+			return this.unmodifiableMessages;
+		}
+
+		@Override
+		public int getSequenceSize() {
+			Message<?> one = getOne();
+			return one != null ? StaticMessageHeaderAccessor.getSequenceSize(one) : 0;
+		}
+
+		@Override
+		public int size() {
+			return this.size.get();
+		}
+
+		@Override
+		public Message<?> getOne() {
+			return this.messages.peek();
+		}
+
+		@Override
+		public void clear() {
+			while (this.messages.poll() != null) {
+				this.size.decrementAndGet();
+			}
+			this.lastModified = System.currentTimeMillis();
+		}
+
+	}
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.integration.samples.cafe;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import org.springframework.context.support.GenericXmlApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.integration.samples.cafe.store.OffHeapMessageGroupStore;
+import org.springframework.integration.samples.cafe.store.OrderNumberMessageGroupStore;
+
+/**
+ * Loads both demo configurations with each of the profiles the README documents,
+ * alone and, except for the sharded baristas, with the off-heap drink group store.
+ */
+public class CafeDemoProfilesTests {
+
+	private static final String[] PROFILES = { null, "ring-buffer-queues", "journaled-queues", "priority-queues", "virtual-baristas",
+			"micro-batching", "sharded-baristas", "pooled-baristas", "recipe-coalescing", "reactive" };
+
+	@Test
+	public void testXmlConfigurationLoadsWithEachProfile() {
+		loadWithEachProfile("/META-INF/spring/integration/cafeDemo-xml.xml");
+	}
+
+	@Test
+	public void testAnnotationConfigurationLoadsWithEachProfile() {
+		loadWithEachProfile("/META-INF/spring/integration/cafeDemo-annotation.xml");
+	}
+
+	private static void loadWithEachProfile(String path) {
+		for (String profile : PROFILES) {
+			load(path, profile, null, OrderNumberMessageGroupStore.class);
+			if (!"sharded-baristas".equals(profile)) {
+				load(path, profile, "offHeap", OffHeapMessageGroupStore.class);
+			}
+		}
+	}
+
+	private static void load(String path, String profile, String store, Class<?> storeType) {
+		GenericXmlApplicationContext ctx = new GenericXmlApplicationContext();
+		if (profile != null) {
+			ctx.getEnvironment().setActiveProfiles(profile);
+		}
+		if (store != null) {
+			ctx.getEnvironment().getPropertySources().addFirst(
+					new MapPropertySource("store", Collections.singletonMap("cafe.drink-group-store", store)));
+		}
+		ctx.load(path);
+		try {
+			ctx.refresh();
+			assertTrue(path + " " + profile + " " + store,
+					storeType.isInstance(ctx.getBean("drinkGroupStore", Object.class)));
+		}
+		finally {
+			ctx.close();
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.springframework.integration.StaticMessageHeaderAccessor;
+import org.springframework.messaging.Message;
+
+public class OrderBatchDispatcherTests {
+
+	private final List<Message<?>> hotDrinks = new ArrayList<>();
+
+	private final List<Message<?>> coldDrinks = new ArrayList<>();
+
+	private final OrderBatchDispatcher dispatcher = new OrderBatchDispatcher(
+			(message, timeout) -> this.hotDrinks.add(message), (message, timeout) -> this.coldDrinks.add(message));
+
+	@Test
+	public void testDrinksAreSentToTheirChannelsWithOrderSequence() {
+		Order first = new Order(1);
+		first.addItem(DrinkType.LATTE, 2, false);
+		first.addItem(DrinkType.MOCHA, 3, true);
+		first.addItem(DrinkType.ESPRESSO, 1, false);
+		Order second = new Order(2);
+		second.addItem(DrinkType.CAPPUCCINO, 1, true);
+		this.dispatcher.placeOrders(Arrays.asList(first, second));
+
+		assertEquals(2, this.hotDrinks.size());
+		assertEquals(2, this.coldDrinks.size());
+		for (Message<?> message : this.hotDrinks) {
+			assertFalse(((OrderItem) message.getPayload()).isIced());
+		}
+		for (Message<?> message : this.coldDrinks) {
+			assertTrue(((OrderItem) message.getPayload()).isIced());
+		}
+
+		Message<?> espresso = this.hotDrinks.get(1);
+		assertEquals(1, StaticMessageHeaderAccessor.getCorrelationId(espresso));
+		assertEquals(3, StaticMessageHeaderAccessor.getSequenceNumber(espresso));
+		assertEquals(3, StaticMessageHeaderAccessor.getSequenceSize(espresso));
+
+		Message<?> cappuccino = this.coldDrinks.get(1);
+		assertEquals(2, StaticMessageHeaderAccessor.getCorrelationId(cappuccino));
+		assertEquals(1, StaticMessageHeaderAccessor.getSequenceNumber(cappuccino));
+		assertEquals(1, StaticMessageHeaderAccessor.getSequenceSize(cappuccino));
+	}
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.integration.samples.cafe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import org.springframework.messaging.Message;
+
+public class PendingDeliveriesTests {
+
+	private final List<Message<?>> placed = new ArrayList<>();
+
+	private final PendingDeliveries pendingDeliveries = new PendingDeliveries((message, timeout) -> this.placed.add(message));
+
+	@Test
+	public void testDeliveryCompletesFuture() throws Exception {
+		CompletableFuture<Delivery> future = this.pendingDeliveries.placeOrder(new Order(1));
+		assertEquals(1, this.placed.size());
+		assertEquals(1, this.pendingDeliveries.getPendingCount());
+		Delivery delivery = new Delivery(Collections.singletonList(new Drink(1, DrinkType.LATTE, false, 2)));
+		this.pendingDeliveries.deliver(delivery);
+		assertSame(delivery, future.get());
+		assertEquals(0, this.pendingDeliveries.getPendingCount());
+	}
+
+	@Test
+	public void testPartialDeliveryFailsFuture() throws Exception {
+		Order order = new Order(1);
+		order.addItem(DrinkType.LATTE, 2, false);
+		order.addItem(DrinkType.MOCHA, 3, true);
+		CompletableFuture<Delivery> future = this.pendingDeliveries.placeOrder(order);
+		Delivery delivery = new Delivery(Collections.singletonList(new Drink(1, DrinkType.LATTE, false, 2)));
+		this.pendingDeliveries.deliver(delivery);
+		try {
+			future.get();
+			fail("Expected ExecutionException");
+		}
+		catch (ExecutionException e) {
+			PartialDeliveryException partial = (PartialDeliveryException) e.getCause();
+			assertSame(delivery, partial.getDelivery());
+			assertEquals(2, partial.getOrderedItems());
+		}
+		assertEquals(0, this.pendingDeliveries.getPendingCount());
+	}
+
+	@Test
+	public void testOrdersArePlacedOnTheExecutor() throws Exception {
+		List<Runnable> tasks = new ArrayList<>();
+		this.pendingDeliveries.setExecutor(tasks::add);
+		CompletableFuture<Delivery> future = this.pendingDeliveries.placeOrder(new Order(1));
+		assertEquals(0, this.placed.size());
+		assertEquals(1, tasks.size());
+		tasks.get(0).run();
+		assertEquals(1, this.placed.size());
+		assertFalse(future.isDone());
+
+		this.pendingDeliveries.setExecutor(task -> {
+			throw new RejectedExecutionException("full");
+		});
+		CompletableFuture<Delivery> rejected = this.pendingDeliveries.placeOrder(new Order(2));
+		assertTrue(rejected.isCompletedExceptionally());
+		assertEquals(1, this.pendingDeliveries.getPendingCount());
+	}
+
+	@Test
+	public void testDuplicateOrderIsRejected() {
+		this.pendingDeliveries.placeOrder(new Order(1));
+		CompletableFuture<Delivery> duplicate = this.pendingDeliveries.placeOrder(new Order(1));
+		assertTrue(duplicate.isCompletedExceptionally());
+		assertEquals(1, this.placed.size());
+	}
+
+	@Test
+	public void testDiscardedOrderFailsItsFuture() throws Exception {
+		Order order = new Order(1);
+		CompletableFuture<Delivery> future = this.pendingDeliveries.placeOrder(order);
+		// another order with the same number does not fail it
+		this.pendingDeliveries.reject(new Order(1));
+		assertFalse(future.isDone());
+		this.pendingDeliveries.reject(order);
+		try {
+			future.get();
+			fail("Expected ExecutionException");
+		}
+		catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		assertEquals(0, this.pendingDeliveries.getPendingCount());
+	}
+
+	@Test
+	public void testPendingDeliveryTimesOut() throws Exception {
+		this.pendingDeliveries.setTimeout(0);
+		CompletableFuture<Delivery> future = this.pendingDeliveries.placeOrder(new Order(1));
+		assertEquals(1, this.pendingDeliveries.expire());
+		try {
+			future.get();
+		}
+		catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		assertTrue(future.isCompletedExceptionally());
+		assertEquals(0, this.pendingDeliveries.getPendingCount());
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.integration.StaticMessageHeaderAccessor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+
+public class SingleItemOrderFastPathTests {
+
+	private final List<Message<?>> hotDrinks = new ArrayList<>();
+
+	private final List<Message<?>> coldDrinks = new ArrayList<>();
+
+	private final List<Message<?>> deliveries = new ArrayList<>();
+
+	private final SingleItemOrderFastPath fastPath = new SingleItemOrderFastPath(
+			(message, timeout) -> this.hotDrinks.add(message), (message, timeout) -> this.coldDrinks.add(message),
+			(message, timeout) -> this.deliveries.add(message));
+
+	@Test
+	public void testSingleItemOrderIsPlacedWithoutSplitting() {
+		Order order = new Order(7);
+		order.addItem(DrinkType.MOCHA, 2, true);
+		Message<Order> message = new GenericMessage<>(order, Collections.singletonMap("customer", "Ann"));
+
+		assertNull(this.fastPath.placeOrder(message));
+		assertTrue(this.hotDrinks.isEmpty());
+		assertEquals(1, this.coldDrinks.size());
+		Message<?> item = this.coldDrinks.get(0);
+		assertSame(order.getItems().get(0), item.getPayload());
+		assertEquals("Ann", item.getHeaders().get("customer"));
+		assertEquals(7, StaticMessageHeaderAccessor.getCorrelationId(item));
+		assertEquals(1, StaticMessageHeaderAccessor.getSequenceNumber(item));
+		assertEquals(1, StaticMessageHeaderAccessor.getSequenceSize(item));
+		assertEquals(1, this.fastPath.getFastPathOrders());
+		assertEquals(0, this.fastPath.getSplitOrders());
+	}
+
+	@Test
+	public void testOrderOfSeveralItemsIsLeftToTheSplitter() {
+		Order order = new Order(8);
+		order.addItem(DrinkType.LATTE, 1, false);
+		order.addItem(DrinkType.MOCHA, 1, true);
+		Message<Order> message = new GenericMessage<>(order);
+
+		assertSame(message, this.fastPath.placeOrder(message));
+		assertTrue(this.hotDrinks.isEmpty());
+		assertTrue(this.coldDrinks.isEmpty());
+		assertEquals(0, this.fastPath.getFastPathOrders());
+		assertEquals(1, this.fastPath.getSplitOrders());
+	}
+
+	@Test
+	public void testDrinkOfSingleItemOrderIsDeliveredWithoutAggregation() {
+		Drink drink = new Drink(7, DrinkType.MOCHA, true, 2);
+		Message<Drink> single = new GenericMessage<>(drink,
+				Collections.singletonMap(IntegrationMessageHeaderAccessor.SEQUENCE_SIZE, 1));
+		Message<Drink> ofTwo = new GenericMessage<>(drink,
+				Collections.singletonMap(IntegrationMessageHeaderAccessor.SEQUENCE_SIZE, 2));
+
+		assertNull(this.fastPath.deliver(single));
+		assertSame(ofTwo, this.fastPath.deliver(ofTwo));
+		assertEquals(1, this.deliveries.size());
+		Delivery delivery = (Delivery) this.deliveries.get(0).getPayload();
+		assertEquals(7, delivery.getOrderNumber());
+		assertEquals(Collections.singletonList(drink), delivery.getDeliveredDrinks());
+		assertEquals(1, this.fastPath.getFastPathDeliveries());
+		assertEquals(1, this.fastPath.getAggregatedDrinks());
+	}
+
+}
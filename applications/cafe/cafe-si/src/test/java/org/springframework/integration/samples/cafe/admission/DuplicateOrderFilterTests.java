@@ -0,0 +1,132 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.admission;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.messaging.support.GenericMessage;
+
+public class DuplicateOrderFilterTests {
+
+	@Test
+	public void testDuplicatesWithinTheWindowAreRejected() {
+		DuplicateOrderFilter filter = new DuplicateOrderFilter(1000, 1);
+		for (int i = 1; i <= 1000; i++) {
+			assertTrue(filter.accept(new GenericMessage<>(order(i))));
+		}
+		for (int i = 1; i <= 1000; i += 7) {
+			assertFalse(filter.accept(new GenericMessage<>(order(i))));
+		}
+		assertTrue(filter.accept(new GenericMessage<>("not an order")));
+		assertEquals(1000, filter.getNewOrders());
+		assertEquals(143, filter.getDuplicateOrders());
+	}
+
+	@Test
+	public void testOrdersBeforeTheWindowAreAcceptedAgain() {
+		DuplicateOrderFilter filter = new DuplicateOrderFilter(100, 1);
+		for (int i = 1; i <= 100000; i++) {
+			assertTrue(filter.accept(new GenericMessage<>(order(i))));
+			// the previous order is always within the window
+			assertFalse(filter.accept(new GenericMessage<>(order(i))));
+		}
+		assertTrue(filter.accept(new GenericMessage<>(order(1))));
+		assertFalse(filter.accept(new GenericMessage<>(order(100000 - 98))));
+		assertEquals(100001, filter.getDuplicateOrders());
+	}
+
+	@Test
+	public void testStripesFindEveryDuplicateOfConcurrentOrders() throws Exception {
+		DuplicateOrderFilter filter = new DuplicateOrderFilter(16384);
+		assertEquals(64, filter.getStripes());
+		Thread[] threads = new Thread[4];
+		AtomicInteger accepted = new AtomicInteger();
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				for (int i = 1; i <= 10000; i++) {
+					if (filter.accept(new GenericMessage<>(order(i)))) {
+						accepted.incrementAndGet();
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(10000, accepted.get());
+		assertEquals(10000, filter.getNewOrders());
+		assertEquals(30000, filter.getDuplicateOrders());
+		assertEquals(4, new DuplicateOrderFilter(5, 8).getStripes());
+	}
+
+	@Test
+	public void testBloomFilterPositivesAreLookedUpInTheWindow() {
+		DuplicateOrderFilter filter = new DuplicateOrderFilter(100, 1, 100000, 0.01);
+		for (int i = 1; i <= 10000; i++) {
+			assertTrue(filter.accept(new GenericMessage<>(order(i))));
+		}
+		long falsePositives = filter.getFalsePositives();
+		assertTrue(falsePositives < 100);
+		// placed again after the window, but within the horizon
+		for (int i = 1; i <= 100; i++) {
+			assertTrue(filter.accept(new GenericMessage<>(order(i))));
+		}
+		assertEquals(falsePositives + 100, filter.getFalsePositives());
+		assertFalse(filter.accept(new GenericMessage<>(order(50))));
+		assertEquals(1, filter.getDuplicateOrders());
+		assertEquals(falsePositives + 101, filter.getFilterPositives());
+		assertEquals(10100, filter.getNewOrders());
+	}
+
+	@Test
+	public void testFalsePositiveRateIsConfigurable() {
+		DuplicateOrderFilter coarse = new DuplicateOrderFilter(1, 1, 20000, 0.2);
+		DuplicateOrderFilter fine = new DuplicateOrderFilter(1, 1, 20000, 0.001);
+		for (int i = 1; i <= 20000; i++) {
+			assertTrue(coarse.accept(new GenericMessage<>(order(i))));
+			assertTrue(fine.accept(new GenericMessage<>(order(i))));
+		}
+		// the new orders are false positives at up to the configured rate, as the filter fills
+		assertTrue(coarse.getFalsePositives() > 200 && coarse.getFalsePositives() < 4000);
+		assertTrue(fine.getFalsePositives() < 20);
+		assertTrue(fine.getFilterBytes() > coarse.getFilterBytes());
+		try {
+			new DuplicateOrderFilter(100, 1, 99, 0.01);
+			fail("Expected IllegalArgumentException");
+		}
+		catch (IllegalArgumentException e) {
+			assertEquals("'horizon' must not be shorter than the window", e.getMessage());
+		}
+	}
+
+	private static Order order(int number) {
+		Order order = new Order(number);
+		order.addItem(DrinkType.LATTE, 2, false);
+		return order;
+	}
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.admission;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.springframework.integration.channel.QueueChannelOperations;
+import org.springframework.integration.core.MessageSelector;
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.GenericMessage;
+
+public class OrderAdmissionControllerTests {
+
+	private final DrinkQueue hotDrinks = new DrinkQueue(10);
+
+	private final DrinkQueue coldDrinks = new DrinkQueue(10);
+
+	private final OrderAdmissionController controller = new OrderAdmissionController();
+
+	{
+		this.controller.setHotDrinks(this.hotDrinks);
+		this.controller.setColdDrinks(this.coldDrinks);
+	}
+
+	@Test
+	public void testOrderRejectedWhenQueueIsFull() {
+		this.hotDrinks.size = 10;
+		assertEquals(10, this.controller.getHotDrinksLimit());
+		this.controller.preSend(order(1, 0, 3), this.hotDrinks);
+		try {
+			this.controller.preSend(order(2, 1, 0), this.hotDrinks);
+			fail("expected OrderRejectedException");
+		}
+		catch (OrderRejectedException e) {
+			assertFalse(e.isShed());
+			assertEquals(10, e.getLimit());
+			assertEquals(10, e.getQueued());
+		}
+		assertEquals(1, this.controller.getAdmittedOrders());
+		assertEquals(1, this.controller.getRejectedOrders());
+	}
+
+	@Test
+	public void testOrdersBeingSplitCountTowardsTheLimit() {
+		this.hotDrinks.size = 7;
+		Message<Order> first = order(1, 2, 0);
+		this.controller.preSend(first, this.hotDrinks);
+		try {
+			this.controller.preSend(order(2, 2, 0), this.hotDrinks);
+			fail("expected OrderRejectedException");
+		}
+		catch (OrderRejectedException e) {
+			assertEquals(9, e.getQueued());
+		}
+		this.controller.afterSendCompletion(first, this.hotDrinks, true, null);
+		this.controller.preSend(order(2, 2, 0), this.hotDrinks);
+		assertEquals(2, this.controller.getAdmittedOrders());
+	}
+
+	@Test
+	public void testLimitFollowsServiceRate() {
+		this.controller.setMinLimit(3);
+		this.hotDrinks.size = 5;
+		this.controller.updateLimits();
+		assertTrue(Double.isNaN(this.controller.getHotDrinksServiceRate()));
+		// the queue stays backlogged but no barista takes a drink
+		this.controller.updateLimits();
+		assertEquals(0, this.controller.getHotDrinksServiceRate(), 0);
+		assertEquals(3, this.controller.getHotDrinksLimit());
+		assertEquals(10, this.controller.getColdDrinksLimit());
+		try {
+			this.controller.preSend(order(1, 1, 0), this.hotDrinks);
+			fail("expected OrderRejectedException");
+		}
+		catch (OrderRejectedException e) {
+			assertEquals(3, e.getLimit());
+		}
+	}
+
+	@Test
+	public void testDelayedOrderAdmittedWhenDrinkIsTaken() throws Exception {
+		this.controller.setPolicy(OrderAdmissionController.OverloadPolicy.DELAY);
+		this.controller.setMaxDelay(10000);
+		this.hotDrinks.size = 10;
+		Thread barista = new Thread(() -> {
+			try {
+				Thread.sleep(50);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.hotDrinks.size--;
+			this.controller.postReceive(new GenericMessage<>("drink"), this.hotDrinks);
+		});
+		barista.start();
+		this.controller.preSend(order(1, 1, 0), this.hotDrinks);
+		barista.join();
+		assertEquals(1, this.controller.getDelayedOrders());
+		assertEquals(1, this.controller.getAdmittedOrders());
+	}
+
+	@Test
+	public void testShedBeforeLimit() {
+		this.controller.setPolicy(OrderAdmissionController.OverloadPolicy.SHED);
+		this.controller.setShedThreshold(0);
+		this.coldDrinks.size = 9;
+		try {
+			this.controller.preSend(order(1, 0, 1), this.coldDrinks);
+			fail("expected OrderRejectedException");
+		}
+		catch (OrderRejectedException e) {
+			assertTrue(e.isShed());
+		}
+		assertEquals(1, this.controller.getShedOrders());
+		assertEquals(0, this.controller.getRejectedOrders());
+	}
+
+	@Test
+	public void testBatchIsAdmittedAsAWhole() {
+		this.hotDrinks.size = 6;
+		Message<?> batch = new GenericMessage<>(Arrays.asList(order(1, 2, 1).getPayload(), order(2, 3, 0).getPayload()));
+		try {
+			this.controller.preSend(batch, this.hotDrinks);
+			fail("expected OrderRejectedException");
+		}
+		catch (OrderRejectedException e) {
+			assertEquals(6, e.getQueued());
+		}
+		this.hotDrinks.size = 5;
+		this.controller.preSend(batch, this.hotDrinks);
+		try {
+			this.controller.preSend(order(3, 1, 0), this.hotDrinks);
+			fail("expected OrderRejectedException");
+		}
+		catch (OrderRejectedException e) {
+			assertEquals(10, e.getQueued());
+		}
+		this.controller.afterSendCompletion(batch, this.hotDrinks, true, null);
+		this.controller.preSend(order(3, 1, 0), this.hotDrinks);
+	}
+
+	private static Message<Order> order(int number, int hot, int cold) {
+		Order order = new Order(number);
+		for (int i = 0; i < hot; i++) {
+			order.addItem(DrinkType.LATTE, 2, false);
+		}
+		for (int i = 0; i < cold; i++) {
+			order.addItem(DrinkType.MOCHA, 3, true);
+		}
+		return new GenericMessage<>(order);
+	}
+
+
+	private static final class DrinkQueue implements QueueChannelOperations, MessageChannel {
+
+		private final int capacity;
+
+		private volatile int size;
+
+		DrinkQueue(int capacity) {
+			this.capacity = capacity;
+		}
+
+		@Override
+		public boolean send(Message<?> message, long timeout) {
+			return false;
+		}
+
+		@Override
+		public List<Message<?>> clear() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public List<Message<?>> purge(MessageSelector selector) {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public int getQueueSize() {
+			return this.size;
+		}
+
+		@Override
+		public int getRemainingCapacity() {
+			return this.capacity - this.size;
+		}
+
+	}
+
+}
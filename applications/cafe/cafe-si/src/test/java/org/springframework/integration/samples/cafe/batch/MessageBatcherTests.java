@@ -0,0 +1,124 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.PollableChannel;
+import org.springframework.messaging.support.GenericMessage;
+
+public class MessageBatcherTests {
+
+	private final Queue input = new Queue();
+
+	private final List<Message<?>> output = new ArrayList<>();
+
+	private final MessageBatcher batcher = new MessageBatcher(this.input, (message, timeout) -> this.output.add(message));
+
+	@Test
+	public void testEmptyQueueGivesNoBatch() {
+		assertNull(this.batcher.receive());
+	}
+
+	@Test
+	public void testBatchIsLimitedToBatchSize() {
+		this.batcher.setBatchSize(3);
+		for (int i = 0; i < 5; i++) {
+			this.input.send(new GenericMessage<>(i, Collections.singletonMap("item", i)));
+		}
+		assertEquals(Arrays.asList(0, 1, 2), this.batcher.receive().getPayload());
+		assertEquals(Arrays.asList(3, 4), this.batcher.receive().getPayload());
+		assertNull(this.batcher.receive());
+	}
+
+	@Test
+	public void testResultsAreUnbatchedWithTheirItemHeaders() {
+		this.input.send(new GenericMessage<>("latte", Collections.singletonMap("item", 1)));
+		this.input.send(new GenericMessage<>("mocha", Collections.singletonMap("item", 2)));
+		Message<List<Object>> batch = this.batcher.receive();
+		List<String> drinks = new ArrayList<>();
+		for (Object item : batch.getPayload()) {
+			drinks.add("hot " + item);
+		}
+		this.batcher.unbatch(new GenericMessage<>(drinks, batch.getHeaders()));
+		assertEquals(2, this.output.size());
+		assertEquals("hot latte", this.output.get(0).getPayload());
+		assertEquals(1, this.output.get(0).getHeaders().get("item"));
+		assertEquals("hot mocha", this.output.get(1).getPayload());
+		assertEquals(2, this.output.get(1).getHeaders().get("item"));
+	}
+
+	@Test
+	public void testBatchWaitsForLateMessages() throws Exception {
+		this.batcher.setMaxWait(5000);
+		this.batcher.setBatchSize(2);
+		this.input.send(new GenericMessage<>("latte"));
+		Thread late = new Thread(() -> {
+			try {
+				Thread.sleep(50);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.input.send(new GenericMessage<>("mocha"));
+		});
+		late.start();
+		assertEquals(Arrays.asList("latte", "mocha"), this.batcher.receive().getPayload());
+		late.join();
+	}
+
+
+	private static final class Queue implements PollableChannel {
+
+		private final BlockingQueue<Message<?>> messages = new LinkedBlockingQueue<>();
+
+		@Override
+		public boolean send(Message<?> message, long timeout) {
+			return this.messages.add(message);
+		}
+
+		@Override
+		public Message<?> receive() {
+			return receive(-1);
+		}
+
+		@Override
+		public Message<?> receive(long timeout) {
+			try {
+				return timeout < 0 ? this.messages.take() : this.messages.poll(timeout, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+
+	}
+
+}
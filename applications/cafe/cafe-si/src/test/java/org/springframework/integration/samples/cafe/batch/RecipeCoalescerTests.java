@@ -0,0 +1,127 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.Test;
+
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.OrderItem;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.PollableChannel;
+import org.springframework.messaging.support.GenericMessage;
+
+public class RecipeCoalescerTests {
+
+	private final Queue input = new Queue();
+
+	private final List<Message<?>> output = new ArrayList<>();
+
+	private final RecipeCoalescer coalescer = new RecipeCoalescer(this.input,
+			(message, timeout) -> this.output.add(message));
+
+	@Test
+	public void testEmptyQueueGivesNoRecipe() {
+		assertNull(this.coalescer.receive());
+	}
+
+	@Test
+	public void testIdenticalItemsArePreparedOnce() {
+		send(1, DrinkType.LATTE, 2, false);
+		send(2, DrinkType.MOCHA, 2, false);
+		send(3, DrinkType.LATTE, 2, false);
+		send(4, DrinkType.LATTE, 3, false);
+		send(5, DrinkType.LATTE, 2, false);
+
+		Message<OrderItem> latte = this.coalescer.receive();
+		assertEquals(1, latte.getPayload().getOrderNumber());
+		assertEquals(3, latte.getHeaders().get(RecipeCoalescer.COALESCED_ITEMS, List.class).size());
+		assertEquals(DrinkType.MOCHA, this.coalescer.receive().getPayload().getDrinkType());
+		assertEquals(3, this.coalescer.receive().getPayload().getShots());
+		assertNull(this.coalescer.receive());
+		assertEquals(5, this.coalescer.getCoalescedItems());
+		assertEquals(3, this.coalescer.getPreparedRecipes());
+	}
+
+	@Test
+	public void testDrinkIsFannedOutWithTheItemHeaders() {
+		send(7, DrinkType.CAPPUCCINO, 1, true);
+		send(8, DrinkType.CAPPUCCINO, 1, true);
+		Message<OrderItem> recipe = this.coalescer.receive();
+		OrderItem item = recipe.getPayload();
+		Drink drink = new Drink(item.getOrderNumber(), item.getDrinkType(), item.isIced(), item.getShots());
+		this.coalescer.fanOut(new GenericMessage<>(drink, recipe.getHeaders()));
+
+		assertEquals(2, this.output.size());
+		for (int i = 0; i < 2; i++) {
+			Message<?> message = this.output.get(i);
+			Drink copy = (Drink) message.getPayload();
+			assertEquals(7 + i, copy.getOrderNumber());
+			assertEquals(DrinkType.CAPPUCCINO, copy.getDrinkType());
+			assertTrue(copy.isIced());
+			assertEquals(7 + i, message.getHeaders().get("order"));
+		}
+	}
+
+	@Test
+	public void testWindowIsLimitedToBatchSize() {
+		this.coalescer.setBatchSize(2);
+		send(1, DrinkType.LATTE, 2, false);
+		send(2, DrinkType.LATTE, 2, false);
+		send(3, DrinkType.LATTE, 2, false);
+		assertEquals(2, this.coalescer.receive().getHeaders().get(RecipeCoalescer.COALESCED_ITEMS, List.class).size());
+		assertEquals(1, this.coalescer.receive().getHeaders().get(RecipeCoalescer.COALESCED_ITEMS, List.class).size());
+	}
+
+	private void send(int orderNumber, DrinkType drinkType, int shots, boolean iced) {
+		this.input.send(new GenericMessage<>(new OrderItem(orderNumber, drinkType, shots, iced),
+				Collections.singletonMap("order", orderNumber)));
+	}
+
+
+	private static final class Queue implements PollableChannel {
+
+		private final BlockingQueue<Message<?>> messages = new LinkedBlockingQueue<>();
+
+		@Override
+		public boolean send(Message<?> message, long timeout) {
+			return this.messages.add(message);
+		}
+
+		@Override
+		public Message<?> receive() {
+			return this.messages.poll();
+		}
+
+		@Override
+		public Message<?> receive(long timeout) {
+			return this.messages.poll();
+		}
+
+	}
+
+}
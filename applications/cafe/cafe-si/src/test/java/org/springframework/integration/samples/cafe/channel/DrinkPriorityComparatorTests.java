@@ -0,0 +1,83 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.channel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.OrderItem;
+import org.springframework.integration.samples.cafe.SlaClass;
+import org.springframework.integration.samples.cafe.store.OrderNumberMessageGroupStore;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+
+public class DrinkPriorityComparatorTests {
+
+	@Test
+	public void testExpressOrdersAreDueFirst() {
+		DrinkPriorityComparator comparator = new DrinkPriorityComparator();
+		Message<OrderItem> relaxed = item(1, SlaClass.RELAXED, 1);
+		Message<OrderItem> standard = item(2, SlaClass.STANDARD, 1);
+		Message<OrderItem> express = item(3, SlaClass.EXPRESS, 1);
+		assertTrue(comparator.compare(express, standard) < 0);
+		assertTrue(comparator.compare(standard, relaxed) < 0);
+
+		comparator.setSlack(Collections.singletonMap(SlaClass.RELAXED, 0L));
+		assertTrue(comparator.compare(relaxed, standard) < 0);
+	}
+
+	@Test
+	public void testLastDrinkOfAnOrderJumpsAhead() {
+		OrderNumberMessageGroupStore drinkGroupStore = new OrderNumberMessageGroupStore();
+		DrinkPriorityComparator comparator = new DrinkPriorityComparator(drinkGroupStore);
+		DynamicPriorityQueue<Message<?>> hotDrinks = new DynamicPriorityQueue<>(16, comparator);
+		Message<OrderItem> large = item(1, SlaClass.STANDARD, 5);
+		hotDrinks.add(large);
+		Message<OrderItem> small = item(2, SlaClass.STANDARD, 2);
+		hotDrinks.add(small);
+
+		// the large order is missing 3 more drinks than the small one
+		assertEquals(3 * 5000, comparator.due(large) - comparator.due(small), 1000);
+		assertSame(small, hotDrinks.peek());
+
+		// the Waiter received the other 4 drinks of the large order meanwhile
+		for (int i = 0; i < 4; i++) {
+			drinkGroupStore.addMessageToGroup(1, new GenericMessage<>(new Drink(1, DrinkType.LATTE, false, 1)));
+		}
+		assertSame(large, hotDrinks.poll());
+		assertSame(small, hotDrinks.poll());
+	}
+
+	private static Message<OrderItem> item(int orderNumber, SlaClass slaClass, int sequenceSize) {
+		OrderItem item = new OrderItem(orderNumber, DrinkType.LATTE, 1, false);
+		item.setSlaClass(slaClass);
+		Map<String, Object> headers = new HashMap<>();
+		headers.put(IntegrationMessageHeaderAccessor.SEQUENCE_SIZE, sequenceSize);
+		return new GenericMessage<>(item, headers);
+	}
+
+}
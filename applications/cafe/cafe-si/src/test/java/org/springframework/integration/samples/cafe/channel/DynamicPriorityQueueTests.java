@@ -0,0 +1,103 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.channel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class DynamicPriorityQueueTests {
+
+	@Test
+	public void testRanksEqualElementsInOrderOfAddition() {
+		DynamicPriorityQueue<String> queue = new DynamicPriorityQueue<>(4, Comparator.comparing(String::length));
+		assertTrue(queue.offer("mocha"));
+		assertTrue(queue.offer("latte"));
+		assertTrue(queue.offer("espresso"));
+		assertTrue(queue.offer("tea"));
+		assertFalse(queue.offer("chai"));
+		assertEquals(0, queue.remainingCapacity());
+		assertEquals(Arrays.asList("mocha", "latte", "espresso", "tea"), new ArrayList<>(queue));
+
+		assertEquals("tea", queue.peek());
+		assertEquals("tea", queue.poll());
+		assertEquals("mocha", queue.poll());
+		assertEquals("latte", queue.poll());
+		assertEquals("espresso", queue.poll());
+		assertNull(queue.poll());
+		assertNull(queue.peek());
+	}
+
+	@Test
+	public void testRankingIsEvaluatedWhenTaken() {
+		Map<String, Integer> ranks = new HashMap<>();
+		ranks.put("latte", 1);
+		ranks.put("mocha", 2);
+		ranks.put("espresso", 3);
+		DynamicPriorityQueue<String> queue = new DynamicPriorityQueue<>(8, Comparator.comparing(ranks::get));
+		queue.addAll(Arrays.asList("espresso", "mocha", "latte"));
+		assertEquals("latte", queue.poll());
+
+		// e.g. the Waiter received the other drinks of the espresso's order meanwhile
+		ranks.put("espresso", 0);
+		List<String> drained = new ArrayList<>();
+		assertEquals(2, queue.drainTo(drained));
+		assertEquals(Arrays.asList("espresso", "mocha"), drained);
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void testBlockingOperations() throws Exception {
+		DynamicPriorityQueue<Integer> queue = new DynamicPriorityQueue<>(1, Comparator.naturalOrder());
+		assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+		queue.put(1);
+		assertFalse(queue.offer(2, 10, TimeUnit.MILLISECONDS));
+
+		CountDownLatch taking = new CountDownLatch(1);
+		AtomicReference<Integer> taken = new AtomicReference<>();
+		Thread taker = new Thread(() -> {
+			try {
+				assertEquals(Integer.valueOf(1), queue.take());
+				taking.countDown();
+				taken.set(queue.take());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		taker.start();
+		assertTrue(taking.await(10, TimeUnit.SECONDS));
+		assertTrue(queue.offer(2, 10, TimeUnit.SECONDS));
+		taker.join(10000);
+		assertEquals(Integer.valueOf(2), taken.get());
+		assertEquals(0, queue.size());
+	}
+
+}
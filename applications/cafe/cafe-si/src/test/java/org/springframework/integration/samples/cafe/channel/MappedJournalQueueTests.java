@@ -0,0 +1,156 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.channel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.OrderItem;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+
+public class MappedJournalQueueTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testMessagesKeepTheirPayloadAndHeaders() throws Exception {
+		UUID correlationId = UUID.randomUUID();
+		Map<String, Object> headers = new HashMap<>();
+		headers.put("correlationId", correlationId);
+		headers.put("sequenceNumber", 2);
+		headers.put("priority", 7L);
+		headers.put("errorChannel", "errors");
+		headers.put("replyChannel", new Object());
+		try (MappedJournalQueue queue = new MappedJournalQueue(journal(), 4096, 10)) {
+			assertTrue(queue.offer(new GenericMessage<>(new OrderItem(42, DrinkType.MOCHA, 3, true), headers)));
+			assertEquals(1, queue.size());
+			assertEquals(9, queue.remainingCapacity());
+			Message<?> message = queue.poll();
+			OrderItem item = (OrderItem) message.getPayload();
+			assertEquals(42, item.getOrderNumber());
+			assertEquals(DrinkType.MOCHA, item.getDrinkType());
+			assertEquals(3, item.getShots());
+			assertTrue(item.isIced());
+			assertEquals(correlationId, message.getHeaders().get("correlationId"));
+			assertEquals(2, message.getHeaders().get("sequenceNumber"));
+			assertEquals(7L, message.getHeaders().get("priority"));
+			assertEquals("errors", message.getHeaders().get("errorChannel"));
+			assertFalse(message.getHeaders().containsKey("replyChannel"));
+			assertNull(queue.poll());
+		}
+	}
+
+	@Test
+	public void testCapacityLimitsTheMessages() throws Exception {
+		try (MappedJournalQueue queue = new MappedJournalQueue(journal(), 4096, 2)) {
+			assertTrue(queue.offer(item(1)));
+			assertTrue(queue.offer(item(2)));
+			assertFalse(queue.offer(item(3)));
+			assertEquals(0, queue.remainingCapacity());
+			assertEquals(1, orderNumber(queue.peek()));
+			assertEquals(1, orderNumber(queue.poll()));
+			assertTrue(queue.offer(item(3)));
+		}
+	}
+
+	@Test
+	public void testMessagesNotTakenSurviveReopening() throws Exception {
+		File file = journal();
+		try (MappedJournalQueue queue = new MappedJournalQueue(file, 4096, 10)) {
+			for (int i = 1; i <= 5; i++) {
+				queue.offer(item(i));
+			}
+			assertEquals(1, orderNumber(queue.poll()));
+			assertEquals(2, orderNumber(queue.poll()));
+		}
+		try (MappedJournalQueue queue = new MappedJournalQueue(file, 4096, 10)) {
+			assertEquals(3, queue.size());
+			for (int i = 3; i <= 5; i++) {
+				assertEquals(i, orderNumber(queue.poll()));
+			}
+			assertNull(queue.poll());
+		}
+	}
+
+	@Test
+	public void testJournalWrapsAroundAndRecoversAfterWrapping() throws Exception {
+		File file = journal();
+		int next = 0;
+		int taken = 0;
+		// each record takes about 10 bytes, so three queued messages go round 1 KB several times
+		try (MappedJournalQueue queue = new MappedJournalQueue(file, 1024, 100)) {
+			for (int i = 0; i < 3; i++) {
+				assertTrue(queue.offer(item(next++)));
+			}
+			for (int i = 0; i < 500; i++) {
+				assertTrue("Journal full after " + next, queue.offer(item(next++)));
+				assertEquals(taken++, orderNumber(queue.poll()));
+			}
+		}
+		try (MappedJournalQueue queue = new MappedJournalQueue(file, 1024, 100)) {
+			assertEquals(3, queue.size());
+			assertEquals(3, queue.stream().count());
+			while (taken < next) {
+				assertEquals(taken++, orderNumber(queue.poll()));
+			}
+			assertNull(queue.poll());
+		}
+	}
+
+	@Test
+	public void testFullJournalRejectsMessages() throws Exception {
+		try (MappedJournalQueue queue = new MappedJournalQueue(journal(), 1024, 1000)) {
+			int offered = 0;
+			while (queue.offer(item(offered))) {
+				offered++;
+			}
+			assertTrue("Only " + offered, offered > 10);
+			// the room of one message taken also has to hold the end marker after the next one
+			assertEquals(0, orderNumber(queue.poll()));
+			assertEquals(1, orderNumber(queue.poll()));
+			assertTrue(queue.offer(item(offered)));
+			assertEquals(offered - 1, queue.size());
+		}
+	}
+
+	private File journal() {
+		return new File(this.folder.getRoot(), "drinks.journal");
+	}
+
+	private static Message<OrderItem> item(int orderNumber) {
+		return new GenericMessage<>(new OrderItem(orderNumber, DrinkType.LATTE, 2, false));
+	}
+
+	private static int orderNumber(Message<?> message) {
+		return ((OrderItem) message.getPayload()).getOrderNumber();
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.channel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+public class RingBufferQueueTests {
+
+	@Test
+	public void testCapacityIsRoundedUpToPowerOfTwo() {
+		RingBufferQueue<Integer> queue = new RingBufferQueue<>(10);
+		for (int i = 0; i < 16; i++) {
+			assertTrue(queue.offer(i));
+		}
+		assertFalse(queue.offer(16));
+		assertEquals(16, queue.size());
+		assertEquals(0, queue.remainingCapacity());
+		assertEquals(Integer.valueOf(0), queue.peek());
+		for (int i = 0; i < 16; i++) {
+			assertEquals(Integer.valueOf(i), queue.poll());
+		}
+		assertNull(queue.poll());
+		assertNull(queue.peek());
+		assertEquals(16, queue.remainingCapacity());
+	}
+
+	@Test
+	public void testWrapsAround() {
+		RingBufferQueue<Integer> queue = new RingBufferQueue<>(4);
+		for (int i = 0; i < 100; i++) {
+			assertTrue(queue.offer(i));
+			assertTrue(queue.offer(i + 1000));
+			assertEquals(Integer.valueOf(i), queue.poll());
+			assertEquals(Integer.valueOf(i + 1000), queue.poll());
+		}
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void testSnapshotAndDrain() {
+		RingBufferQueue<Integer> queue = new RingBufferQueue<>(8);
+		queue.addAll(Arrays.asList(1, 2, 3));
+		assertEquals(Arrays.asList(1, 2, 3), new ArrayList<>(queue));
+		List<Integer> drained = new ArrayList<>();
+		assertEquals(2, queue.drainTo(drained, 2));
+		assertEquals(1, queue.drainTo(drained));
+		assertEquals(Arrays.asList(1, 2, 3), drained);
+	}
+
+	@Test
+	public void testTimedOperationsGiveUp() throws Exception {
+		for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+			RingBufferQueue<Integer> queue = new RingBufferQueue<>(1, waitStrategy);
+			assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+			assertTrue(queue.offer(1, 10, TimeUnit.MILLISECONDS));
+			assertTrue(queue.offer(2, 10, TimeUnit.MILLISECONDS));
+			assertFalse(queue.offer(3, 10, TimeUnit.MILLISECONDS));
+			assertEquals(Integer.valueOf(1), queue.poll(10, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	@Test
+	public void testParkedConsumerBacksOffAndStillWakesUp() throws Exception {
+		RingBufferQueue<Integer> queue = new RingBufferQueue<>(16, WaitStrategy.PARK);
+		assertNull(queue.poll(50, TimeUnit.MILLISECONDS));
+		Thread consumer = new Thread(() -> {
+			try {
+				queue.take();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		consumer.start();
+		// long enough for the parks to have grown to their longest
+		Thread.sleep(100);
+		queue.offer(1);
+		consumer.join(1000);
+		assertFalse(consumer.isAlive());
+	}
+
+	@Test
+	public void testManyProducersAndConsumers() throws Exception {
+		// busy spinning needs a core per thread, which the build machine may not have
+		for (WaitStrategy waitStrategy : new WaitStrategy[] { WaitStrategy.YIELD, WaitStrategy.PARK }) {
+			int threads = 4;
+			int perProducer = 20000;
+			RingBufferQueue<Integer> queue = new RingBufferQueue<>(64, waitStrategy);
+			AtomicIntegerArray received = new AtomicIntegerArray(threads * perProducer);
+			CountDownLatch done = new CountDownLatch(threads * 2);
+			List<Throwable> failures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				int first = t * perProducer;
+				run(done, failures, () -> {
+					for (int i = 0; i < perProducer; i++) {
+						queue.put(first + i);
+					}
+				});
+				run(done, failures, () -> {
+					for (int i = 0; i < perProducer; i++) {
+						received.incrementAndGet(queue.take());
+					}
+				});
+			}
+			assertTrue(done.await(60, TimeUnit.SECONDS));
+			assertTrue(failures.toString(), failures.isEmpty());
+			for (int i = 0; i < received.length(); i++) {
+				assertEquals(1, received.get(i));
+			}
+			assertTrue(queue.isEmpty());
+		}
+	}
+
+	private static void run(CountDownLatch done, List<Throwable> failures, Task task) {
+		Thread thread = new Thread(() -> {
+			try {
+				task.run();
+			}
+			catch (Throwable e) {
+				synchronized (failures) {
+					failures.add(e);
+				}
+			}
+			finally {
+				done.countDown();
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+
+	private interface Task {
+
+		void run() throws Exception;
+
+	}
+
+}
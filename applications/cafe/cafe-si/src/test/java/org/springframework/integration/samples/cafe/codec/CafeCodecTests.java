@@ -0,0 +1,170 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.springframework.integration.samples.cafe.Delivery;
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.integration.samples.cafe.OrderItem;
+import org.springframework.integration.samples.cafe.SlaClass;
+
+public class CafeCodecTests {
+
+	private final CafeCodec codec = new CafeCodec();
+
+	@Test
+	public void testOrderRoundTrip() throws IOException {
+		Order order = new Order(-300);
+		order.addItem(DrinkType.LATTE, 2, false);
+		order.addItem(DrinkType.MOCHA, 1000, true);
+		order.getItems().add(new OrderItem(5, null, 0, true));
+
+		Order decoded = (Order) roundTrip(order);
+		assertEquals(-300, decoded.getNumber());
+		assertEquals(3, decoded.getItems().size());
+		for (int i = 0; i < 3; i++) {
+			assertItem(order.getItems().get(i), decoded.getItems().get(i));
+		}
+	}
+
+	@Test
+	public void testSlaClassIsCarriedInTheTag() throws IOException {
+		Order order = new Order(42);
+		order.addItem(DrinkType.LATTE, 2, false);
+		order.setSlaClass(SlaClass.EXPRESS);
+		order.addItem(DrinkType.MOCHA, 3, true);
+
+		assertEquals(5, this.codec.serializeToByteArray(order).length);
+		Order decoded = (Order) roundTrip(order);
+		assertEquals(SlaClass.EXPRESS, decoded.getSlaClass());
+		assertEquals(SlaClass.EXPRESS, decoded.getItems().get(0).getSlaClass());
+		assertEquals(SlaClass.EXPRESS, decoded.getItems().get(1).getSlaClass());
+
+		OrderItem item = new OrderItem(7, DrinkType.ESPRESSO, 1, false);
+		item.setSlaClass(SlaClass.RELAXED);
+		assertEquals(SlaClass.RELAXED, ((OrderItem) roundTrip(item)).getSlaClass());
+		assertEquals(SlaClass.STANDARD, ((OrderItem) roundTrip(new OrderItem(7, DrinkType.ESPRESSO, 1, false)))
+				.getSlaClass());
+	}
+
+	@Test
+	public void testDeliveryRoundTrip() throws IOException {
+		Delivery delivery = new Delivery(Arrays.asList(new Drink(Integer.MAX_VALUE, DrinkType.ESPRESSO, false, 1),
+				new Drink(Integer.MAX_VALUE, DrinkType.CAPPUCCINO, true, 3), new Drink(7, DrinkType.LATTE, true, 2)));
+
+		Delivery decoded = (Delivery) roundTrip(delivery);
+		assertEquals(Integer.MAX_VALUE, decoded.getOrderNumber());
+		assertEquals(3, decoded.getDeliveredDrinks().size());
+		for (int i = 0; i < 3; i++) {
+			assertDrink(delivery.getDeliveredDrinks().get(i), decoded.getDeliveredDrinks().get(i));
+		}
+		assertEquals(delivery.toString(), decoded.toString());
+		assertNull(((Delivery) roundTrip(new Delivery())).getDeliveredDrinks());
+	}
+
+	@Test
+	public void testListsOfItemsAndDrinks() throws IOException {
+		List<Object> batch = new ArrayList<>();
+		batch.add(new OrderItem(1, DrinkType.MOCHA, 2, true));
+		batch.add(null);
+		batch.add(new Drink(Integer.MIN_VALUE, DrinkType.LATTE, false, 1));
+		batch.add(new ArrayList<>());
+
+		List<?> decoded = (List<?>) roundTrip(batch);
+		assertEquals(4, decoded.size());
+		assertItem((OrderItem) batch.get(0), (OrderItem) decoded.get(0));
+		assertNull(decoded.get(1));
+		assertDrink((Drink) batch.get(2), (Drink) decoded.get(2));
+		assertEquals(new ArrayList<>(), decoded.get(3));
+	}
+
+	@Test
+	public void testMuchSmallerThanJavaSerialization() throws IOException {
+		Order order = new Order(42);
+		order.addItem(DrinkType.LATTE, 2, false);
+		order.addItem(DrinkType.MOCHA, 3, true);
+		ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+			out.writeObject(order);
+		}
+		int size = this.codec.serializeToByteArray(order).length;
+		assertEquals(5, size);
+		assertTrue(size * 20 < serialized.size());
+		assertEquals(3, this.codec.serializeToByteArray(order.getItems().get(0)).length);
+	}
+
+	@Test
+	public void testRejectsUnknownPayloadsAndTags() throws IOException {
+		try {
+			this.codec.serializeToByteArray("latte");
+			fail("Expected IllegalArgumentException");
+		}
+		catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("java.lang.String"));
+		}
+		try {
+			this.codec.deserializeFromByteArray(new byte[] { 42 });
+			fail("Expected StreamCorruptedException");
+		}
+		catch (StreamCorruptedException e) {
+			assertEquals("Unknown tag 42", e.getMessage());
+		}
+		try {
+			// a drink has no class
+			this.codec.deserializeFromByteArray(new byte[] { 0x13, 1, 1 });
+			fail("Expected StreamCorruptedException");
+		}
+		catch (StreamCorruptedException e) {
+			assertEquals("Unknown tag 19", e.getMessage());
+		}
+	}
+
+	private Object roundTrip(Object object) throws IOException {
+		return this.codec.deserializeFromByteArray(this.codec.serializeToByteArray(object));
+	}
+
+	private static void assertItem(OrderItem expected, OrderItem actual) {
+		assertEquals(expected.getOrderNumber(), actual.getOrderNumber());
+		assertEquals(expected.getDrinkType(), actual.getDrinkType());
+		assertEquals(expected.getShots(), actual.getShots());
+		assertEquals(expected.isIced(), actual.isIced());
+	}
+
+	private static void assertDrink(Drink expected, Drink actual) {
+		assertEquals(expected.getOrderNumber(), actual.getOrderNumber());
+		assertEquals(expected.getDrinkType(), actual.getDrinkType());
+		assertEquals(expected.getShots(), actual.getShots());
+		assertEquals(expected.isIced(), actual.isIced());
+	}
+
+}
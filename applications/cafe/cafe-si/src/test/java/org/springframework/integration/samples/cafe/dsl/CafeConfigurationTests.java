@@ -0,0 +1,54 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.integration.samples.cafe.dsl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.integration.samples.cafe.Cafe;
+import org.springframework.integration.samples.cafe.Delivery;
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.integration.samples.cafe.xml.Barista;
+
+public class CafeConfigurationTests {
+
+	@Test
+	public void testOrderIsDeliveredWhole() throws Exception {
+		AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(CafeConfiguration.class);
+		try {
+			Barista barista = ctx.getBean(Barista.class);
+			barista.setHotDrinkDelay(0);
+			barista.setColdDrinkDelay(0);
+			Order order = new Order(1);
+			order.addItem(DrinkType.LATTE, 2, false);
+			order.addItem(DrinkType.MOCHA, 3, true);
+			Delivery delivery = ctx.getBean(Cafe.class).placeOrderAsync(order).get(30, TimeUnit.SECONDS);
+			assertEquals(1, delivery.getOrderNumber());
+			assertEquals(2, delivery.getDeliveredDrinks().size());
+		}
+		finally {
+			ctx.close();
+		}
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.latency;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.integration.samples.cafe.Delivery;
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.integration.samples.cafe.OrderItem;
+import org.springframework.integration.support.context.NamedComponent;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.GenericMessage;
+
+public class FlowLatencyInterceptorTests {
+
+	private final FlowLatencyInterceptor interceptor = new FlowLatencyInterceptor();
+
+	@Test
+	public void testEachStageOfAnOrderIsRecorded() {
+		Order order = new Order(1);
+		order.addItem(DrinkType.LATTE, 2, false);
+		Message<?> placed = new GenericMessage<>(order);
+		assertSame(placed, this.interceptor.preSend(placed, channel("orders")));
+
+		Message<?> item = new GenericMessage<>(order.getItems().get(0), sequence(1, 1));
+		assertSame(item, this.interceptor.preSend(item, channel("drinks")));
+		assertSame(item, this.interceptor.preSend(item, channel("hotDrinks")));
+		assertSame(item, this.interceptor.postReceive(item, channel("hotDrinks")));
+		Drink drink = new Drink(1, DrinkType.LATTE, false, 2);
+		Message<?> prepared = new GenericMessage<>(drink, item.getHeaders());
+		assertSame(prepared, this.interceptor.preSend(prepared, channel("preparedDrinks")));
+		Message<?> delivery = new GenericMessage<>(new Delivery(Collections.singletonList(drink)));
+		assertSame(delivery, this.interceptor.preSend(delivery, channel("deliveries")));
+
+		assertArrayEquals(new long[] { 1, 1, 1, 1, 1, 1 }, this.interceptor.getCounts());
+		double[] max = this.interceptor.getMaxMillis();
+		for (int i = 0; i < Stage.AGGREGATION.ordinal(); i++) {
+			assertTrue(max[i] <= max[Stage.DELIVERY.ordinal()]);
+		}
+		assertEquals(0, this.interceptor.expire());
+	}
+
+	@Test
+	public void testEachItemOfABatchIsTimedOnItsOwn() {
+		Order first = new Order(4);
+		first.addItem(DrinkType.LATTE, 1, false);
+		first.addItem(DrinkType.MOCHA, 1, true);
+		Order second = new Order(5);
+		second.addItem(DrinkType.ESPRESSO, 1, false);
+		this.interceptor.preSend(new GenericMessage<>(Arrays.asList(first, second)), channel("orderBatches"));
+
+		this.interceptor.preSend(new GenericMessage<>(first.getItems().get(1), sequence(2, 2)), channel("coldDrinks"));
+		this.interceptor.preSend(new GenericMessage<>(first.getItems().get(0), sequence(1, 2)), channel("hotDrinks"));
+		this.interceptor.preSend(new GenericMessage<>(second.getItems().get(0)), channel("hotDrinks"));
+		this.interceptor.preSend(new GenericMessage<>(first.getItems().get(0)), channel("hotDrinks"));
+		assertArrayEquals(new long[] { 0, 3, 0, 0, 0, 0 }, this.interceptor.getCounts());
+	}
+
+	@Test
+	public void testStagesWithoutAStartAreNotRecorded() {
+		Message<?> item = new GenericMessage<>(new OrderItem(2, DrinkType.MOCHA, 1, true));
+		assertSame(item, this.interceptor.preSend(item, channel("coldDrinks")));
+		assertSame(item, this.interceptor.postReceive(item, channel("coldDrinks")));
+		assertSame(item, this.interceptor.preSend(item, channel("someOtherChannel")));
+		assertArrayEquals(new long[6], this.interceptor.getCounts());
+	}
+
+	@Test
+	public void testChannelsAreOnlyInterceptedWhenEnabled() {
+		assertFalse(this.interceptor.shouldIntercept("orders", null));
+		this.interceptor.setEnabled(true);
+		assertTrue(this.interceptor.shouldIntercept("orders", null));
+	}
+
+	@Test
+	public void testPercentilesAreReportedInMilliseconds() {
+		for (int i = 1; i <= 100; i++) {
+			this.interceptor.record(Stage.QUEUE_WAIT, i * 1000000L);
+		}
+		assertEquals(50, this.interceptor.getMedianMillis()[Stage.QUEUE_WAIT.ordinal()], 0.5);
+		assertEquals(99, this.interceptor.getP99Millis()[Stage.QUEUE_WAIT.ordinal()], 0.5);
+		assertEquals(100, this.interceptor.getMaxMillis()[Stage.QUEUE_WAIT.ordinal()], 0.5);
+		assertEquals(90, this.interceptor.getPercentileMillis("QUEUE_WAIT", 90), 0.5);
+		this.interceptor.record(Stage.QUEUE_WAIT, 1000000L);
+		assertEquals(101, this.interceptor.getCounts()[Stage.QUEUE_WAIT.ordinal()]);
+
+		this.interceptor.reset();
+		assertArrayEquals(new long[6], this.interceptor.getCounts());
+	}
+
+	@Test
+	public void testUndeliveredOrdersExpire() {
+		this.interceptor.setTimeout(0);
+		this.interceptor.preSend(new GenericMessage<>(new Order(3)), channel("orders"));
+		assertEquals(1, this.interceptor.expire());
+		assertEquals(0, this.interceptor.expire());
+	}
+
+	private static Map<String, Object> sequence(int number, int size) {
+		Map<String, Object> headers = new HashMap<>();
+		headers.put(IntegrationMessageHeaderAccessor.SEQUENCE_NUMBER, number);
+		headers.put(IntegrationMessageHeaderAccessor.SEQUENCE_SIZE, size);
+		return headers;
+	}
+
+	private static MessageChannel channel(String name) {
+		return new NamedChannel(name);
+	}
+
+
+	private static final class NamedChannel implements MessageChannel, NamedComponent {
+
+		private final String name;
+
+		NamedChannel(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String getComponentName() {
+			return this.name;
+		}
+
+		@Override
+		public String getComponentType() {
+			return "channel";
+		}
+
+		@Override
+		public boolean send(Message<?> message, long timeout) {
+			return true;
+		}
+
+	}
+
+}
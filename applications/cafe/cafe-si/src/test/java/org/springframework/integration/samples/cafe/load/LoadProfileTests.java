@@ -0,0 +1,91 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.integration.samples.cafe.OrderItem;
+
+public class LoadProfileTests {
+
+	private final Random random = new Random(42);
+
+	@Test
+	public void testOrdersFollowTheWeightedDistributions() {
+		LoadProfile profile = new LoadProfile();
+		profile.setOrderSizes("1=3, 4=1");
+		profile.setDrinkMix("espresso=1,LATTE=1");
+		profile.setIcedRatio(0);
+		profile.setMaxShots(2);
+
+		int singleItemOrders = 0;
+		Map<DrinkType, Integer> drinks = new EnumMap<>(DrinkType.class);
+		for (int i = 1; i <= 4000; i++) {
+			Order order = profile.newOrder(i, this.random);
+			int size = order.getItems().size();
+			assertTrue("Order of " + size, size == 1 || size == 4);
+			if (size == 1) {
+				singleItemOrders++;
+			}
+			for (OrderItem item : order.getItems()) {
+				assertEquals(i, item.getOrderNumber());
+				assertTrue(item.getShots() == 1 || item.getShots() == 2);
+				assertTrue(!item.isIced());
+				drinks.merge(item.getDrinkType(), 1, Integer::sum);
+			}
+		}
+		assertEquals(3000, singleItemOrders, 150);
+		assertEquals(2, drinks.size());
+		assertEquals(drinks.get(DrinkType.ESPRESSO), drinks.get(DrinkType.LATTE), 300);
+	}
+
+	@Test
+	public void testArrivalsAverageToTheRate() {
+		LoadProfile profile = new LoadProfile();
+		profile.setRate(1000);
+		assertEquals(1000000, profile.nextInterval(this.random));
+
+		profile.setArrivals(LoadProfile.Arrivals.POISSON);
+		long total = 0;
+		for (int i = 0; i < 10000; i++) {
+			total += profile.nextInterval(this.random);
+		}
+		assertEquals(1000000, total / 10000, 50000);
+	}
+
+	@Test
+	public void testNegativeWeightsAreRejected() {
+		try {
+			new LoadProfile().setOrderSizes("1=2,2=-1");
+			fail("Expected IllegalArgumentException");
+		}
+		catch (IllegalArgumentException e) {
+			assertEquals("Weights must be positive: 2=-1", e.getMessage());
+		}
+	}
+
+}
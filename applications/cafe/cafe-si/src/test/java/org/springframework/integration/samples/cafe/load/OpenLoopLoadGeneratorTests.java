@@ -0,0 +1,149 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import org.springframework.integration.samples.cafe.Cafe;
+import org.springframework.integration.samples.cafe.Delivery;
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.integration.samples.cafe.OrderItem;
+
+public class OpenLoopLoadGeneratorTests {
+
+	@Test
+	public void testOrdersArriveAtTheRateAndAreAllDelivered() throws Exception {
+		LoadProfile profile = profile(200, 500);
+		LoadReport report = new OpenLoopLoadGenerator(cafe(OpenLoopLoadGeneratorTests::delivered), profile).run();
+
+		assertEquals(100, report.getPlaced());
+		assertEquals(100, report.getDelivered());
+		assertEquals(0, report.getFailed());
+		assertEquals(0, report.getMissing());
+		assertEquals(100, report.getResponseTimes().getTotalCount());
+		assertTrue("Throughput " + report.getThroughput(), report.getThroughput() > 100);
+		assertTrue(report.toString().contains("response time"));
+	}
+
+	@Test
+	public void testOrdersHeldUpByABlockedCallerCountFromTheirIntendedStart() throws Exception {
+		LoadProfile profile = profile(1000, 100);
+		LoadReport report = new OpenLoopLoadGenerator(cafe(order -> {
+			if (order.getNumber() == 1) {
+				sleep(200);
+			}
+			return delivered(order);
+		}), profile).run();
+
+		assertEquals(100, report.getDelivered());
+		// the 99 orders queued up behind the first waited 100 to 200 ms, but were served at once
+		long medianResponse = report.getResponseTimes().getValueAtPercentile(50);
+		long medianService = report.getServiceTimes().getValueAtPercentile(50);
+		assertTrue("Median response " + medianResponse, medianResponse >= TimeUnit.MILLISECONDS.toNanos(100));
+		assertTrue("Median service " + medianService, medianService < TimeUnit.MILLISECONDS.toNanos(50));
+	}
+
+	@Test
+	public void testFailedAndMissingOrdersAreCounted() throws Exception {
+		LoadProfile profile = profile(100, 300);
+		profile.setDrainTimeout(50);
+		LoadReport report = new OpenLoopLoadGenerator(cafe(order -> {
+			switch (order.getNumber() % 3) {
+				case 0:
+					throw new IllegalStateException("Closed");
+				case 1:
+					return delivered(order);
+				default:
+					return new CompletableFuture<>();
+			}
+		}), profile).run();
+
+		assertEquals(30, report.getPlaced());
+		assertEquals(10, report.getDelivered());
+		assertEquals(10, report.getFailed());
+		assertEquals(10, report.getMissing());
+	}
+
+	@Test
+	public void testWarmupOrdersAreNotMeasured() throws Exception {
+		LoadProfile profile = profile(100, 300);
+		profile.setWarmup(100);
+		OpenLoopLoadGenerator generator = new OpenLoopLoadGenerator(cafe(OpenLoopLoadGeneratorTests::delivered),
+				profile);
+		generator.setFirstOrderNumber(1000);
+		LoadReport report = generator.run();
+
+		assertEquals(20, report.getPlaced());
+		assertEquals(20, report.getDelivered());
+	}
+
+	private static LoadProfile profile(double rate, long duration) {
+		LoadProfile profile = new LoadProfile();
+		profile.setRate(rate);
+		profile.setDuration(duration);
+		profile.setDrainTimeout(5000);
+		profile.setSeed(42);
+		return profile;
+	}
+
+	private static Cafe cafe(Function<Order, CompletableFuture<Delivery>> placeOrderAsync) {
+		return new Cafe() {
+
+			@Override
+			public void placeOrder(Order order) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public CompletableFuture<Delivery> placeOrderAsync(Order order) {
+				return placeOrderAsync.apply(order);
+			}
+
+			@Override
+			public void placeOrders(List<Order> orders) {
+				throw new UnsupportedOperationException();
+			}
+
+		};
+	}
+
+	private static CompletableFuture<Delivery> delivered(Order order) {
+		OrderItem item = order.getItems().get(0);
+		Drink drink = new Drink(order.getNumber(), item.getDrinkType(), item.isIced(), item.getShots());
+		return CompletableFuture.completedFuture(new Delivery(Collections.singletonList(drink)));
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.channel.QueueChannelOperations;
+import org.springframework.integration.core.MessageSelector;
+import org.springframework.integration.samples.cafe.xml.Barista;
+import org.springframework.messaging.Message;
+
+public class BaristaAutoscalerTests {
+
+	private final Queue hotDrinks = new Queue();
+
+	private final Queue coldDrinks = new Queue();
+
+	private final BaristaPool pool = new BaristaPool(new Barista(), new QueueChannel(), new QueueChannel(),
+			new QueueChannel());
+
+	private final BaristaAutoscaler autoscaler = new BaristaAutoscaler(this.pool, this.hotDrinks, this.coldDrinks);
+
+	@Test
+	public void testGrowsWithBacklogAndShrinksWhenIdle() {
+		this.pool.setPoolSize(2);
+		this.pool.setBeanFactory(new DefaultListableBeanFactory());
+		this.pool.afterPropertiesSet();
+		this.autoscaler.setMinPoolSize(2);
+		this.autoscaler.setMaxPoolSize(6);
+		this.autoscaler.setScaleDownSamples(2);
+
+		this.autoscaler.adjust();
+		assertEquals(2, this.pool.getPoolSize());
+
+		// drinks are waiting, but none is being prepared
+		this.hotDrinks.size = 10;
+		this.coldDrinks.size = 5;
+		this.autoscaler.adjust();
+		assertEquals(4, this.pool.getPoolSize());
+		this.autoscaler.adjust();
+		assertEquals(6, this.pool.getPoolSize());
+		this.autoscaler.adjust();
+		assertEquals(6, this.pool.getPoolSize());
+		assertEquals(15, this.autoscaler.getQueuedDrinks());
+
+		this.hotDrinks.size = 0;
+		this.coldDrinks.size = 0;
+		this.autoscaler.adjust();
+		assertEquals(6, this.pool.getPoolSize());
+		this.autoscaler.adjust();
+		assertEquals(5, this.pool.getPoolSize());
+		for (int i = 0; i < 10; i++) {
+			this.autoscaler.adjust();
+		}
+		assertEquals(2, this.pool.getPoolSize());
+
+		assertEquals(2, this.autoscaler.getScaleUps());
+		assertEquals(4, this.autoscaler.getScaleDowns());
+		String[] history = this.autoscaler.getScalingHistory();
+		assertEquals(6, history.length);
+		assertTrue(history[0], history[0].endsWith("up 2 -> 4 baristas: 15 drinks queued, 0.00 drinks/s"));
+		assertTrue(history[5], history[5].contains("down 3 -> 2 baristas"));
+	}
+
+	@Test
+	public void testBringsPoolIntoBounds() {
+		this.pool.setPoolSize(20);
+		this.pool.setBeanFactory(new DefaultListableBeanFactory());
+		this.pool.afterPropertiesSet();
+		this.autoscaler.setMaxPoolSize(8);
+
+		this.autoscaler.adjust();
+		assertEquals(8, this.pool.getPoolSize());
+		assertEquals(1, this.autoscaler.getScaleDowns());
+	}
+
+
+	private static final class Queue implements QueueChannelOperations {
+
+		private int size;
+
+		@Override
+		public List<Message<?>> clear() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public List<Message<?>> purge(MessageSelector selector) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int getQueueSize() {
+			return this.size;
+		}
+
+		@Override
+		public int getRemainingCapacity() {
+			return 16 - this.size;
+		}
+
+	}
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.OrderItem;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+
+public class BaristaPoolTests {
+
+	private final CountingBarista barista = new CountingBarista();
+
+	private final QueueChannel hotDrinks = new QueueChannel();
+
+	private final QueueChannel coldDrinks = new QueueChannel();
+
+	private final QueueChannel preparedDrinks = new QueueChannel();
+
+	@Test
+	public void testIdleColdBaristasStealHotDrinks() throws InterruptedException {
+		BaristaPool pool = pool(4, Integer.MAX_VALUE);
+		try {
+			for (int i = 0; i < 20; i++) {
+				this.hotDrinks.send(new GenericMessage<>(new OrderItem(i, DrinkType.LATTE, 1, false)));
+			}
+			awaitPrepared(20);
+			awaitPreparedHotDrinks(pool, 20);
+			assertTrue("Nothing stolen", pool.getStolenHotDrinks() > 0);
+			assertTrue("At most " + this.barista.maxHot, this.barista.maxHot.get() > 2);
+		}
+		finally {
+			pool.stop();
+		}
+	}
+
+	@Test
+	public void testHotDrinkLimitKeepsBaristasForColdDrinks() {
+		BaristaPool pool = pool(4, 2);
+		try {
+			for (int i = 0; i < 20; i++) {
+				this.hotDrinks.send(new GenericMessage<>(new OrderItem(i, DrinkType.LATTE, 1, false)));
+			}
+			this.coldDrinks.send(new GenericMessage<>(new OrderItem(99, DrinkType.MOCHA, 1, true)));
+			awaitPrepared(21);
+			assertEquals(2, this.barista.maxHot.get());
+			assertEquals(1, pool.getPreparedColdDrinks());
+		}
+		finally {
+			pool.stop();
+		}
+	}
+
+	@Test
+	public void testWaitingBaristasAreNotBusy() throws InterruptedException {
+		BaristaPool pool = pool(4, 1);
+		try {
+			for (int i = 0; i < 10; i++) {
+				Thread.sleep(5);
+				assertEquals(0, pool.getBusyHotBaristas());
+				assertEquals(0, pool.getBusyColdBaristas());
+			}
+			this.hotDrinks.send(new GenericMessage<>(new OrderItem(1, DrinkType.LATTE, 1, false)));
+			awaitPrepared(1);
+			awaitPreparedHotDrinks(pool, 1);
+		}
+		finally {
+			pool.stop();
+		}
+	}
+
+	@Test
+	public void testLimitedDrinksArePreparedInTheirOrder() {
+		BaristaPool pool = pool(4, 1);
+		try {
+			for (int i = 0; i < 20; i++) {
+				this.hotDrinks.send(new GenericMessage<>(new OrderItem(i, DrinkType.LATTE, 1, false)));
+			}
+			for (int i = 0; i < 20; i++) {
+				Message<?> drink = this.preparedDrinks.receive(10000);
+				assertNotNull("Missing drink", drink);
+				assertEquals(i, ((Drink) drink.getPayload()).getOrderNumber());
+			}
+			assertEquals(1, this.barista.maxHot.get());
+		}
+		finally {
+			pool.stop();
+		}
+	}
+
+	private BaristaPool pool(int poolSize, int hotDrinkLimit) {
+		BaristaPool pool = new BaristaPool(this.barista, this.hotDrinks, this.coldDrinks, this.preparedDrinks);
+		pool.setPoolSize(poolSize);
+		pool.setHotDrinkLimit(hotDrinkLimit);
+		pool.setIdleWait(10);
+		pool.setBeanFactory(new DefaultListableBeanFactory());
+		pool.afterPropertiesSet();
+		pool.start();
+		return pool;
+	}
+
+	private void awaitPrepared(int count) {
+		for (int i = 0; i < count; i++) {
+			assertNotNull("Missing drink", this.preparedDrinks.receive(10000));
+		}
+	}
+
+	/**
+	 * A barista counts its drink once it has sent it on, so wait for the count too.
+	 */
+	private static void awaitPreparedHotDrinks(BaristaPool pool, long count) throws InterruptedException {
+		for (int i = 0; i < 1000 && pool.getPreparedHotDrinks() < count; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, pool.getPreparedHotDrinks());
+	}
+
+
+	public static class CountingBarista {
+
+		private final AtomicInteger hot = new AtomicInteger();
+
+		private final AtomicInteger maxHot = new AtomicInteger();
+
+		public Drink prepareHotDrink(OrderItem orderItem) throws InterruptedException {
+			this.maxHot.accumulateAndGet(this.hot.incrementAndGet(), Math::max);
+			Thread.sleep(20);
+			this.hot.decrementAndGet();
+			return new Drink(orderItem.getOrderNumber(), orderItem.getDrinkType(), false, orderItem.getShots());
+		}
+
+		public Drink prepareColdDrink(OrderItem orderItem) {
+			return new Drink(orderItem.getOrderNumber(), orderItem.getDrinkType(), true, orderItem.getShots());
+		}
+
+	}
+
+}
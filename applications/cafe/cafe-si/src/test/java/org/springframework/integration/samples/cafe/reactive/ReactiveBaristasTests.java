@@ -0,0 +1,104 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.reactive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import reactor.core.publisher.Flux;
+
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.OrderItem;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+public class ReactiveBaristasTests {
+
+	private final ReactiveBarista barista = new ReactiveBarista();
+
+	private final QueueChannel preparedDrinks = new QueueChannel();
+
+	@Test
+	public void testNoMoreDrinksThanTheConcurrencyAreInPreparation() {
+		this.barista.setHotDrinkDelay(20);
+		AtomicReference<ReactiveBaristas> baristas = new AtomicReference<>();
+		AtomicInteger mostInPreparation = new AtomicInteger();
+		Flux<Message<?>> hotDrinks = Flux.range(1, 10)
+				.<Message<?>>map(i -> drink(i, false))
+				// the drinks already in preparation when the next one is requested
+				.doOnNext(drink -> mostInPreparation.accumulateAndGet(
+						baristas.get().getHotDrinksInPreparation() + 1, Math::max));
+		baristas.set(new ReactiveBaristas(this.barista, hotDrinks, Flux.empty(), this.preparedDrinks));
+		baristas.get().setHotDrinkConcurrency(2);
+
+		long start = System.nanoTime();
+		baristas.get().start();
+		try {
+			for (int i = 0; i < 10; i++) {
+				assertNotNull("Drink " + i + " not prepared", this.preparedDrinks.receive(5000));
+			}
+		}
+		finally {
+			baristas.get().stop();
+		}
+		long elapsedMillis = (System.nanoTime() - start) / 1000000;
+		assertTrue("Concurrency " + mostInPreparation.get(), mostInPreparation.get() <= 2);
+		// 10 drinks of 20 ms, 2 at a time
+		assertTrue("Prepared in " + elapsedMillis + " ms", elapsedMillis >= 100);
+		assertEquals(10, baristas.get().getPreparedHotDrinks());
+	}
+
+	@Test
+	public void testPreparedDrinksKeepTheHeadersAndFailuresAreDropped() {
+		this.barista.setColdDrinkDelay(0);
+		Flux<Message<?>> coldDrinks = Flux.just(drink(1, true),
+				MessageBuilder.withPayload("not a drink").build(), drink(2, true));
+		ReactiveBaristas baristas = new ReactiveBaristas(this.barista, Flux.empty(), coldDrinks,
+				this.preparedDrinks);
+
+		baristas.start();
+		try {
+			for (int orderNumber = 1; orderNumber <= 2; orderNumber++) {
+				Message<?> prepared = this.preparedDrinks.receive(5000);
+				assertNotNull("Drink of order " + orderNumber + " not prepared", prepared);
+				assertEquals(orderNumber, ((Drink) prepared.getPayload()).getOrderNumber());
+				assertEquals(orderNumber, prepared.getHeaders().get(IntegrationMessageHeaderAccessor.CORRELATION_ID));
+			}
+		}
+		finally {
+			baristas.stop();
+		}
+		assertEquals(2, baristas.getPreparedColdDrinks());
+		assertEquals(1, baristas.getFailedDrinks());
+		assertEquals(0, baristas.getColdDrinksInPreparation());
+	}
+
+	private static Message<OrderItem> drink(int orderNumber, boolean iced) {
+		return MessageBuilder.withPayload(new OrderItem(orderNumber, DrinkType.LATTE, 2, iced))
+				.setHeader(IntegrationMessageHeaderAccessor.CORRELATION_ID, orderNumber)
+				.build();
+	}
+
+}
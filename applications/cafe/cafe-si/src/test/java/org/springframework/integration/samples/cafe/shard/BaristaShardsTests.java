@@ -0,0 +1,203 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.shard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.samples.cafe.Delivery;
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.samples.cafe.Order;
+import org.springframework.integration.samples.cafe.OrderBatchDispatcher;
+import org.springframework.integration.samples.cafe.xml.Barista;
+import org.springframework.integration.samples.cafe.xml.Waiter;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.GenericMessage;
+
+public class BaristaShardsTests {
+
+	@Test
+	public void testConsecutiveOrdersAreSpreadEvenly() {
+		int[] orders = new int[4];
+		for (int number = 1; number <= 4000; number++) {
+			orders[BaristaShards.shardOf(number, orders.length)]++;
+		}
+		for (int count : orders) {
+			assertTrue("Uneven shards: " + count, count > 800 && count < 1200);
+		}
+		assertTrue(BaristaShards.shardOf(-7, 3) >= 0);
+	}
+
+	@Test
+	public void testEachOrderIsDeliveredWhole() throws Exception {
+		Barista barista = new Barista();
+		barista.setHotDrinkDelay(0);
+		barista.setColdDrinkDelay(0);
+		QueueChannel deliveries = new QueueChannel();
+		BaristaShards shards = new BaristaShards(barista, new Waiter(), deliveries);
+		shards.setShardCount(3);
+		shards.setBeanFactory(new DefaultListableBeanFactory());
+		shards.afterPropertiesSet();
+		shards.start();
+		try {
+			List<Order> orders = new ArrayList<>();
+			for (int number = 1; number <= 20; number++) {
+				Order order = new Order(number);
+				order.addItem(DrinkType.LATTE, 2, false);
+				order.addItem(DrinkType.MOCHA, 1, true);
+				order.addItem(DrinkType.ESPRESSO, 1, number % 2 == 0);
+				orders.add(order);
+			}
+			new OrderBatchDispatcher(shards, shards).placeOrders(orders);
+
+			boolean[] delivered = new boolean[21];
+			for (int i = 0; i < 20; i++) {
+				Message<?> message = deliveries.receive(10000);
+				assertNotNull("Missing delivery", message);
+				Delivery delivery = (Delivery) message.getPayload();
+				assertEquals(3, delivery.getDeliveredDrinks().size());
+				for (Drink drink : delivery.getDeliveredDrinks()) {
+					assertEquals(delivery.getOrderNumber(), drink.getOrderNumber());
+				}
+				delivered[delivery.getOrderNumber()] = true;
+			}
+			for (int number = 1; number <= 20; number++) {
+				assertTrue("Order " + number + " not delivered", delivered[number]);
+			}
+			long prepared = 0;
+			for (long count : shards.getPreparedDrinks()) {
+				prepared += count;
+			}
+			assertEquals(60, prepared);
+			assertEquals(0, shards.getQueueSize());
+		}
+		finally {
+			shards.stop();
+		}
+	}
+
+	@Test
+	public void testIncompleteOrdersAreDeliveredAfterTheGroupTimeout() throws Exception {
+		Barista barista = new Barista();
+		barista.setHotDrinkDelay(0);
+		QueueChannel deliveries = new QueueChannel();
+		BaristaShards shards = new BaristaShards(barista, new Waiter(), deliveries);
+		shards.setShardCount(2);
+		shards.setGroupTimeout(1);
+		shards.setBeanFactory(new DefaultListableBeanFactory());
+		shards.afterPropertiesSet();
+		shards.start();
+		try {
+			Order order = new Order(7);
+			order.addItem(DrinkType.LATTE, 2, false);
+			order.addItem(DrinkType.MOCHA, 1, true);
+			Map<String, Object> headers = new HashMap<>();
+			headers.put(IntegrationMessageHeaderAccessor.CORRELATION_ID, 7);
+			headers.put(IntegrationMessageHeaderAccessor.SEQUENCE_NUMBER, 1);
+			headers.put(IntegrationMessageHeaderAccessor.SEQUENCE_SIZE, 2);
+			shards.send(new GenericMessage<>(order.getItems().get(0), headers));
+
+			Message<?> message = null;
+			for (int i = 0; i < 100 && message == null; i++) {
+				Thread.sleep(10);
+				shards.expireTimedOutGroups();
+				message = deliveries.receive(0);
+			}
+			assertNotNull("Missing delivery", message);
+			assertEquals(1, ((Delivery) message.getPayload()).getDeliveredDrinks().size());
+			assertEquals(1, shards.getExpiredGroups());
+		}
+		finally {
+			shards.stop();
+		}
+	}
+
+	@Test
+	public void testDrinkQueuesCountAndReportTheirOwnDrinks() throws Exception {
+		Barista barista = new Barista();
+		barista.setHotDrinkDelay(0);
+		barista.setColdDrinkDelay(0);
+		QueueChannel deliveries = new QueueChannel();
+		BaristaShards shards = new BaristaShards(barista, new Waiter(), deliveries);
+		shards.setShardCount(2);
+		AtomicInteger hotTaken = new AtomicInteger();
+		AtomicInteger coldTaken = new AtomicInteger();
+		shards.setInterceptors(Collections.singletonList(new ChannelInterceptor() {
+
+			@Override
+			public Message<?> postReceive(Message<?> message, MessageChannel channel) {
+				(channel == shards.getHotDrinks() ? hotTaken : coldTaken).incrementAndGet();
+				return message;
+			}
+
+		}));
+		shards.setBeanFactory(new DefaultListableBeanFactory());
+		shards.afterPropertiesSet();
+		List<Order> orders = new ArrayList<>();
+		for (int number = 1; number <= 4; number++) {
+			Order order = new Order(number);
+			order.addItem(DrinkType.LATTE, 2, false);
+			order.addItem(DrinkType.CAPPUCCINO, 1, false);
+			order.addItem(DrinkType.MOCHA, 1, true);
+			orders.add(order);
+		}
+		new OrderBatchDispatcher(shards.getHotDrinks(), shards.getColdDrinks()).placeOrders(orders);
+		assertEquals(8, shards.getHotDrinks().getQueueSize());
+		assertEquals(4, shards.getColdDrinks().getQueueSize());
+		assertEquals(12, shards.getQueueSize());
+		try {
+			shards.getColdDrinks().send(new GenericMessage<>(new Order(5).getItems()), 0);
+			fail("Expected IllegalArgumentException");
+		}
+		catch (IllegalArgumentException e) {
+			// only order items of its type go onto a drink queue
+		}
+
+		shards.start();
+		try {
+			long deadline = System.currentTimeMillis() + 10000;
+			while (hotTaken.get() + coldTaken.get() < 12 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(8, hotTaken.get());
+			assertEquals(4, coldTaken.get());
+			assertEquals(0, shards.getHotDrinks().getQueueSize());
+			assertEquals(0, shards.getColdDrinks().getQueueSize());
+		}
+		finally {
+			shards.stop();
+		}
+	}
+
+}
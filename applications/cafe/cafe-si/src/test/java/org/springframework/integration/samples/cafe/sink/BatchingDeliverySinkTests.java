@@ -0,0 +1,89 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.sink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.integration.samples.cafe.Delivery;
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.support.GenericMessage;
+
+public class BatchingDeliverySinkTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testDeliveriesAreWrittenAsTheirToString() throws Exception {
+		File file = this.folder.newFile("deliveries");
+		BatchingDeliverySink sink = new BatchingDeliverySink(file);
+		// smaller than a batch, so that batches are written in parts
+		sink.setBufferSize(64);
+		sink.setMaxBatchSize(8);
+		sink.start();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			int orderNumber = i % 2 == 0 ? i : -i;
+			Delivery delivery = new Delivery(Arrays.asList(
+					new Drink(orderNumber, DrinkType.values()[i % DrinkType.values().length], i % 3 == 0, i % 4),
+					new Drink(orderNumber, DrinkType.LATTE, false, Integer.MAX_VALUE)));
+			expected.append(delivery);
+			sink.handleMessage(new GenericMessage<>(delivery));
+		}
+		sink.handleMessage(new GenericMessage<>("and a cookie\n"));
+		expected.append("and a cookie\n");
+		sink.stop();
+
+		assertEquals(expected.toString(), new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+		assertEquals(1001, sink.getWrittenDeliveries());
+		assertEquals(0, sink.getFailedDeliveries());
+		assertEquals(expected.length(), sink.getBytesWritten());
+		assertTrue(sink.getMeanBatchSize() >= 1 && sink.getMeanBatchSize() <= 8);
+	}
+
+	@Test
+	public void testStoppedSinkRejectsDeliveries() throws Exception {
+		BatchingDeliverySink sink = new BatchingDeliverySink(this.folder.newFile("deliveries"));
+		Delivery delivery = new Delivery(Arrays.asList(new Drink(1, DrinkType.MOCHA, true, 2)));
+		try {
+			sink.handleMessage(new GenericMessage<>(delivery));
+			fail("Expected MessageDeliveryException");
+		}
+		catch (MessageDeliveryException e) {
+			assertEquals(0, sink.getQueuedDeliveries());
+		}
+		sink.start();
+		sink.handleMessage(new GenericMessage<>(delivery));
+		sink.stop();
+		assertEquals(1, sink.getWrittenDeliveries());
+		assertEquals(1, sink.getBatches());
+	}
+
+}
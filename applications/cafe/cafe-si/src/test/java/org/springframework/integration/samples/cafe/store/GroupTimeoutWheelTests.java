@@ -0,0 +1,112 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class GroupTimeoutWheelTests {
+
+	@Test
+	public void testTimeoutsAreHandledOnceDue() {
+		GroupTimeoutWheel wheel = new GroupTimeoutWheel(10000, 100);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < 100000; i++) {
+			wheel.schedule(i, start + 1000 + i % 9000);
+		}
+		assertEquals(100000, wheel.size());
+		List<Integer> handled = new ArrayList<>();
+		assertEquals(0, wheel.advance(start + 900, (timeout, now) -> 0));
+		for (long now = start + 1000; now < start + 10000; now += 1000) {
+			long time = now;
+			wheel.advance(now, (timeout, at) -> {
+				// due by the end of the current tick
+				assertTrue(start + 1000 + timeout.getOrderNumber() % 9000 < time + 100);
+				handled.add(timeout.getOrderNumber());
+				return 0;
+			});
+		}
+		int rest = wheel.advance(start + 20000, (timeout, now) -> 0);
+		assertEquals(100000, handled.size() + rest);
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testTimeoutsBeyondOneTurnAndRescheduled() {
+		GroupTimeoutWheel wheel = new GroupTimeoutWheel(1000, 100);
+		long start = System.currentTimeMillis();
+		wheel.schedule(1, start + 500);
+		// two turns later, in the same slot
+		wheel.schedule(2, start + 500 + 3200);
+		// already timed out
+		wheel.schedule(3, start - 60000);
+		Map<Integer, Long> handled = new HashMap<>();
+		GroupTimeoutWheel.TimeoutHandler handler = (timeout, now) -> {
+			handled.put(timeout.getOrderNumber(), now);
+			// the first group has been modified since, and times out a second later
+			return timeout.getOrderNumber() == 1 && now < start + 1500 ? start + 1600 : 0;
+		};
+		assertEquals(1, wheel.advance(start + 200, handler));
+		assertEquals(1, wheel.advance(start + 600, handler));
+		assertEquals(start + 600, (long) handled.get(1));
+		assertEquals(0, wheel.advance(start + 1000, handler));
+		assertEquals(1, wheel.advance(start + 1700, handler));
+		assertEquals(start + 1700, (long) handled.get(1));
+		assertEquals(1, wheel.size());
+		assertEquals(1, wheel.advance(start + 3800, handler));
+		assertEquals(start + 3800, (long) handled.get(2));
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testCancelledTimeoutsLeaveTheWheel() {
+		GroupTimeoutWheel wheel = new GroupTimeoutWheel(1000, 100);
+		long start = System.currentTimeMillis();
+		List<GroupTimeoutWheel.Timeout> timeouts = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			timeouts.add(wheel.schedule(i, start + 500));
+		}
+		// every other one, so that the last timeouts of the slot are moved into the gaps
+		for (int i = 0; i < 1000; i += 2) {
+			wheel.cancel(timeouts.get(i));
+		}
+		assertEquals(500, wheel.size());
+		wheel.cancel(timeouts.get(0));
+		assertEquals(500, wheel.size());
+		List<Integer> handled = new ArrayList<>();
+		GroupTimeoutWheel.TimeoutHandler handler = (timeout, now) -> {
+			handled.add(timeout.getOrderNumber());
+			// cancelled while it is handled, so it is not scheduled again
+			wheel.cancel(timeout);
+			return start + 900;
+		};
+		assertEquals(500, wheel.advance(start + 600, handler));
+		for (int orderNumber : handled) {
+			assertEquals(1, orderNumber % 2);
+		}
+		assertEquals(0, wheel.size());
+		assertEquals(0, wheel.advance(start + 1000, handler));
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.samples.cafe.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.integration.samples.cafe.Drink;
+import org.springframework.integration.samples.cafe.DrinkType;
+import org.springframework.integration.store.MessageGroup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.GenericMessage;
+
+public class OffHeapMessageGroupStoreTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testMessagesAreReadBackWithTheirIdsAndHeaders() throws Exception {
+		OffHeapMessageGroupStore store = new OffHeapMessageGroupStore(this.folder.newFile("drinks"), 4096, 64);
+		Message<?> latte = drink(7, DrinkType.LATTE, 1, 2);
+		Message<?> mocha = drink(7, DrinkType.MOCHA, 2, 2);
+		MessageGroup group = store.addMessageToGroup(7, latte);
+		store.addMessagesToGroup(7, mocha);
+
+		assertSame(group, store.getMessageGroup(7));
+		assertEquals(2, group.size());
+		assertEquals(2, group.getSequenceSize());
+		List<Message<?>> messages = new ArrayList<>(group.getMessages());
+		assertEquals(latte.getHeaders().getId(), messages.get(0).getHeaders().getId());
+		assertEquals(DrinkType.MOCHA, ((Drink) messages.get(1).getPayload()).getDrinkType());
+		assertEquals(2, messages.get(1).getHeaders().get(IntegrationMessageHeaderAccessor.SEQUENCE_NUMBER));
+		assertEquals(7, messages.get(1).getHeaders().get(IntegrationMessageHeaderAccessor.CORRELATION_ID));
+
+		// as the aggregator does without expiring the groups upon completion
+		store.removeMessagesFromGroup(7, group.getMessages());
+		assertEquals(0, store.messageGroupSize(7));
+		assertEquals(0, store.getSlotsInUse());
+	}
+
+	@Test
+	public void testSlotsAreReusedAcrossGroups() {
+		OffHeapMessageGroupStore store = new OffHeapMessageGroupStore(64 * 40, 64);
+		Map<Integer, Integer> expected = new HashMap<>();
+		for (int i = 0; i < 10000; i++) {
+			int orderNumber = i % 17;
+			if (i % 5 == 4) {
+				store.removeMessageGroup(orderNumber);
+				expected.remove(orderNumber);
+			}
+			else {
+				store.addMessageToGroup(orderNumber, drink(orderNumber, DrinkType.LATTE, 1, 1));
+				expected.merge(orderNumber, 1, Integer::sum);
+			}
+			if (store.getSpilledMessages() > 0) {
+				for (Integer full : new ArrayList<>(expected.keySet())) {
+					store.removeMessageGroup(full);
+				}
+				expected.clear();
+				assertEquals(0, store.getSpilledMessages());
+				assertEquals(0, store.getSlotsInUse());
+			}
+		}
+		for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+			assertEquals((int) entry.getValue(), store.messageGroupSize(entry.getKey()));
+			Message<?> first = store.pollMessageFromGroup(entry.getKey());
+			assertEquals(entry.getKey().intValue(), ((Drink) first.getPayload()).getOrderNumber());
+		}
+	}
+
+	@Test
+	public void testFullStoreSpillsOntoTheHeapOrRejects() {
+		OffHeapMessageGroupStore store = new OffHeapMessageGroupStore(256, 128);
+		Message<?> first = drink(1, DrinkType.LATTE, 1, 3);
+		Message<?> second = drink(1, DrinkType.MOCHA, 2, 3);
+		Message<?> third = drink(1, DrinkType.CAPPUCCINO, 3, 3);
+		store.addMessagesToGroup(1, first, second, third);
+		assertEquals(2, store.getSlotsInUse());
+		assertEquals(1, store.getSpilledMessages());
+		Collection<Message<?>> messages = store.getMessagesForGroup(1);
+		assertEquals(3, messages.size());
+		assertSame(third, new ArrayList<>(messages).get(2));
+
+		store.removeMessagesFromGroup(1, third);
+		assertEquals(0, store.getSpilledMessages());
+		store.setSpill(OffHeapMessageGroupStore.Spill.REJECT);
+		try {
+			store.addMessageToGroup(1, third);
+			fail("Expected MessagingException");
+		}
+		catch (MessagingException e) {
+			assertEquals(1, store.getRejectedMessages());
+		}
+		assertEquals(2, store.messageGroupSize(1));
+
+		store.removeMessageGroup(1);
+		assertEquals(0, store.getSlotsInUse());
+		assertNull(store.pollMessageFromGroup(1));
+	}
+
+	@Test
+	public void testLargeMessagesSpanSeveralSlots() {
+		OffHeapMessageGroupStore store = new OffHeapMessageGroupStore(1024, 40);
+		List<Drink> drinks = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			drinks.add(new Drink(3, DrinkType.values()[i % DrinkType.values().length], i % 2 == 0, i % 3 + 1));
+		}
+		Map<String, Object> headers = new HashMap<>();
+		headers.put(IntegrationMessageHeaderAccessor.CORRELATION_ID, 3);
+		headers.put("note", "for the table by the window");
+		store.addMessageToGroup(3, new GenericMessage<>(drinks, headers));
+		assertEquals(0, store.getSpilledMessages());
+
+		Message<?> message = store.getOneMessageFromGroup(3);
+		assertEquals("for the table by the window", message.getHeaders().get("note"));
+		List<?> payload = (List<?>) message.getPayload();
+		assertEquals(20, payload.size());
+		assertEquals(drinks.get(19).getDrinkType(), ((Drink) payload.get(19)).getDrinkType());
+	}
+
+	private static Message<Drink> drink(int orderNumber, DrinkType type, int sequenceNumber, int sequenceSize) {
+		Map<String, Object> headers = new HashMap<>();
+		headers.put(IntegrationMessageHeaderAccessor.CORRELATION_ID, orderNumber);
+		headers.put(IntegrationMessageHeaderAccessor.SEQUENCE_NUMBER, sequenceNumber);
+		headers.put(IntegrationMessageHeaderAccessor.SEQUENCE_SIZE, sequenceSize);
+		return new GenericMessage<>(new Drink(orderNumber, type, false, 1), headers);
+	}
+
+}
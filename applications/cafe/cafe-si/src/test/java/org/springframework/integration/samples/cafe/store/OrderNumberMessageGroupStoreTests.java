@@ -0,0 +1,151 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.integration.samples.cafe.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import org.springframework.integration.store.MessageGroup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+
+public class OrderNumberMessageGroupStoreTests {
+
+	@Test
+	public void testAddAndRemoveGroups() {
+		OrderNumberMessageGroupStore store = new OrderNumberMessageGroupStore(4);
+		Map<Integer, Integer> expected = new HashMap<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			int orderNumber = random.nextInt(2000) - 10;
+			if (random.nextInt(3) > 0) {
+				store.addMessageToGroup(orderNumber, new GenericMessage<>(orderNumber));
+				expected.merge(orderNumber, 1, Integer::sum);
+			}
+			else {
+				store.removeMessageGroup(orderNumber);
+				expected.remove(orderNumber);
+			}
+		}
+		assertEquals(expected.size(), store.getMessageGroupCount());
+		for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+			assertEquals((int) entry.getValue(), store.messageGroupSize(entry.getKey()));
+		}
+	}
+
+	@Test
+	public void testGroupIsReturnedLive() {
+		OrderNumberMessageGroupStore store = new OrderNumberMessageGroupStore();
+		MessageGroup group = store.addMessageToGroup(7, new GenericMessage<>("latte"));
+		Message<?> mocha = new GenericMessage<>("mocha");
+		store.addMessagesToGroup(7, mocha);
+		assertSame(group, store.getMessageGroup(7));
+		assertEquals(7, group.getGroupId());
+		assertEquals(2, group.size());
+		store.removeMessagesFromGroup(7, mocha);
+		assertEquals(1, group.size());
+		store.removeMessagesFromGroup(7, group.getMessages());
+		assertEquals(0, store.messageGroupSize(7));
+	}
+
+	@Test
+	public void testExpireRemovesCompletedGroupsAndCallsBackForOthers() {
+		OrderNumberMessageGroupStore store = new OrderNumberMessageGroupStore();
+		AtomicInteger expired = new AtomicInteger();
+		store.registerMessageGroupExpiryCallback((messageGroupStore, group) -> {
+			expired.set((Integer) group.getGroupId());
+			messageGroupStore.removeMessageGroup(group.getGroupId());
+		});
+		store.addMessageToGroup(1, new GenericMessage<>("latte"));
+		store.getMessageGroup(2);
+		store.completeGroup(2);
+		assertEquals(2, store.expireMessageGroups(-1));
+		assertEquals(1, expired.get());
+		assertEquals(0, store.getMessageGroupCount());
+		assertFalse(store.iterator().hasNext());
+	}
+
+	@Test
+	public void testGroupTimeoutExpiresOnlyTheGroupsDue() throws InterruptedException {
+		OrderNumberMessageGroupStore store = new OrderNumberMessageGroupStore();
+		store.setGroupTimeout(100);
+		List<Object> expired = new ArrayList<>();
+		store.registerMessageGroupExpiryCallback((messageGroupStore, group) -> {
+			expired.add(group.getGroupId());
+			messageGroupStore.removeMessageGroup(group.getGroupId());
+		});
+		store.addMessageToGroup(1, new GenericMessage<>("latte"));
+		store.addMessageToGroup(2, new GenericMessage<>("mocha"));
+		// released before it times out
+		store.removeMessageGroup(2);
+		assertEquals(1, store.getScheduledGroupTimeouts());
+		store.expireTimedOutGroups();
+		assertTrue(expired.isEmpty());
+		Thread.sleep(150);
+		store.addMessageToGroup(3, new GenericMessage<>("latte"));
+		store.expireTimedOutGroups();
+		assertEquals(Collections.singletonList(1), expired);
+		assertEquals(1, store.getExpiredGroups());
+		assertEquals(1, store.getScheduledGroupTimeouts());
+		assertEquals(1, store.messageGroupSize(3));
+	}
+
+	@Test
+	public void testRemovedGroupsLeaveTheWheel() throws InterruptedException {
+		OrderNumberMessageGroupStore store = new OrderNumberMessageGroupStore();
+		store.setGroupTimeout(100);
+		List<Object> expired = new ArrayList<>();
+		store.registerMessageGroupExpiryCallback((messageGroupStore, group) -> expired.add(group.getGroupId()));
+		for (int number = 1; number <= 1000; number++) {
+			store.addMessageToGroup(number, new GenericMessage<>("latte"));
+			store.removeMessageGroup(number);
+		}
+		assertEquals(0, store.getScheduledGroupTimeouts());
+		// the order number is used again, and the new group has a timeout of its own
+		store.addMessageToGroup(7, new GenericMessage<>("mocha"));
+		store.removeMessageGroup(7);
+		store.addMessageToGroup(7, new GenericMessage<>("mocha"));
+		assertEquals(1, store.getScheduledGroupTimeouts());
+		Thread.sleep(150);
+		store.expireTimedOutGroups();
+		store.expireTimedOutGroups();
+		assertEquals(Collections.singletonList(7), expired);
+		assertEquals(0, store.getScheduledGroupTimeouts());
+	}
+
+	@Test
+	public void testNotExpiredBeforeTimeout() {
+		OrderNumberMessageGroupStore store = new OrderNumberMessageGroupStore();
+		store.addMessageToGroup(1, new GenericMessage<>("latte"));
+		assertEquals(0, store.expireMessageGroups(60000));
+		assertTrue(store.iterator().hasNext());
+	}
+
+}